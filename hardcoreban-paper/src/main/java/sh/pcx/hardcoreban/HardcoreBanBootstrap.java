@@ -2,7 +2,6 @@ package sh.pcx.hardcoreban;
 
 import org.bukkit.Bukkit;
 import org.bukkit.GameMode;
-import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.scheduler.BukkitRunnable;
@@ -12,18 +11,34 @@ import com.google.common.io.ByteStreams;
 
 import net.kyori.adventure.text.minimessage.MiniMessage;
 
+import sh.pcx.hardcoreban.cache.BanCache;
+import sh.pcx.hardcoreban.cache.SharedBanTable;
 import sh.pcx.hardcoreban.commands.HardcoreBanCommand;
 import sh.pcx.hardcoreban.database.DatabaseManager;
 import sh.pcx.hardcoreban.listeners.PlayerDeathListener;
 import sh.pcx.hardcoreban.listeners.PlayerJoinListener;
+import sh.pcx.hardcoreban.listeners.PlayerQuitListener;
 import sh.pcx.hardcoreban.listeners.PlayerRespawnListener;
 import sh.pcx.hardcoreban.loader.LoaderBootstrap;
+import sh.pcx.hardcoreban.messaging.BanCheckAssertions;
+import sh.pcx.hardcoreban.messaging.BanSnapshotCodec;
+import sh.pcx.hardcoreban.messaging.LinkConnection;
+import sh.pcx.hardcoreban.messaging.ProxyLinkClient;
+import sh.pcx.hardcoreban.messaging.ServerHealthReporter;
 import sh.pcx.hardcoreban.messaging.VelocityMessageListener;
 import sh.pcx.hardcoreban.util.ConfigManager;
+import sh.pcx.hardcoreban.util.StripedLocks;
+import sh.pcx.hardcoreban.util.TimeFormatter;
 
+import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
 /**
@@ -34,10 +49,31 @@ import java.util.logging.Level;
  * plugin logic and delegates lifecycle methods from the loader.
  */
 public class HardcoreBanBootstrap implements LoaderBootstrap {
+    private static final int BAN_LOCK_STRIPES = 64;
+    // How often the shared ban table's heartbeat is refreshed, independent of check-interval
+    private static final long SHARED_TABLE_HEARTBEAT_TICKS = 5 * 20;
+
     private JavaPlugin plugin;
     private DatabaseManager databaseManager;
     private ConfigManager configManager;
     private MiniMessage miniMessage;
+    private VelocityMessageListener velocityMessageListener;
+    private final BanCheckAssertions banCheckAssertions = new BanCheckAssertions(this);
+    private ProxyLinkClient proxyLink;
+    private final BanCache banCache = new BanCache();
+    private SharedBanTable sharedBanTable;
+
+    // Every ban change sent to Velocity is stamped with this epoch and the next sequence number,
+    // so the proxy can tell when it missed one (or when this server restarted) and ask for a snapshot
+    private final long syncEpoch = ThreadLocalRandom.current().nextLong();
+    private final AtomicLong syncSequence = new AtomicLong();
+    private final AtomicInteger snapshotIds = new AtomicInteger();
+
+    // The version of the last ban change made here for each player, until they leave
+    private final Map<UUID, Long> banVersions = new ConcurrentHashMap<>();
+
+    // Serializes ban changes per player
+    private final StripedLocks banLocks = new StripedLocks(BAN_LOCK_STRIPES);
 
     @Override
     public void onLoad(JavaPlugin loader) {
@@ -81,6 +117,9 @@ public class HardcoreBanBootstrap implements LoaderBootstrap {
                 return;
             }
 
+            // Load the ban cache and publish it to shared memory if enabled
+            setupBanCache();
+
             // Register plugin messaging channels
             setupPluginMessaging();
 
@@ -103,6 +142,20 @@ public class HardcoreBanBootstrap implements LoaderBootstrap {
 
     @Override
     public void onDisable(JavaPlugin loader) {
+        // Close the direct proxy link
+        if (proxyLink != null) {
+            proxyLink.stop();
+        }
+
+        // Mark the shared ban table as stale so the proxy stops trusting it
+        if (sharedBanTable != null) {
+            try {
+                sharedBanTable.close();
+            } catch (Exception e) {
+                log(Level.WARNING, "Failed to close shared ban table: " + e.getMessage());
+            }
+        }
+
         // Disconnect from database
         if (databaseManager != null) {
             databaseManager.disconnect();
@@ -124,6 +177,30 @@ public class HardcoreBanBootstrap implements LoaderBootstrap {
         return plugin;
     }
 
+    /**
+     * Loads the active bans into the cache and, if enabled in the config, publishes them
+     * to a memory-mapped file that a Velocity proxy on the same host can read.
+     */
+    private void setupBanCache() {
+        if (configManager.getBoolean("shared-memory.enabled", false)) {
+            Path file = Path.of(configManager.getString("shared-memory.directory", "/dev/shm/hardcoreban"),
+                    databaseManager.getScope() + ".dat");
+            try {
+                sharedBanTable = new SharedBanTable(file);
+                banCache.addListener(sharedBanTable);
+                log(Level.INFO, "Publishing bans to shared memory at " + file);
+            } catch (Exception e) {
+                log(Level.SEVERE, "Failed to create shared ban table at " + file + ": " + e.getMessage());
+                sharedBanTable = null;
+            }
+        }
+
+        banCache.replaceAll(databaseManager.getAllBans());
+        if (sharedBanTable != null) {
+            sharedBanTable.touch();
+        }
+    }
+
     /**
      * Sets up plugin messaging channels for communication with Velocity.
      */
@@ -132,8 +209,42 @@ public class HardcoreBanBootstrap implements LoaderBootstrap {
         plugin.getServer().getMessenger().registerOutgoingPluginChannel(plugin, "hardcoreban:channel");
 
         // Register incoming plugin channel
+        velocityMessageListener = new VelocityMessageListener(this);
         plugin.getServer().getMessenger().registerIncomingPluginChannel(plugin, "hardcoreban:channel",
-                new VelocityMessageListener(this));
+                velocityMessageListener);
+
+        setupProxyLink();
+    }
+
+    /**
+     * Starts the optional direct socket link to Velocity, if enabled in the config.
+     * Messages received over the link are handled on the main thread, just like plugin messages.
+     */
+    private void setupProxyLink() {
+        if (!configManager.getBoolean("proxy-link.enabled", false)) {
+            return;
+        }
+
+        String secret = configManager.getString("proxy-link.secret", "");
+        if (secret.isEmpty() || secret.equals("change-me")) {
+            log(Level.WARNING, "Proxy link is enabled but proxy-link.secret is not set. The link will not be started.");
+            return;
+        }
+
+        try {
+            proxyLink = new ProxyLinkClient(this,
+                    LinkConnection.parseAddress(configManager.getString("proxy-link.address", "127.0.0.1:25590")),
+                    secret,
+                    configManager.getString("proxy-link.server-name", "world"),
+                    configManager.getInt("proxy-link.heartbeat-seconds", 5),
+                    message -> Bukkit.getScheduler().runTask(plugin,
+                            () -> velocityMessageListener.handleMessage(message, null)),
+                    () -> Bukkit.getScheduler().runTask(plugin, () -> sendSnapshotToVelocity(null)));
+            proxyLink.start();
+        } catch (Exception e) {
+            log(Level.SEVERE, "Failed to start proxy link: " + e.getMessage());
+            proxyLink = null;
+        }
     }
 
     /**
@@ -143,6 +254,7 @@ public class HardcoreBanBootstrap implements LoaderBootstrap {
         plugin.getServer().getPluginManager().registerEvents(new PlayerDeathListener(this), plugin);
         plugin.getServer().getPluginManager().registerEvents(new PlayerJoinListener(this), plugin);
         plugin.getServer().getPluginManager().registerEvents(new PlayerRespawnListener(this), plugin);
+        plugin.getServer().getPluginManager().registerEvents(new PlayerQuitListener(this), plugin);
     }
 
     /**
@@ -162,6 +274,19 @@ public class HardcoreBanBootstrap implements LoaderBootstrap {
                 }
             }
         }.runTaskTimer(plugin, checkInterval, checkInterval);
+
+        // Keep the shared ban table fresh for the proxy while this server is running; the table's
+        // entries follow the ban cache, so only the heartbeat needs refreshing
+        if (sharedBanTable != null) {
+            Bukkit.getScheduler().runTaskTimer(plugin, sharedBanTable::touch,
+                    SHARED_TABLE_HEARTBEAT_TICKS, SHARED_TABLE_HEARTBEAT_TICKS);
+        }
+
+        // Report TPS and tick time so Velocity can pace connections to this server
+        long healthInterval = plugin.getConfig().getLong("health-report-seconds", 2) * 20;
+        if (healthInterval > 0) {
+            new ServerHealthReporter(this, healthInterval).start();
+        }
     }
 
     /**
@@ -176,6 +301,9 @@ public class HardcoreBanBootstrap implements LoaderBootstrap {
             Map<UUID, Long> bannedPlayers = databaseManager.getAllBans();
             long now = System.currentTimeMillis();
 
+            // Resynchronize the cache with the database
+            banCache.replaceAll(bannedPlayers);
+
             for (Map.Entry<UUID, Long> entry : bannedPlayers.entrySet()) {
                 UUID uuid = entry.getKey();
                 long expiry = entry.getValue();
@@ -196,74 +324,171 @@ public class HardcoreBanBootstrap implements LoaderBootstrap {
     }
 
     /**
-     * Bans a player for the specified expiry time.
+     * Bans a player for the specified expiry time. Holds the player's ban lock, so the ban is
+     * never interleaved with another change to the same player's ban. The cache and Velocity are
+     * only updated if the database wrote the ban rather than keeping a newer row.
      *
      * @param uuid The UUID of the player to ban
      * @param expiry The time when the ban will expire (in milliseconds)
-     * @return true if the ban was applied successfully, false otherwise
+     * @return The version of this server's ban state that includes the ban, or 0 if it could not be applied
      */
-    public boolean banPlayer(UUID uuid, long expiry) {
-        try {
-            Player player = Bukkit.getPlayer(uuid);
-            String playerName = player != null ? player.getName() : Bukkit.getOfflinePlayer(uuid).getName();
-            if (playerName == null) playerName = uuid.toString();
+    public long banPlayer(UUID uuid, long expiry) {
+        return banLocks.call(uuid, () -> {
+            try {
+                Player player = Bukkit.getPlayer(uuid);
+                String playerName = player != null ? player.getName() : Bukkit.getOfflinePlayer(uuid).getName();
+                if (playerName == null) playerName = uuid.toString();
 
-            boolean success = databaseManager.addBan(uuid, playerName, expiry);
+                boolean success = databaseManager.addBan(uuid, playerName, expiry);
+                long version = 0;
 
-            if (success) {
-                // Notify Velocity of the ban
-                sendBanToVelocity(uuid, expiry);
+                if (success) {
+                    banCache.put(uuid, expiry);
 
-                log(Level.INFO, "Player " + playerName + " (" + uuid + ") has been banned until " + new java.util.Date(expiry));
-            } else {
-                log(Level.WARNING, "Failed to add ban for player " + playerName + " (" + uuid + ")");
-            }
+                    // Notify Velocity of the ban
+                    version = sendBanToVelocity(uuid, expiry);
+                    banVersions.put(uuid, version);
 
-            return success;
-        } catch (Exception e) {
-            log(Level.SEVERE, "Error banning player " + uuid + ": " + e.getMessage());
-            e.printStackTrace();
-            return false;
-        }
+                    log(Level.INFO, "Player " + playerName + " (" + uuid + ") has been banned until "
+                            + new java.util.Date(expiry));
+                } else {
+                    log(Level.WARNING, "Ban for player " + playerName + " (" + uuid + ") was not written; " +
+                            "the database failed or kept a newer ban");
+                }
+
+                return version;
+            } catch (Exception e) {
+                log(Level.SEVERE, "Error banning player " + uuid + ": " + e.getMessage());
+                e.printStackTrace();
+                return 0L;
+            }
+        });
     }
 
     /**
-     * Removes a ban for a player.
+     * Removes a ban for a player, holding the player's ban lock.
      *
      * @param uuid The UUID of the player
+     * @return The version of this server's ban state without the ban, or 0 if no ban was removed
      */
-    public void removeBan(UUID uuid) {
-        try {
-            boolean removed = databaseManager.removeBan(uuid);
+    public long removeBan(UUID uuid) {
+        return banLocks.call(uuid, () -> {
+            try {
+                boolean removed = databaseManager.removeBan(uuid);
+
+                if (removed) {
+                    banCache.remove(uuid);
 
-            if (removed) {
-                // Also try to notify Velocity of the ban removal
-                sendBanRemovalToVelocity(uuid);
+                    // Also try to notify Velocity of the ban removal
+                    long version = sendBanRemovalToVelocity(uuid);
+                    banVersions.put(uuid, version);
+
+                    log(Level.INFO, "Ban removed for player " + uuid);
+                    return version;
+                } else {
+                    log(Level.FINE, "Attempted to remove ban for player " + uuid + " but they weren't banned");
+                }
+            } catch (Exception e) {
+                log(Level.SEVERE, "Error removing ban for player " + uuid + ": " + e.getMessage());
+                e.printStackTrace();
+            }
+            return 0L;
+        });
+    }
 
-                log(Level.INFO, "Ban removed for player " + uuid);
-            } else {
-                log(Level.FINE, "Attempted to remove ban for player " + uuid + " but they weren't banned");
+    /**
+     * Removes an online player's ban if it has expired and resets their gamemode. The expiry is
+     * checked again under the player's ban lock, so a ban that arrived since the caller looked is
+     * kept and the player is left as they are.
+     *
+     * @param player The player whose ban expired
+     * @return The version of this server's ban state without the ban, or 0 if no ban was removed
+     */
+    public long removeExpiredBan(Player player) {
+        UUID uuid = player.getUniqueId();
+        return banLocks.call(uuid, () -> {
+            if (banCache.getExpiry(uuid) > System.currentTimeMillis()) {
+                log(Level.FINE, "Not removing the ban of player " + uuid + ": a new ban was applied");
+                return 0L;
             }
-        } catch (Exception e) {
-            log(Level.SEVERE, "Error removing ban for player " + uuid + ": " + e.getMessage());
-            e.printStackTrace();
-        }
+            long version = removeBan(uuid);
+            resetPlayerGameMode(player);
+            return version;
+        });
+    }
+
+    /**
+     * Applies a ban that Velocity has already written to the database, and kicks the player
+     * if they are on this server.
+     *
+     * @param uuid The UUID of the banned player
+     * @param expiry The time the ban expires
+     */
+    public void applyVelocityBan(UUID uuid, long expiry) {
+        banLocks.run(uuid, () -> {
+            long timeLeft = expiry - System.currentTimeMillis();
+            if (timeLeft <= 0) {
+                return;
+            }
+
+            banCache.put(uuid, expiry);
+            log(Level.INFO, "Velocity banned player " + uuid + " until " + new java.util.Date(expiry));
+
+            Player player = Bukkit.getPlayer(uuid);
+            if (player != null) {
+                String kickMessage = plugin.getConfig().getString("messages.join-banned",
+                                "<red>You are still banned from hardcore mode for {time}.")
+                        .replace("{time}", TimeFormatter.formatTime(timeLeft));
+                player.kick(miniMessage.deserialize(kickMessage));
+            }
+        });
+    }
+
+    /**
+     * Applies a ban removal that Velocity has already written to the database, and resets the
+     * player's gamemode if they are on this server.
+     *
+     * @param uuid The UUID of the unbanned player
+     */
+    public void applyVelocityUnban(UUID uuid) {
+        banLocks.run(uuid, () -> {
+            banCache.remove(uuid);
+            log(Level.INFO, "Velocity lifted the ban of player " + uuid);
+
+            Player player = Bukkit.getPlayer(uuid);
+            if (player != null) {
+                resetPlayerGameMode(player);
+            }
+        });
+    }
+
+    /**
+     * Applies a clear of all bans that another server or Velocity has already written to the database.
+     */
+    public void applyVelocityClearAll() {
+        banCache.clear();
+        log(Level.INFO, "Velocity cleared all bans");
     }
 
     /**
      * Clears all bans from the database.
+     *
+     * @return The version of this server's ban state without any bans, or 0 if they could not be cleared
      */
-    public void clearAllBans() {
+    public long clearAllBans() {
         try {
             databaseManager.clearAllBans();
+            banCache.clear();
 
             // Notify Velocity to clear all bans
-            sendClearAllBansToVelocity();
+            long version = sendClearAllBansToVelocity();
 
             log(Level.INFO, "All bans cleared");
+            return version;
         } catch (Exception e) {
             log(Level.SEVERE, "Error clearing all bans: " + e.getMessage());
             e.printStackTrace();
+            return 0;
         }
     }
 
@@ -373,68 +598,173 @@ public class HardcoreBanBootstrap implements LoaderBootstrap {
     }
 
     /**
-     * Sends a ban message to Velocity proxy.
+     * Sends a message to Velocity, preferring the direct proxy link when it is connected.
+     * Falls back to a plugin message carried by an online player.
      *
-     * @param uuid The UUID of the banned player
-     * @param expiry The time when the ban expires
+     * @param data The message data
+     * @param carrier The preferred player to carry the message, or null to use any online player
+     * @return true if the message was sent, false if there was no way to reach Velocity
      */
-    private void sendBanToVelocity(UUID uuid, long expiry) {
-        // Try to notify Velocity, but don't worry if it fails
-        if (Bukkit.getOnlinePlayers().isEmpty()) {
-            log(Level.FINE, "Cannot notify Velocity of ban: no players online");
-            return;
+    public boolean sendToVelocity(byte[] data, Player carrier) {
+        if (proxyLink != null && proxyLink.send(data)) {
+            return true;
         }
 
-        Player player = Bukkit.getOnlinePlayers().iterator().next();
+        if (carrier == null || !carrier.isOnline()) {
+            if (Bukkit.getOnlinePlayers().isEmpty()) {
+                return false;
+            }
+            carrier = Bukkit.getOnlinePlayers().iterator().next();
+        }
+
+        carrier.sendPluginMessage(plugin, "hardcoreban:channel", data);
+        return true;
+    }
 
+    /**
+     * Sends a ban message to Velocity proxy.
+     *
+     * @param uuid The UUID of the banned player
+     * @param expiry The time when the ban expires
+     * @return The sequence number the ban was stamped with
+     */
+    private long sendBanToVelocity(UUID uuid, long expiry) {
         ByteArrayDataOutput out = ByteStreams.newDataOutput();
         out.writeUTF("BAN");
         out.writeUTF(uuid.toString());
         out.writeLong(expiry);
+        long sequence = writeSequence(out);
 
-        player.sendPluginMessage(plugin, "hardcoreban:channel", out.toByteArray());
+        // Try to notify Velocity, but don't worry if it fails
+        if (!sendToVelocity(out.toByteArray(), null)) {
+            log(Level.FINE, "Cannot notify Velocity of ban: no players online");
+            return sequence;
+        }
         log(Level.FINE, "Notified Velocity of ban for player " + uuid);
+        return sequence;
     }
 
     /**
      * Sends a ban removal message to Velocity proxy.
      *
      * @param uuid The UUID of the player to unban
+     * @return The sequence number the removal was stamped with
      */
-    private void sendBanRemovalToVelocity(UUID uuid) {
-        // Try to notify Velocity, but don't worry if it fails
-        if (Bukkit.getOnlinePlayers().isEmpty()) {
-            log(Level.FINE, "Cannot notify Velocity of ban removal: no players online");
-            return;
-        }
-
-        Player player = Bukkit.getOnlinePlayers().iterator().next();
-
+    private long sendBanRemovalToVelocity(UUID uuid) {
         ByteArrayDataOutput out = ByteStreams.newDataOutput();
         out.writeUTF("UNBAN");
         out.writeUTF(uuid.toString());
+        long sequence = writeSequence(out);
 
-        player.sendPluginMessage(plugin, "hardcoreban:channel", out.toByteArray());
+        // Try to notify Velocity, but don't worry if it fails
+        if (!sendToVelocity(out.toByteArray(), null)) {
+            log(Level.FINE, "Cannot notify Velocity of ban removal: no players online");
+            return sequence;
+        }
         log(Level.FINE, "Notified Velocity of ban removal for player " + uuid);
+        return sequence;
     }
 
     /**
      * Sends a message to Velocity to clear all bans.
+     *
+     * @return The sequence number the clearance was stamped with
      */
-    private void sendClearAllBansToVelocity() {
+    private long sendClearAllBansToVelocity() {
+        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.writeUTF("CLEAR_ALL");
+        long sequence = writeSequence(out);
+
         // Try to notify Velocity, but don't worry if it fails
-        if (Bukkit.getOnlinePlayers().isEmpty()) {
+        if (!sendToVelocity(out.toByteArray(), null)) {
             log(Level.FINE, "Cannot notify Velocity of ban clearance: no players online");
-            return;
+            return sequence;
         }
+        log(Level.FINE, "Notified Velocity of ban clearance");
+        return sequence;
+    }
 
-        Player player = Bukkit.getOnlinePlayers().iterator().next();
+    /**
+     * Tells Velocity the version of the last ban change made here for a player who is leaving,
+     * so the proxy does not let them back in on a cache that has not seen that change yet.
+     * Sent apart from the change itself, which may have been lost or still be in flight.
+     *
+     * @param uuid The UUID of the leaving player
+     */
+    public void sendBanVersionToVelocity(UUID uuid) {
+        Long version = banVersions.remove(uuid);
+        if (version == null) {
+            return;
+        }
 
         ByteArrayDataOutput out = ByteStreams.newDataOutput();
-        out.writeUTF("CLEAR_ALL");
+        out.writeUTF("BAN_VERSION");
+        out.writeUTF(uuid.toString());
+        out.writeLong(syncEpoch);
+        out.writeLong(version);
 
-        player.sendPluginMessage(plugin, "hardcoreban:channel", out.toByteArray());
-        log(Level.FINE, "Notified Velocity of ban clearance");
+        // The leaving player cannot carry it; the link or another player must
+        Player leaving = Bukkit.getPlayer(uuid);
+        if (proxyLink != null && proxyLink.send(out.toByteArray())) {
+            return;
+        }
+        for (Player carrier : Bukkit.getOnlinePlayers()) {
+            if (carrier != leaving) {
+                carrier.sendPluginMessage(plugin, "hardcoreban:channel", out.toByteArray());
+                return;
+            }
+        }
+        log(Level.FINE, "Cannot send ban version for " + uuid + " to Velocity: no link and no other players online");
+    }
+
+    /**
+     * Sends a compressed snapshot of every cached ban to Velocity, so the proxy can rebuild
+     * its view without scanning the database. The snapshot is taken on the calling thread,
+     * which must be the main thread, and encoded and sent asynchronously.
+     *
+     * @param carrier The preferred player to carry the chunks, or null to use any online player
+     */
+    public void sendSnapshotToVelocity(Player carrier) {
+        Map<UUID, Long> bans = banCache.snapshot();
+        long sequence = syncSequence.get();
+        int snapshotId = snapshotIds.incrementAndGet();
+
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            byte[] snapshot = BanSnapshotCodec.encode(bans);
+            List<byte[]> chunks = BanSnapshotCodec.split(snapshot);
+
+            for (int i = 0; i < chunks.size(); i++) {
+                ByteArrayDataOutput out = ByteStreams.newDataOutput();
+                out.writeUTF(BanSnapshotCodec.SNAPSHOT_CHUNK);
+                out.writeLong(syncEpoch);
+                out.writeLong(sequence);
+                out.writeInt(snapshotId);
+                out.writeInt(i);
+                out.writeInt(chunks.size());
+                out.writeInt(chunks.get(i).length);
+                out.write(chunks.get(i));
+
+                if (!sendToVelocity(out.toByteArray(), carrier)) {
+                    log(Level.FINE, "Cannot send ban snapshot to Velocity: no players online");
+                    return;
+                }
+            }
+            log(Level.FINE, "Sent ban snapshot to Velocity: " + bans.size() + " bans in " + chunks.size() +
+                    " chunks (" + snapshot.length + " bytes)");
+        });
+    }
+
+    /**
+     * Stamps a ban change message with this server's epoch and the next sequence number.
+     *
+     * @param out The message being built
+     * @return The sequence number the message was stamped with
+     */
+    private long writeSequence(ByteArrayDataOutput out) {
+        long sequence = syncSequence.incrementAndGet();
+        out.writeLong(syncEpoch);
+        out.writeLong(sequence);
+        return sequence;
     }
 
     /**
@@ -469,6 +799,51 @@ public class HardcoreBanBootstrap implements LoaderBootstrap {
         return databaseManager;
     }
 
+    /**
+     * Gets the in-memory ban cache.
+     *
+     * @return The ban cache
+     */
+    public BanCache getBanCache() {
+        return banCache;
+    }
+
+    /**
+     * Gets the ban checks Velocity has vouched for.
+     *
+     * @return The ban check assertions
+     */
+    public BanCheckAssertions getBanCheckAssertions() {
+        return banCheckAssertions;
+    }
+
+    /**
+     * Gets the locks that serialize ban changes per player.
+     *
+     * @return The ban locks
+     */
+    public StripedLocks getBanLocks() {
+        return banLocks;
+    }
+
+    /**
+     * Gets the epoch this server stamps its ban changes with.
+     *
+     * @return The epoch, chosen at startup
+     */
+    public long getSyncEpoch() {
+        return syncEpoch;
+    }
+
+    /**
+     * Gets the sequence number of the last ban change this server sent to Velocity.
+     *
+     * @return The sequence number, 0 if none was sent
+     */
+    public long getSyncSequence() {
+        return syncSequence.get();
+    }
+
     /**
      * Gets the config manager instance.
      *
@@ -486,21 +861,4 @@ public class HardcoreBanBootstrap implements LoaderBootstrap {
     public MiniMessage getMiniMessage() {
         return miniMessage;
     }
-
-    /**
-     * Executes a raw SQL query. Should only be used for admin commands.
-     *
-     * @param sql The SQL query to execute
-     * @param sender The command sender who will receive the results
-     */
-    public void executeRawSql(String sql, CommandSender sender) {
-        try {
-            databaseManager.executeRawSql(sql, sender);
-        } catch (Exception e) {
-            log(Level.SEVERE, "Error executing raw SQL: " + e.getMessage());
-            if (sender != null) {
-                sender.sendMessage("§cError executing SQL: " + e.getMessage());
-            }
-        }
-    }
 }
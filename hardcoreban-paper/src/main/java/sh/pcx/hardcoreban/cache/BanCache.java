@@ -0,0 +1,144 @@
+package sh.pcx.hardcoreban.cache;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-memory copy of the active bans, kept in step with the database.
+ * The database remains the source of truth; the cache exists so ban state can be
+ * published to the proxy without extra queries.
+ */
+public class BanCache {
+    // Rebuild the hash tree at least this often so bans that expired drop out of it
+    private static final long HASH_TREE_MAX_AGE = 5000;
+
+    private final Map<UUID, Long> bans = new ConcurrentHashMap<>();
+    private final List<BanCacheListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile BanHashTree hashTree;
+    private volatile long hashTreeBuiltAt;
+
+    /**
+     * Registers a listener for cache changes.
+     *
+     * @param listener The listener to add
+     */
+    public void addListener(BanCacheListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Adds or updates a ban.
+     *
+     * @param uuid The UUID of the banned player
+     * @param expiry The time when the ban expires
+     */
+    public void put(UUID uuid, long expiry) {
+        bans.put(uuid, expiry);
+        hashTree = null;
+        for (BanCacheListener listener : listeners) {
+            listener.onBanAdded(uuid, expiry);
+        }
+    }
+
+    /**
+     * Removes a ban.
+     *
+     * @param uuid The UUID of the player
+     */
+    public void remove(UUID uuid) {
+        if (bans.remove(uuid) != null) {
+            hashTree = null;
+            for (BanCacheListener listener : listeners) {
+                listener.onBanRemoved(uuid);
+            }
+        }
+    }
+
+    /**
+     * Removes every ban.
+     */
+    public void clear() {
+        replaceAll(Map.of());
+    }
+
+    /**
+     * Replaces the cache contents with a fresh set of bans, typically read from the database.
+     *
+     * @param latest The active bans mapped to their expiry times
+     */
+    public void replaceAll(Map<UUID, Long> latest) {
+        bans.keySet().retainAll(latest.keySet());
+        bans.putAll(latest);
+        hashTree = null;
+        for (BanCacheListener listener : listeners) {
+            listener.onBansReplaced(latest);
+        }
+    }
+
+    /**
+     * Gets the expiry time of a cached ban.
+     *
+     * @param uuid The UUID of the player
+     * @return The expiry time, or 0 if the player has no cached ban
+     */
+    public long getExpiry(UUID uuid) {
+        return bans.getOrDefault(uuid, 0L);
+    }
+
+    /**
+     * Gets a hash tree over the active cached bans, rebuilding it if the cache
+     * changed since it was last built.
+     *
+     * @return The hash tree
+     */
+    public BanHashTree getHashTree() {
+        long now = System.currentTimeMillis();
+        BanHashTree tree = hashTree;
+        if (tree == null || now - hashTreeBuiltAt > HASH_TREE_MAX_AGE) {
+            tree = BanHashTree.build(bans, now);
+            hashTree = tree;
+            hashTreeBuiltAt = now;
+        }
+        return tree;
+    }
+
+    /**
+     * Gets the active cached bans that fall into the given hash tree buckets.
+     *
+     * @param buckets The bucket indexes
+     * @return A map of UUID to expiry time
+     */
+    public Map<UUID, Long> getBuckets(Set<Integer> buckets) {
+        long now = System.currentTimeMillis();
+        Map<UUID, Long> result = new HashMap<>();
+        for (Map.Entry<UUID, Long> entry : bans.entrySet()) {
+            if (entry.getValue() > now && buckets.contains(BanHashTree.bucket(entry.getKey()))) {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets a copy of the cached bans.
+     *
+     * @return A map of UUID to expiry time
+     */
+    public Map<UUID, Long> snapshot() {
+        return new HashMap<>(bans);
+    }
+
+    /**
+     * Gets the number of cached bans.
+     *
+     * @return The number of bans
+     */
+    public int size() {
+        return bans.size();
+    }
+}
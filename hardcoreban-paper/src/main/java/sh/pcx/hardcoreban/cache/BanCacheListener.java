@@ -0,0 +1,33 @@
+package sh.pcx.hardcoreban.cache;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Receives changes made to the {@link BanCache}.
+ * Callbacks run on the thread that changed the cache and should return quickly.
+ */
+public interface BanCacheListener {
+
+    /**
+     * Called when a ban is added or its expiry changes.
+     *
+     * @param uuid The UUID of the banned player
+     * @param expiry The time when the ban expires
+     */
+    void onBanAdded(UUID uuid, long expiry);
+
+    /**
+     * Called when a ban is removed.
+     *
+     * @param uuid The UUID of the player
+     */
+    void onBanRemoved(UUID uuid);
+
+    /**
+     * Called when the whole cache is replaced, for example after a database refresh.
+     *
+     * @param bans The new set of active bans, mapped to their expiry times
+     */
+    void onBansReplaced(Map<UUID, Long> bans);
+}
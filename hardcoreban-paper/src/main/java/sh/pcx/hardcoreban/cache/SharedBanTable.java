@@ -0,0 +1,307 @@
+package sh.pcx.hardcoreban.cache;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Publishes the active bans to a memory-mapped file so that a Velocity proxy on the
+ * same host can check bans without touching the network or the database.
+ *
+ * <p>The file holds an open-addressed, linearly probed table of (UUID msb, UUID lsb, expiry)
+ * slots guarded by a seqlock: the writer makes the sequence odd before changing the table
+ * and even again afterwards, and readers retry if the sequence moved under them.
+ * The layout must match {@code SharedBanTableReader} in the Velocity plugin.</p>
+ *
+ * <p>The seqlock allows a single writer only. The table is named after the ban scope, so two
+ * servers of one scope on the same host would share the file; the writer therefore holds an
+ * exclusive lock on it, and a second server fails to open it instead of corrupting it.</p>
+ *
+ * <pre>
+ * header (64 bytes): magic int, format int, seq long, capacity int, count int, heartbeat long
+ * slots (24 bytes each): msb long, lsb long, expiry long (0 = empty)
+ * </pre>
+ */
+public class SharedBanTable implements BanCacheListener, AutoCloseable {
+
+    public static final int MAGIC = 0x4843424E; // "HCBN"
+    public static final int FORMAT = 1;
+
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_FORMAT = 4;
+    private static final int OFFSET_SEQ = 8;
+    private static final int OFFSET_CAPACITY = 16;
+    private static final int OFFSET_COUNT = 20;
+    private static final int OFFSET_HEARTBEAT = 24;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 24;
+    private static final int MIN_CAPACITY = 1024;
+
+    private static final VarHandle LONGS =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int count;
+
+    /**
+     * Creates or reuses the shared table file, maps it and publishes an empty table.
+     *
+     * @param file The file to publish to, ideally on a tmpfs such as /dev/shm
+     * @throws IOException If the file cannot be created or mapped, or another writer holds it
+     */
+    public SharedBanTable(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+
+        // Held until the channel is closed
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            channel.close();
+            throw new IOException("another server is already publishing to " + file);
+        }
+
+        // Never shrink a file that a reader may still have mapped
+        long existingCapacity = (channel.size() - HEADER_SIZE) / SLOT_SIZE;
+        this.capacity = (int) Math.max(MIN_CAPACITY, Long.highestOneBit(Math.max(1, existingCapacity)));
+        map();
+
+        // A writer that died mid-update leaves the sequence odd; start again from an even value
+        long seq = (long) LONGS.getVolatile(buffer, OFFSET_SEQ);
+        LONGS.setOpaque(buffer, OFFSET_SEQ, (seq | 1) + 1);
+        buffer.putInt(OFFSET_MAGIC, MAGIC);
+        buffer.putInt(OFFSET_FORMAT, FORMAT);
+        rebuild(Map.of());
+    }
+
+    @Override
+    public synchronized void onBanAdded(UUID uuid, long expiry) {
+        if ((count + 1) * 4L > capacity * 3L) {
+            Map<UUID, Long> entries = readAll();
+            entries.put(uuid, expiry);
+            rebuild(entries);
+            return;
+        }
+
+        beginWrite();
+        try {
+            int slot = find(uuid);
+            if (slot < 0) {
+                slot = -slot - 1;
+                count++;
+                buffer.putInt(OFFSET_COUNT, count);
+            }
+            writeSlot(slot, uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), expiry);
+        } finally {
+            endWrite();
+        }
+    }
+
+    @Override
+    public synchronized void onBanRemoved(UUID uuid) {
+        int slot = find(uuid);
+        if (slot < 0) {
+            return;
+        }
+
+        beginWrite();
+        try {
+            // Backward-shift deletion keeps probe chains intact without tombstones
+            int mask = capacity - 1;
+            int hole = slot;
+            int next = (hole + 1) & mask;
+            while (slotExpiry(next) != 0) {
+                int home = home(slotMsb(next), slotLsb(next));
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    writeSlot(hole, slotMsb(next), slotLsb(next), slotExpiry(next));
+                    hole = next;
+                }
+                next = (next + 1) & mask;
+            }
+            writeSlot(hole, 0, 0, 0);
+
+            count--;
+            buffer.putInt(OFFSET_COUNT, count);
+        } finally {
+            endWrite();
+        }
+    }
+
+    @Override
+    public synchronized void onBansReplaced(Map<UUID, Long> bans) {
+        rebuild(bans);
+    }
+
+    /**
+     * Records that the table was just confirmed against the database.
+     * Readers ignore tables whose heartbeat is older than their configured maximum age.
+     */
+    public synchronized void touch() {
+        LONGS.setRelease(buffer, OFFSET_HEARTBEAT, System.currentTimeMillis());
+    }
+
+    /**
+     * Marks the table as stale so readers stop trusting it, then closes the file.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        LONGS.setRelease(buffer, OFFSET_HEARTBEAT, 0L);
+        buffer.force();
+        channel.close();
+    }
+
+    /**
+     * Rewrites the whole table, growing the file first if needed.
+     *
+     * @param bans The bans to publish
+     */
+    private void rebuild(Map<UUID, Long> bans) {
+        beginWrite();
+        try {
+            int required = capacity;
+            while (bans.size() * 4L > required * 3L) {
+                required <<= 1;
+            }
+            if (required != capacity) {
+                capacity = required;
+                map();
+            }
+
+            for (int slot = 0; slot < capacity; slot++) {
+                writeSlot(slot, 0, 0, 0);
+            }
+            count = 0;
+
+            for (Map.Entry<UUID, Long> entry : bans.entrySet()) {
+                int slot = -find(entry.getKey()) - 1;
+                writeSlot(slot, entry.getKey().getMostSignificantBits(),
+                        entry.getKey().getLeastSignificantBits(), entry.getValue());
+                count++;
+            }
+
+            buffer.putInt(OFFSET_CAPACITY, capacity);
+            buffer.putInt(OFFSET_COUNT, count);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to grow shared ban table", e);
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * Reads every entry currently in the table.
+     *
+     * @return A map of UUID to expiry time
+     */
+    private Map<UUID, Long> readAll() {
+        Map<UUID, Long> entries = new HashMap<>();
+        for (int slot = 0; slot < capacity; slot++) {
+            long expiry = slotExpiry(slot);
+            if (expiry != 0) {
+                entries.put(new UUID(slotMsb(slot), slotLsb(slot)), expiry);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Finds the slot holding a UUID.
+     *
+     * @param uuid The UUID to look for
+     * @return The slot index if present, or (-insertionPoint - 1) if absent
+     */
+    private int find(UUID uuid) {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        int mask = capacity - 1;
+
+        for (int slot = home(msb, lsb), probes = 0; probes < capacity; slot = (slot + 1) & mask, probes++) {
+            if (slotExpiry(slot) == 0) {
+                return -slot - 1;
+            }
+            if (slotMsb(slot) == msb && slotLsb(slot) == lsb) {
+                return slot;
+            }
+        }
+        throw new IllegalStateException("Shared ban table is full");
+    }
+
+    private void map() throws IOException {
+        long size = HEADER_SIZE + (long) capacity * SLOT_SIZE;
+        if (channel.size() < size) {
+            // Extend by writing the last byte so the file is never truncated under a reader
+            channel.write(ByteBuffer.wrap(new byte[1]), size - 1);
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.order(ByteOrder.nativeOrder());
+    }
+
+    private void beginWrite() {
+        long seq = (long) LONGS.getVolatile(buffer, OFFSET_SEQ);
+        LONGS.setOpaque(buffer, OFFSET_SEQ, seq + 1);
+        VarHandle.storeStoreFence();
+    }
+
+    private void endWrite() {
+        long seq = (long) LONGS.getVolatile(buffer, OFFSET_SEQ);
+        LONGS.setRelease(buffer, OFFSET_SEQ, seq + 1);
+    }
+
+    private int home(long msb, long lsb) {
+        return (int) (mix(msb ^ lsb) & (capacity - 1));
+    }
+
+    private void writeSlot(int slot, long msb, long lsb, long expiry) {
+        int offset = HEADER_SIZE + slot * SLOT_SIZE;
+        buffer.putLong(offset, msb);
+        buffer.putLong(offset + 8, lsb);
+        buffer.putLong(offset + 16, expiry);
+    }
+
+    private long slotMsb(int slot) {
+        return buffer.getLong(HEADER_SIZE + slot * SLOT_SIZE);
+    }
+
+    private long slotLsb(int slot) {
+        return buffer.getLong(HEADER_SIZE + slot * SLOT_SIZE + 8);
+    }
+
+    private long slotExpiry(int slot) {
+        return buffer.getLong(HEADER_SIZE + slot * SLOT_SIZE + 16);
+    }
+
+    /**
+     * Finalization mix from MurmurHash3; spreads UUID bits across the table.
+     * Must match the reader.
+     *
+     * @param h The value to mix
+     * @return The mixed value
+     */
+    public static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -17,6 +17,9 @@ import org.bukkit.entity.Player;
 import net.kyori.adventure.text.minimessage.MiniMessage;
 
 import sh.pcx.hardcoreban.HardcoreBanBootstrap;
+import sh.pcx.hardcoreban.database.DatabaseWorkQueue;
+import sh.pcx.hardcoreban.database.DatabaseWorkQueue.WorkClass;
+import sh.pcx.hardcoreban.util.StripedLocks;
 import sh.pcx.hardcoreban.util.TimeFormatter;
 
 /**
@@ -26,6 +29,7 @@ import sh.pcx.hardcoreban.util.TimeFormatter;
 public class HardcoreBanCommand implements CommandExecutor, TabCompleter {
     private final HardcoreBanBootstrap plugin;
     private final MiniMessage miniMessage;
+    private final SqlConsole sqlConsole;
 
     /**
      * Creates a new HardcoreBanCommand instance.
@@ -35,6 +39,7 @@ public class HardcoreBanCommand implements CommandExecutor, TabCompleter {
     public HardcoreBanCommand(HardcoreBanBootstrap plugin) {
         this.plugin = plugin;
         this.miniMessage = MiniMessage.miniMessage();
+        this.sqlConsole = new SqlConsole(plugin, miniMessage);
     }
 
     @Override
@@ -81,7 +86,8 @@ public class HardcoreBanCommand implements CommandExecutor, TabCompleter {
 
         if (sender.hasPermission("hardcoreban.admin")) {
             sender.sendMessage(miniMessage.deserialize("<yellow>/hardcoreban debug - Run database connection tests"));
-            sender.sendMessage(miniMessage.deserialize("<yellow>/hardcoreban sql <query> - Execute a raw SQL query"));
+            sender.sendMessage(miniMessage.deserialize("<yellow>/hardcoreban sql [explain|export] <query> - Run raw SQL"));
+            sender.sendMessage(miniMessage.deserialize("<yellow>/hardcoreban sql page <number> - Page through results"));
             sender.sendMessage(miniMessage.deserialize("<yellow>/hardcoreban directban <player> - Directly ban a player for testing"));
         }
     }
@@ -298,6 +304,18 @@ public class HardcoreBanCommand implements CommandExecutor, TabCompleter {
 
         // Show plugin status
         sender.sendMessage(miniMessage.deserialize("<yellow>Banned players: " + plugin.getBannedPlayers().size()));
+        StripedLocks banLocks = plugin.getBanLocks();
+        sender.sendMessage(miniMessage.deserialize("<yellow>Ban locks: " + banLocks.getStripes() + " stripes, " +
+                banLocks.getContended() + "/" + banLocks.getAcquisitions() + " contended, " +
+                banLocks.getWaitNanos() / 1_000_000 + " ms waited"));
+        DatabaseWorkQueue workQueue = plugin.getDatabaseManager().getWorkQueue();
+        for (WorkClass workClass : WorkClass.values()) {
+            sender.sendMessage(miniMessage.deserialize(String.format(
+                    "<yellow>Database %s: %d/%d running, %d queued, %.1f ms average wait, %.1f ms max, %d rejected",
+                    workClass.getKey(), workQueue.getRunning(workClass), workQueue.getPoolSize(workClass),
+                    workQueue.getQueued(workClass), workQueue.getAverageWaitMillis(workClass),
+                    workQueue.getMaxWaitMillis(workClass), workQueue.getRejected(workClass))));
+        }
         sender.sendMessage(miniMessage.deserialize("<yellow>Plugin version: " + plugin.getPlugin().getDescription().getVersion()));
 
         return true;
@@ -305,6 +323,8 @@ public class HardcoreBanCommand implements CommandExecutor, TabCompleter {
 
     /**
      * Handles the "sql" command to execute raw SQL queries.
+     * Supports "page <number>" to page through the last result, "explain <query>" to show a
+     * query's plan, and "export <query>" to write every row of a query to a file.
      *
      * @param sender The command sender
      * @param args The command arguments
@@ -317,18 +337,40 @@ public class HardcoreBanCommand implements CommandExecutor, TabCompleter {
         }
 
         if (args.length < 2) {
-            sender.sendMessage(miniMessage.deserialize("<red>Usage: /hardcoreban sql <SQL query>"));
+            sender.sendMessage(miniMessage.deserialize("<red>Usage: /hardcoreban sql [explain|export] <SQL query>"));
+            return true;
+        }
+
+        String mode = args[1].toLowerCase();
+        if (mode.equals("page")) {
+            if (args.length < 3) {
+                sender.sendMessage(miniMessage.deserialize("<red>Usage: /hardcoreban sql page <number>"));
+                return true;
+            }
+            try {
+                sqlConsole.showPage(sender, Integer.parseInt(args[2]));
+            } catch (NumberFormatException e) {
+                sender.sendMessage(miniMessage.deserialize("<red>Invalid page number: " + args[2]));
+            }
+            return true;
+        }
+
+        boolean explain = mode.equals("explain");
+        boolean export = mode.equals("export");
+        int first = explain || export ? 2 : 1;
+        if (args.length <= first) {
+            sender.sendMessage(miniMessage.deserialize("<red>Usage: /hardcoreban sql " + mode + " <SQL query>"));
             return true;
         }
 
         // Reconstruct the SQL query from the remaining arguments
-        StringBuilder sqlBuilder = new StringBuilder();
-        for (int i = 1; i < args.length; i++) {
+        StringBuilder sqlBuilder = new StringBuilder(explain ? "EXPLAIN " : "");
+        for (int i = first; i < args.length; i++) {
             sqlBuilder.append(args[i]).append(" ");
         }
         String sql = sqlBuilder.toString().trim();
 
-        plugin.executeRawSql(sql, sender);
+        sqlConsole.execute(sender, sql, export);
         return true;
     }
 
@@ -374,7 +416,6 @@ public class HardcoreBanCommand implements CommandExecutor, TabCompleter {
                 targetPlayer.getName(),
                 directExpiry,
                 sender.getName(),
-                System.currentTimeMillis(),
                 "Direct ban test"
         );
 
@@ -414,6 +455,14 @@ public class HardcoreBanCommand implements CommandExecutor, TabCompleter {
                     completions.add(cmd);
                 }
             }
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("sql")) {
+            if (sender.hasPermission("hardcoreban.admin")) {
+                for (String mode : List.of("page", "explain", "export")) {
+                    if (mode.startsWith(args[1].toLowerCase())) {
+                        completions.add(mode);
+                    }
+                }
+            }
         } else if (args.length == 2) {
             // Add player names for commands that need player arguments
             if ((args[0].equalsIgnoreCase("check") && sender.hasPermission("hardcoreban.check")) ||
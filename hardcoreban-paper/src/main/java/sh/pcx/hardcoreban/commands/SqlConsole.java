@@ -0,0 +1,158 @@
+package sh.pcx.hardcoreban.commands;
+
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+
+import net.kyori.adventure.text.minimessage.MiniMessage;
+
+import sh.pcx.hardcoreban.HardcoreBanBootstrap;
+import sh.pcx.hardcoreban.model.SqlResult;
+
+/**
+ * Runs raw SQL for staff without blocking the server thread, and pages through the results.
+ *
+ * <p>Statements run in the admin database lane, read-only unless {@code sql-console.read-only}
+ * is disabled. Each sender's last result is kept so its pages can be shown one at a time; a
+ * query with more rows than are kept is written to a file in the plugin folder instead.</p>
+ */
+public class SqlConsole {
+
+    private static final int PAGE_SIZE = 10;
+    private static final int DISPLAY_ROWS = 100;
+    private static final int MAX_COLUMN_WIDTH = 24;
+
+    private final HardcoreBanBootstrap plugin;
+    private final MiniMessage miniMessage;
+    // Last result per sender, only touched on the main thread
+    private final Map<String, SqlResult> results = new HashMap<>();
+
+    /**
+     * Creates a new SqlConsole.
+     *
+     * @param plugin The main plugin instance
+     * @param miniMessage The MiniMessage instance for status messages
+     */
+    public SqlConsole(HardcoreBanBootstrap plugin, MiniMessage miniMessage) {
+        this.plugin = plugin;
+        this.miniMessage = miniMessage;
+    }
+
+    /**
+     * Runs a statement and shows the first page of its result when it completes.
+     *
+     * @param sender The command sender who will receive the result
+     * @param sql The statement to run
+     * @param export Whether to write every row of a query to a file instead of showing it
+     */
+    public void execute(CommandSender sender, String sql, boolean export) {
+        boolean readOnly = plugin.getConfigManager().getBoolean("sql-console.read-only", true);
+        String fileName = "sql-" + new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date()) + ".tsv";
+        Path exportFile = plugin.getPlugin().getDataFolder().toPath().resolve("sql-exports").resolve(fileName);
+
+        sender.sendMessage(miniMessage.deserialize("<gray>Running query" + (readOnly ? " (read-only)" : "") + "..."));
+        plugin.getDatabaseManager().executeConsoleSql(sql, readOnly, export ? 0 : DISPLAY_ROWS, exportFile)
+                .whenComplete((result, error) -> Bukkit.getScheduler().runTask(plugin.getPlugin(), () -> {
+                    if (error != null) {
+                        plugin.log(Level.SEVERE, "Error executing raw SQL: " + error.getMessage());
+                        // Plain text, since database errors often quote the SQL
+                        sender.sendMessage("§cError executing SQL: " + error.getMessage());
+                        return;
+                    }
+                    showSummary(sender, result);
+                }));
+    }
+
+    private void showSummary(CommandSender sender, SqlResult result) {
+        if (!result.isQuery()) {
+            sender.sendMessage(miniMessage.deserialize("<green>Query executed. Rows affected: " +
+                    result.getUpdateCount() + " <gray>(" + result.getElapsedMillis() + " ms)"));
+            return;
+        }
+
+        sender.sendMessage(miniMessage.deserialize("<green>" + result.getRowCount() + " rows <gray>in " +
+                result.getElapsedMillis() + " ms"));
+        if (result.getExportFile() != null) {
+            sender.sendMessage(miniMessage.deserialize("<gray>All rows were written to <yellow>" +
+                    result.getExportFile().toAbsolutePath()));
+        }
+        if (result.isTruncated()) {
+            sender.sendMessage(miniMessage.deserialize("<gray>The query returned more rows than were read; " +
+                    "add a LIMIT or narrow the WHERE clause."));
+        }
+
+        if (!result.getRows().isEmpty()) {
+            results.put(sender.getName(), result);
+            showPage(sender, 1);
+        }
+    }
+
+    /**
+     * Shows a page of the sender's last query result.
+     *
+     * @param sender The command sender
+     * @param page The page number, starting at 1
+     */
+    public void showPage(CommandSender sender, int page) {
+        SqlResult result = results.get(sender.getName());
+        if (result == null) {
+            sender.sendMessage(miniMessage.deserialize("<red>You have no query results to page through."));
+            return;
+        }
+
+        List<List<String>> rows = result.getRows();
+        int pages = (rows.size() + PAGE_SIZE - 1) / PAGE_SIZE;
+        if (page < 1 || page > pages) {
+            sender.sendMessage(miniMessage.deserialize("<red>Page must be between 1 and " + pages + "."));
+            return;
+        }
+
+        List<List<String>> pageRows = rows.subList((page - 1) * PAGE_SIZE, Math.min(page * PAGE_SIZE, rows.size()));
+        List<String> columns = result.getColumns();
+
+        // Size each column to the widest value on this page
+        int[] widths = new int[columns.size()];
+        for (int i = 0; i < columns.size(); i++) {
+            widths[i] = Math.min(columns.get(i).length(), MAX_COLUMN_WIDTH);
+            for (List<String> row : pageRows) {
+                widths[i] = Math.max(widths[i], Math.min(row.get(i).length(), MAX_COLUMN_WIDTH));
+            }
+        }
+
+        sender.sendMessage("§a" + formatRow(columns, widths));
+        for (List<String> row : pageRows) {
+            sender.sendMessage("§7" + formatRow(row, widths));
+        }
+
+        String footer = "<gray>Page " + page + "/" + pages;
+        if (page < pages) {
+            footer += ", <yellow>/hardcoreban sql page " + (page + 1) + "</yellow> for more";
+        }
+        if (rows.size() < result.getRowCount() && result.getExportFile() == null) {
+            footer += ", showing the first " + rows.size() + " rows";
+        }
+        sender.sendMessage(miniMessage.deserialize(footer));
+    }
+
+    private static String formatRow(List<String> values, int[] widths) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < values.size(); i++) {
+            String value = values.get(i);
+            if (value.length() > widths[i]) {
+                value = value.substring(0, widths[i] - 1) + "…";
+            }
+            line.append(i > 0 ? " | " : "").append(value);
+            for (int pad = value.length(); pad < widths[i]; pad++) {
+                line.append(' ');
+            }
+        }
+        return line.toString();
+    }
+}
@@ -2,29 +2,66 @@ package sh.pcx.hardcoreban.database;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
-import org.bukkit.command.CommandSender;
 import sh.pcx.hardcoreban.HardcoreBanBootstrap;
+import sh.pcx.hardcoreban.database.DatabaseWorkQueue.WorkClass;
+import sh.pcx.hardcoreban.database.StatementPolicy.Operation;
 import sh.pcx.hardcoreban.model.Ban;
+import sh.pcx.hardcoreban.model.SqlResult;
 import sh.pcx.hardcoreban.util.ConfigManager;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 
 /**
  * Manages database operations for the HardcoreBan plugin.
- * Handles connections via HikariCP connection pool, ban storage and retrieval.
+ * Handles connections via HikariCP connection pools, one per class of work, ban storage and retrieval.
  */
 public class DatabaseManager {
+    private static final long LOOKUP_WINDOW_MILLIS = 5;
+    private static final int MAX_LOOKUP_BATCH = 500;
+    // How long removal markers are kept, so a removal and a ban racing with it are still ordered
+    private static final long TOMBSTONE_RETENTION_MILLIS = 3600000;
+    // Statements the SQL console accepts in read-only mode
+    private static final List<String> READ_ONLY_KEYWORDS = List.of("SELECT", "SHOW", "DESCRIBE", "DESC", "EXPLAIN");
+    // Clauses that make one of those statements write a file or variable, or take locks
+    private static final List<String> READ_ONLY_REJECTED = List.of("INTO", "FOR UPDATE", "FOR SHARE",
+            "LOCK IN SHARE MODE", "GET_LOCK");
+    // The database server's clock in milliseconds; every host stamps writes with it, so their clocks never matter
+    private static final String DB_NOW = "ROUND(UNIX_TIMESTAMP(NOW(3)) * 1000)";
+    // True when an incoming ban row is newer than the stored one: the later banned_at wins, then the later expiry
+    private static final String INCOMING_IS_NEWER =
+            "(VALUES(banned_at) > banned_at OR (VALUES(banned_at) = banned_at AND VALUES(expiry) >= expiry))";
+
     private final HardcoreBanBootstrap plugin;
     private final String host;
     private final int port;
     private final String database;
     private final String username;
     private final String password;
-    private HikariDataSource dataSource;
+    private final String scope;
+    private volatile Map<WorkClass, HikariDataSource> pools = Map.of();
+
+    // Async lookups run on virtual threads in the enforcement lane, which has its own pool, batched
+    // so a burst of joins costs a few queries and no staff or background work can delay them
+    private final DatabaseWorkQueue workQueue;
+    private final BanLookupBatcher<Long> lookupBatcher;
+    private final StatementPolicy statementPolicy = new StatementPolicy();
 
     /**
      * Creates a new DatabaseManager instance.
@@ -43,33 +80,47 @@ public class DatabaseManager {
         this.database = configManager.getString("database.database", "minecraft");
         this.username = configManager.getString("database.username", "root");
         this.password = configManager.getString("database.password", "");
+        this.scope = configManager.getString("ban-scope", "default");
+
+        Map<WorkClass, Integer> poolSizes = new EnumMap<>(WorkClass.class);
+        for (WorkClass workClass : WorkClass.values()) {
+            poolSizes.put(workClass, Math.max(1, configManager.getInt("database.pools." + workClass.getKey(),
+                    workClass.getDefaultPoolSize())));
+        }
+        this.workQueue = new DatabaseWorkQueue(poolSizes);
+        this.lookupBatcher = new BanLookupBatcher<>(this::fetchExpiries, 0L,
+                workQueue.executor(WorkClass.ENFORCEMENT), LOOKUP_WINDOW_MILLIS, MAX_LOOKUP_BATCH);
     }
 
     /**
-     * Connects to the database using HikariCP connection pool.
+     * Connects to the database using one HikariCP connection pool per class of work.
      *
      * @return true if connection successful, false otherwise
      */
-    public boolean connect() {
-        if (dataSource != null && !dataSource.isClosed()) {
+    public synchronized boolean connect() {
+        if (isConnected()) {
             return true;
         }
 
+        Map<WorkClass, HikariDataSource> opened = new EnumMap<>(WorkClass.class);
         try {
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl("jdbc:mysql://" + host + ":" + port + "/" + database +
-                    "?useSSL=false&serverTimezone=UTC");
-            config.setUsername(username);
-            config.setPassword(password);
-            config.setPoolName("HardcoreBan-Pool");
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(300000);
-            config.setConnectionTimeout(10000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTestQuery("SELECT 1");
-
-            dataSource = new HikariDataSource(config);
+            for (WorkClass workClass : WorkClass.values()) {
+                HikariConfig config = new HikariConfig();
+                config.setJdbcUrl("jdbc:mysql://" + host + ":" + port + "/" + database +
+                        "?useSSL=false&serverTimezone=UTC&useCursorFetch=true&useAffectedRows=true");
+                config.setUsername(username);
+                config.setPassword(password);
+                config.setPoolName("HardcoreBan-" + workClass.getKey());
+                config.setMaximumPoolSize(workQueue.getPoolSize(workClass));
+                config.setMinimumIdle(workClass == WorkClass.ENFORCEMENT ? 2 : 1);
+                config.setIdleTimeout(300000);
+                config.setConnectionTimeout(10000);
+                config.setMaxLifetime(1800000);
+                config.setConnectionTestQuery("SELECT 1");
+
+                opened.put(workClass, new HikariDataSource(config));
+            }
+            pools = opened;
 
             // Create the table if it doesn't exist
             createTablesIfNotExist();
@@ -78,100 +129,173 @@ public class DatabaseManager {
             return true;
         } catch (Exception e) {
             plugin.log(Level.SEVERE, "Failed to connect to database: " + e.getMessage());
-            dataSource = null;
+            opened.values().forEach(HikariDataSource::close);
+            pools = Map.of();
             return false;
         }
     }
 
     /**
-     * Disconnects from the database by closing the HikariCP pool.
+     * Disconnects from the database by closing the HikariCP pools.
      */
-    public void disconnect() {
-        if (dataSource != null && !dataSource.isClosed()) {
-            dataSource.close();
+    public synchronized void disconnect() {
+        workQueue.shutdown();
+        statementPolicy.shutdown();
+
+        if (isConnected()) {
+            Map<WorkClass, HikariDataSource> closing = pools;
+            pools = Map.of();
+            closing.values().forEach(HikariDataSource::close);
             plugin.log(Level.INFO, "Disconnected from database.");
         }
     }
 
+    private boolean isConnected() {
+        HikariDataSource pool = pools.get(WorkClass.ENFORCEMENT);
+        return pool != null && !pool.isClosed();
+    }
+
+    /**
+     * Gets a connection from the pool of a class of work.
+     *
+     * @param workClass The class of the work the connection is for
+     * @return A connection, to be closed by the caller
+     * @throws SQLException If the database is unavailable or no connection becomes free in time
+     */
+    private Connection getConnection(WorkClass workClass) throws SQLException {
+        HikariDataSource pool = pools.get(workClass);
+        if (pool == null || pool.isClosed()) {
+            throw new SQLException("Database connection pool is not available");
+        }
+        return pool.getConnection();
+    }
+
+    /**
+     * Gets the queue that runs asynchronous database work, for its metrics.
+     *
+     * @return The database work queue
+     */
+    public DatabaseWorkQueue getWorkQueue() {
+        return workQueue;
+    }
+
     /**
      * Creates the required database tables if they don't exist.
      */
     private void createTablesIfNotExist() {
-        if (dataSource == null || dataSource.isClosed()) {
+        if (!isConnected()) {
             plugin.log(Level.SEVERE, "Cannot create table: database connection pool is closed or null");
             return;
         }
 
         String sql = "CREATE TABLE IF NOT EXISTS hardcoreban_bans (" +
-                "uuid VARCHAR(36) PRIMARY KEY, " +
+                "uuid VARCHAR(36), " +
+                "scope VARCHAR(64) NOT NULL DEFAULT 'default', " +
                 "player_name VARCHAR(36), " +
                 "expiry BIGINT, " +
                 "banned_by VARCHAR(36), " +
                 "banned_at BIGINT, " +
-                "reason VARCHAR(255)" +
+                "reason VARCHAR(255), " +
+                "PRIMARY KEY (uuid, scope)" +
                 ");";
 
-        try (Connection conn = dataSource.getConnection();
-             Statement stmt = conn.createStatement()) {
+        try (Connection conn = getConnection(WorkClass.MAINTENANCE);
+             Statement stmt = statementPolicy.create(conn, Operation.SCHEMA)) {
             stmt.execute(sql);
+            migrateScopeColumn(conn, stmt);
             plugin.log(Level.INFO, "Verified that database table exists");
         } catch (SQLException e) {
             plugin.log(Level.SEVERE, "Failed to create database table: " + e.getMessage());
         }
     }
 
+    /**
+     * Adds the scope column to tables created before bans were scoped, keeping existing
+     * bans in the "default" scope and making (uuid, scope) the primary key.
+     *
+     * @param conn The connection to use
+     * @param stmt A statement on that connection
+     * @throws SQLException If the migration fails
+     */
+    private void migrateScopeColumn(Connection conn, Statement stmt) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getColumns(conn.getCatalog(), null, "hardcoreban_bans", "scope")) {
+            if (rs.next()) {
+                return;
+            }
+        }
+
+        stmt.execute("ALTER TABLE hardcoreban_bans " +
+                "ADD COLUMN scope VARCHAR(64) NOT NULL DEFAULT 'default' AFTER uuid, " +
+                "DROP PRIMARY KEY, ADD PRIMARY KEY (uuid, scope)");
+        plugin.log(Level.INFO, "Added ban scopes to the database table");
+    }
+
+    /**
+     * Gets the ban scope this server reads and writes.
+     *
+     * @return The ban scope
+     */
+    public String getScope() {
+        return scope;
+    }
+
     /**
      * Adds a ban for a player who died in hardcore mode.
-     * Uses default values for banned by, banned at, and reason.
+     * Uses default values for banned by and reason.
      *
      * @param uuid The UUID of the player
      * @param playerName The name of the player
      * @param expiry The time when the ban expires
-     * @return true if the ban was added successfully, false otherwise
+     * @return true if the ban was written, false if a newer row was kept or the write failed
      */
     public boolean addBan(UUID uuid, String playerName, long expiry) {
-        return addBan(uuid, playerName, expiry, "Console", System.currentTimeMillis(), "Death in hardcore mode");
+        return addBan(uuid, playerName, expiry, "Console", "Death in hardcore mode");
     }
 
     /**
-     * Adds a ban with custom details.
+     * Adds a ban with custom details. The ban is stamped with the database server's clock as its
+     * banned_at. If the player already has a row in this scope, written from this server or any
+     * other, it is only replaced when this ban is newer: the later banned_at wins, and between equal
+     * times the later expiry. The check is made by the database in the same statement, so
+     * concurrent writers end with the same row whatever the clocks of their hosts say.
      *
      * @param uuid The UUID of the player
      * @param playerName The name of the player
      * @param expiry The time when the ban expires
      * @param bannedBy Who banned the player
-     * @param bannedAt When the ban was created
      * @param reason The reason for the ban
-     * @return true if the ban was added successfully, false otherwise
+     * @return true if this ban was written, false if a newer ban or removal was kept or the write failed
      */
-    public boolean addBan(UUID uuid, String playerName, long expiry, String bannedBy, long bannedAt, String reason) {
-        if (dataSource == null || dataSource.isClosed()) {
+    public boolean addBan(UUID uuid, String playerName, long expiry, String bannedBy, String reason) {
+        if (!isConnected()) {
             plugin.log(Level.WARNING, "Database connection pool is not available");
             return false;
         }
 
-        String sql = "INSERT INTO hardcoreban_bans (uuid, player_name, expiry, banned_by, banned_at, reason) " +
-                "VALUES (?, ?, ?, ?, ?, ?) " +
+        // expiry and banned_at are assigned last, since the condition reads them
+        String sql = "INSERT INTO hardcoreban_bans " +
+                "(uuid, scope, player_name, expiry, banned_by, banned_at, reason) " +
+                "VALUES (?, ?, ?, ?, ?, " + DB_NOW + ", ?) " +
                 "ON DUPLICATE KEY UPDATE " +
-                "player_name = ?, expiry = ?, banned_by = ?, banned_at = ?, reason = ?";
-
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+                "player_name = IF(" + INCOMING_IS_NEWER + ", VALUES(player_name), player_name), " +
+                "banned_by = IF(" + INCOMING_IS_NEWER + ", VALUES(banned_by), banned_by), " +
+                "reason = IF(" + INCOMING_IS_NEWER + ", VALUES(reason), reason), " +
+                "expiry = IF(" + INCOMING_IS_NEWER + ", VALUES(expiry), expiry), " +
+                "banned_at = IF(" + INCOMING_IS_NEWER + ", VALUES(banned_at), banned_at)";
+
+        try (Connection conn = getConnection(WorkClass.WRITE);
+             PreparedStatement stmt = statementPolicy.prepare(conn, sql, Operation.WRITE)) {
             stmt.setString(1, uuid.toString());
-            stmt.setString(2, playerName);
-            stmt.setLong(3, expiry);
-            stmt.setString(4, bannedBy);
-            stmt.setLong(5, bannedAt);
+            stmt.setString(2, scope);
+            stmt.setString(3, playerName);
+            stmt.setLong(4, expiry);
+            stmt.setString(5, bannedBy);
             stmt.setString(6, reason);
-
-            // For ON DUPLICATE KEY UPDATE
-            stmt.setString(7, playerName);
-            stmt.setLong(8, expiry);
-            stmt.setString(9, bannedBy);
-            stmt.setLong(10, bannedAt);
-            stmt.setString(11, reason);
-
-            stmt.executeUpdate();
+            // The connection reports affected rows, so 0 means the stored row was newer and kept
+            if (stmt.executeUpdate() == 0) {
+                plugin.log(Level.FINE, "Kept a newer ban or removal for player " + uuid + " over this ban");
+                return false;
+            }
             return true;
         } catch (SQLException e) {
             plugin.log(Level.SEVERE, "Failed to add ban: " + e.getMessage());
@@ -183,7 +307,7 @@ public class DatabaseManager {
      * Adds a ban using a Ban model object.
      *
      * @param ban The Ban object containing all ban details
-     * @return true if the ban was added successfully, false otherwise
+     * @return true if the ban was written, false if a newer row was kept or the write failed
      */
     public boolean addBan(Ban ban) {
         return addBan(
@@ -191,28 +315,32 @@ public class DatabaseManager {
                 ban.getPlayerName(),
                 ban.getExpiry(),
                 ban.getBannedBy(),
-                ban.getBannedAt(),
                 ban.getReason()
         );
     }
 
     /**
-     * Removes a ban for a player.
+     * Removes a ban for a player. The row is kept as a removal marker (expiry 0, banned_at set to
+     * the database server's clock) rather than deleted, so the removal is ordered against bans by
+     * the same rule as other writes: a ban the database applies after the removal replaces the
+     * marker as usual.
      *
      * @param uuid The UUID of the player
      * @return true if a ban was removed, false if the player wasn't banned or an error occurred
      */
     public boolean removeBan(UUID uuid) {
-        if (dataSource == null || dataSource.isClosed()) {
+        if (!isConnected()) {
             plugin.log(Level.WARNING, "Database connection pool is not available");
             return false;
         }
 
-        String sql = "DELETE FROM hardcoreban_bans WHERE uuid = ?";
+        String sql = "UPDATE hardcoreban_bans SET expiry = 0, banned_at = " + DB_NOW + " " +
+                "WHERE uuid = ? AND scope = ? AND expiry > 0";
 
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (Connection conn = getConnection(WorkClass.WRITE);
+             PreparedStatement stmt = statementPolicy.prepare(conn, sql, Operation.WRITE)) {
             stmt.setString(1, uuid.toString());
+            stmt.setString(2, scope);
             int rowsAffected = stmt.executeUpdate();
             return rowsAffected > 0;
         } catch (SQLException e) {
@@ -222,19 +350,21 @@ public class DatabaseManager {
     }
 
     /**
-     * Clears all bans from the database.
+     * Clears all bans in this server's scope, leaving removal markers like {@link #removeBan(UUID)}.
      */
     public void clearAllBans() {
-        if (dataSource == null || dataSource.isClosed()) {
+        if (!isConnected()) {
             plugin.log(Level.WARNING, "Database connection pool is not available");
             return;
         }
 
-        String sql = "DELETE FROM hardcoreban_bans";
+        String sql = "UPDATE hardcoreban_bans SET expiry = 0, banned_at = " + DB_NOW + " " +
+                "WHERE scope = ? AND expiry > 0";
 
-        try (Connection conn = dataSource.getConnection();
-             Statement stmt = conn.createStatement()) {
-            int rowsAffected = stmt.executeUpdate(sql);
+        try (Connection conn = getConnection(WorkClass.WRITE);
+             PreparedStatement stmt = statementPolicy.prepare(conn, sql, Operation.WRITE)) {
+            stmt.setString(1, scope);
+            int rowsAffected = stmt.executeUpdate();
             plugin.log(Level.INFO, "Cleared " + rowsAffected + " bans from the database");
         } catch (SQLException e) {
             plugin.log(Level.SEVERE, "Failed to clear all bans: " + e.getMessage());
@@ -248,16 +378,17 @@ public class DatabaseManager {
      * @return true if the player is banned, false otherwise
      */
     public boolean isBanned(UUID uuid) {
-        if (dataSource == null || dataSource.isClosed()) {
+        if (!isConnected()) {
             plugin.log(Level.WARNING, "Database connection pool is not available");
             return false;
         }
 
-        String sql = "SELECT expiry FROM hardcoreban_bans WHERE uuid = ?";
+        String sql = "SELECT expiry FROM hardcoreban_bans WHERE uuid = ? AND scope = ?";
 
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (Connection conn = getConnection(WorkClass.ENFORCEMENT);
+             PreparedStatement stmt = statementPolicy.prepare(conn, sql, Operation.LOOKUP)) {
             stmt.setString(1, uuid.toString());
+            stmt.setString(2, scope);
 
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
@@ -279,16 +410,17 @@ public class DatabaseManager {
      * @return The time left in milliseconds, or 0 if the player isn't banned
      */
     public long getTimeLeft(UUID uuid) {
-        if (dataSource == null || dataSource.isClosed()) {
+        if (!isConnected()) {
             plugin.log(Level.WARNING, "Database connection pool is not available");
             return 0;
         }
 
-        String sql = "SELECT expiry FROM hardcoreban_bans WHERE uuid = ?";
+        String sql = "SELECT expiry FROM hardcoreban_bans WHERE uuid = ? AND scope = ?";
 
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (Connection conn = getConnection(WorkClass.ENFORCEMENT);
+             PreparedStatement stmt = statementPolicy.prepare(conn, sql, Operation.LOOKUP)) {
             stmt.setString(1, uuid.toString());
+            stmt.setString(2, scope);
 
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
@@ -304,6 +436,51 @@ public class DatabaseManager {
         }
     }
 
+    /**
+     * Gets the expiry time of a player's ban without blocking the caller.
+     * Lookups arriving close together are resolved by a single query.
+     *
+     * @param uuid The UUID of the player
+     * @return A future completed with the expiry time, or 0 if the player has no ban
+     */
+    public CompletableFuture<Long> getExpiryAsync(UUID uuid) {
+        return lookupBatcher.lookup(uuid);
+    }
+
+    /**
+     * Gets the ban expiry times of a batch of players.
+     *
+     * @param uuids The UUIDs of the players
+     * @return A map of UUID to expiry time, for the players that have a ban
+     * @throws SQLException If the database is unavailable or the query fails
+     */
+    private Map<UUID, Long> fetchExpiries(List<UUID> uuids) throws SQLException {
+        Map<UUID, Long> expiries = new HashMap<>();
+
+        if (!isConnected()) {
+            throw new SQLException("Database connection pool is not available");
+        }
+
+        String sql = "SELECT uuid, expiry FROM hardcoreban_bans WHERE scope = ? AND uuid IN (" +
+                String.join(", ", Collections.nCopies(uuids.size(), "?")) + ")";
+
+        try (Connection conn = getConnection(WorkClass.ENFORCEMENT);
+             PreparedStatement stmt = statementPolicy.prepare(conn, sql, Operation.LOOKUP)) {
+            stmt.setString(1, scope);
+            for (int i = 0; i < uuids.size(); i++) {
+                stmt.setString(i + 2, uuids.get(i).toString());
+            }
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    expiries.put(UUID.fromString(rs.getString("uuid")), rs.getLong("expiry"));
+                }
+            }
+        }
+
+        return expiries;
+    }
+
     /**
      * Gets a Ban object for a player if they are banned.
      *
@@ -311,16 +488,18 @@ public class DatabaseManager {
      * @return A Ban object, or null if the player isn't banned
      */
     public Ban getBan(UUID uuid) {
-        if (dataSource == null || dataSource.isClosed()) {
+        if (!isConnected()) {
             plugin.log(Level.WARNING, "Database connection pool is not available");
             return null;
         }
 
-        String sql = "SELECT player_name, expiry, banned_by, banned_at, reason FROM hardcoreban_bans WHERE uuid = ?";
+        String sql = "SELECT player_name, expiry, banned_by, banned_at, reason FROM hardcoreban_bans " +
+                "WHERE uuid = ? AND scope = ?";
 
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (Connection conn = getConnection(WorkClass.ENFORCEMENT);
+             PreparedStatement stmt = statementPolicy.prepare(conn, sql, Operation.LOOKUP)) {
             stmt.setString(1, uuid.toString());
+            stmt.setString(2, scope);
 
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
@@ -351,16 +530,17 @@ public class DatabaseManager {
     public Map<UUID, Long> getAllBans() {
         Map<UUID, Long> bans = new HashMap<>();
 
-        if (dataSource == null || dataSource.isClosed()) {
+        if (!isConnected()) {
             plugin.log(Level.WARNING, "Database connection pool is not available");
             return bans;
         }
 
-        String sql = "SELECT uuid, expiry FROM hardcoreban_bans";
+        String sql = "SELECT uuid, expiry FROM hardcoreban_bans WHERE scope = ?";
 
-        try (Connection conn = dataSource.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+        try (Connection conn = getConnection(WorkClass.MAINTENANCE);
+             PreparedStatement stmt = statementPolicy.prepare(conn, sql, Operation.SCAN)) {
+            stmt.setString(1, scope);
+            ResultSet rs = stmt.executeQuery();
             while (rs.next()) {
                 UUID uuid = UUID.fromString(rs.getString("uuid"));
                 long expiry = rs.getLong("expiry");
@@ -385,16 +565,18 @@ public class DatabaseManager {
     public Map<UUID, Ban> getAllBanDetails() {
         Map<UUID, Ban> bans = new HashMap<>();
 
-        if (dataSource == null || dataSource.isClosed()) {
+        if (!isConnected()) {
             plugin.log(Level.WARNING, "Database connection pool is not available");
             return bans;
         }
 
-        String sql = "SELECT uuid, player_name, expiry, banned_by, banned_at, reason FROM hardcoreban_bans";
+        String sql = "SELECT uuid, player_name, expiry, banned_by, banned_at, reason FROM hardcoreban_bans " +
+                "WHERE scope = ?";
 
-        try (Connection conn = dataSource.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+        try (Connection conn = getConnection(WorkClass.MAINTENANCE);
+             PreparedStatement stmt = statementPolicy.prepare(conn, sql, Operation.SCAN)) {
+            stmt.setString(1, scope);
+            ResultSet rs = stmt.executeQuery();
             long now = System.currentTimeMillis();
 
             while (rs.next()) {
@@ -419,19 +601,23 @@ public class DatabaseManager {
     }
 
     /**
-     * Removes expired bans from the database.
+     * Removes expired bans from the database, along with removal markers older than
+     * {@link #TOMBSTONE_RETENTION_MILLIS}.
      */
     public void cleanupExpiredBans() {
-        if (dataSource == null || dataSource.isClosed()) {
+        if (!isConnected()) {
             plugin.log(Level.WARNING, "Database connection pool is not available");
             return;
         }
 
-        String sql = "DELETE FROM hardcoreban_bans WHERE expiry <= ?";
+        String sql = "DELETE FROM hardcoreban_bans " +
+                "WHERE expiry <= ? AND (expiry > 0 OR banned_at <= " + DB_NOW + " - ?)";
 
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setLong(1, System.currentTimeMillis());
+        try (Connection conn = getConnection(WorkClass.MAINTENANCE);
+             PreparedStatement stmt = statementPolicy.prepare(conn, sql, Operation.WRITE)) {
+            long now = System.currentTimeMillis();
+            stmt.setLong(1, now);
+            stmt.setLong(2, TOMBSTONE_RETENTION_MILLIS);
 
             int rowsAffected = stmt.executeUpdate();
             if (rowsAffected > 0) {
@@ -443,55 +629,163 @@ public class DatabaseManager {
     }
 
     /**
-     * Executes a raw SQL query. Should only be used for admin commands.
+     * Runs a statement from the SQL console in the admin lane, off the caller's thread.
+     * The statement is limited like all admin work: it is cancelled after the admin time limit
+     * and reads at most {@link StatementPolicy#RAW_SQL_ROW_LIMIT} rows. A query keeps its first
+     * {@code displayRows} rows for display; if it has more, all of its rows are streamed to the
+     * export file as tab-separated values rather than held in memory.
      *
-     * @param sql The SQL query to execute
-     * @param sender The command sender who will receive the results
-     * @throws SQLException If an SQL error occurs
+     * <p>In read-only mode only statements starting with one of {@link #READ_ONLY_KEYWORDS} and
+     * containing none of {@link #READ_ONLY_REJECTED} are accepted, and the connection is also marked
+     * read-only so the database refuses any write to its tables.</p>
+     *
+     * @param sql The statement to run
+     * @param readOnly Whether to refuse statements that change data
+     * @param displayRows The number of rows to keep for display
+     * @param exportFile The file to write the rows to if there are more than can be displayed, or null to only keep
+     *                   them; an existing file is never overwritten, a numbered name next to it is used instead
+     * @return A future completed with the result, or exceptionally if the statement was refused or failed
      */
-    public void executeRawSql(String sql, CommandSender sender) throws SQLException {
-        if (dataSource == null || dataSource.isClosed()) {
-            throw new SQLException("Database connection pool is not available");
+    public CompletableFuture<SqlResult> executeConsoleSql(String sql, boolean readOnly, int displayRows,
+                                                          Path exportFile) {
+        return workQueue.submit(WorkClass.ADMIN, () -> {
+            if (!isConnected()) {
+                throw new SQLException("Database connection pool is not available");
+            }
+            if (readOnly && !isReadOnlyStatement(sql)) {
+                throw new SQLException("Read-only mode only allows " + String.join(", ", READ_ONLY_KEYWORDS) +
+                        " statements without " + String.join(", ", READ_ONLY_REJECTED));
+            }
+
+            long start = System.currentTimeMillis();
+            try (Connection conn = getConnection(WorkClass.ADMIN);
+                 Statement stmt = statementPolicy.create(conn, Operation.ADMIN)) {
+                conn.setReadOnly(readOnly);
+
+                if (!stmt.execute(sql)) {
+                    return new SqlResult(stmt.getUpdateCount(), System.currentTimeMillis() - start);
+                }
+
+                try (ResultSet rs = stmt.getResultSet()) {
+                    return readConsoleResult(rs, displayRows, exportFile, start);
+                }
+            }
+        });
+    }
+
+    /**
+     * Reads the rows of a console query, streaming them to the export file once there are more
+     * than can be displayed.
+     *
+     * @param rs The rows of the query
+     * @param displayRows The number of rows to keep for display
+     * @param exportFile The file to write the rows to, or null to stop after the displayed rows
+     * @param start When the statement started
+     * @return The result of the query
+     * @throws SQLException If reading the rows fails
+     * @throws IOException If writing the export file fails
+     */
+    private SqlResult readConsoleResult(ResultSet rs, int displayRows, Path exportFile, long start)
+            throws SQLException, IOException {
+        ResultSetMetaData meta = rs.getMetaData();
+        int columnCount = meta.getColumnCount();
+        List<String> columns = new ArrayList<>();
+        for (int i = 1; i <= columnCount; i++) {
+            columns.add(meta.getColumnLabel(i));
         }
 
-        try (Connection conn = dataSource.getConnection();
-             Statement stmt = conn.createStatement()) {
-            boolean isQuery = sql.trim().toLowerCase().startsWith("select");
+        List<List<String>> kept = new ArrayList<>();
+        BufferedWriter export = null;
+        Path exported = null;
+        int count = 0;
+        boolean truncated = false;
+        try {
+            while (rs.next()) {
+                if (count == StatementPolicy.RAW_SQL_ROW_LIMIT || (exportFile == null && count == displayRows)) {
+                    truncated = true;
+                    break;
+                }
 
-            if (isQuery) {
-                try (ResultSet rs = stmt.executeQuery(sql)) {
-                    if (sender != null) {
-                        // Get metadata
-                        ResultSetMetaData meta = rs.getMetaData();
-                        int columnCount = meta.getColumnCount();
+                List<String> row = new ArrayList<>(columnCount);
+                for (int i = 1; i <= columnCount; i++) {
+                    String value = rs.getString(i);
+                    row.add(value == null ? "NULL" : value);
+                }
+                count++;
 
-                        // Print headers
-                        StringBuilder header = new StringBuilder("§a");
-                        for (int i = 1; i <= columnCount; i++) {
-                            header.append(meta.getColumnName(i)).append(" | ");
-                        }
-                        sender.sendMessage(header.toString());
-
-                        // Print data
-                        int count = 0;
-                        while (rs.next() && count < 50) {
-                            StringBuilder row = new StringBuilder("§7");
-                            for (int i = 1; i <= columnCount; i++) {
-                                row.append(rs.getString(i)).append(" | ");
+                if (export == null && kept.size() < displayRows) {
+                    kept.add(row);
+                    continue;
+                }
+                if (export == null) {
+                    // More rows than can be displayed: write everything read so far, then stream the rest
+                    Files.createDirectories(exportFile.getParent());
+                    exported = exportFile;
+                    for (int attempt = 1; export == null; attempt++) {
+                        try {
+                            export = Files.newBufferedWriter(exported, StandardCharsets.UTF_8,
+                                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                        } catch (FileAlreadyExistsException e) {
+                            if (attempt == 100) {
+                                throw e;
                             }
-                            sender.sendMessage(row.toString());
-                            count++;
+                            String name = exportFile.getFileName().toString();
+                            int dot = name.lastIndexOf('.');
+                            exported = exportFile.resolveSibling(dot < 0 ? name + "-" + attempt
+                                    : name.substring(0, dot) + "-" + attempt + name.substring(dot));
                         }
-
-                        sender.sendMessage("§7Total rows: §a" + count + (count >= 50 ? " (showing first 50)" : ""));
+                    }
+                    writeExportRow(export, columns);
+                    for (List<String> keptRow : kept) {
+                        writeExportRow(export, keptRow);
                     }
                 }
-            } else {
-                int rowsAffected = stmt.executeUpdate(sql);
-                if (sender != null) {
-                    sender.sendMessage("§aQuery executed. Rows affected: " + rowsAffected);
-                }
+                writeExportRow(export, row);
+            }
+        } finally {
+            if (export != null) {
+                export.close();
+            }
+        }
+
+        return new SqlResult(columns, kept, count, truncated, exported,
+                System.currentTimeMillis() - start);
+    }
+
+    private static void writeExportRow(BufferedWriter export, List<String> values) throws IOException {
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                export.write('\t');
+            }
+            export.write(values.get(i).replace('\t', ' ').replace('\n', ' ').replace('\r', ' '));
+        }
+        export.newLine();
+    }
+
+    /**
+     * Checks if a statement starts with a keyword that cannot change data and has no clause that
+     * writes or locks. Clauses are matched as whole words anywhere in the statement, including
+     * comments (which MySQL may execute) and string literals, so a match can refuse a harmless query.
+     *
+     * @param sql The statement
+     * @return true if the statement is allowed in read-only mode
+     */
+    private static boolean isReadOnlyStatement(String sql) {
+        String trimmed = sql.trim();
+        int end = 0;
+        while (end < trimmed.length() && Character.isLetter(trimmed.charAt(end))) {
+            end++;
+        }
+        if (!READ_ONLY_KEYWORDS.contains(trimmed.substring(0, end).toUpperCase(Locale.ROOT))) {
+            return false;
+        }
+
+        String words = " " + trimmed.toUpperCase(Locale.ROOT).replaceAll("[^A-Z0-9_]+", " ") + " ";
+        for (String clause : READ_ONLY_REJECTED) {
+            if (words.contains(" " + clause + " ")) {
+                return false;
             }
         }
+        return true;
     }
 }
@@ -0,0 +1,156 @@
+package sh.pcx.hardcoreban.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gives every statement a time limit, and read statements row and fetch limits, by kind of
+ * operation, so a lock wait or a runaway query fails one request instead of holding its thread
+ * and connection indefinitely.
+ *
+ * <p>The time limit is set as the statement's query timeout, which the driver enforces. As a
+ * backstop, a watchdog thread calls {@link Statement#cancel()} on any statement still open a
+ * second after its deadline. Statements are forgotten once closed. Must match
+ * {@code StatementPolicy} in the Velocity plugin.</p>
+ */
+public class StatementPolicy {
+
+    /** The most rows raw SQL reads. */
+    public static final int RAW_SQL_ROW_LIMIT = 10000;
+
+    private static final long CANCEL_GRACE_MILLIS = 1000;
+    private static final long WATCH_INTERVAL_MILLIS = 250;
+
+    /**
+     * The kinds of operation, each with its own limits.
+     */
+    public enum Operation {
+        /** Ban lookups for one player or one batch of players. */
+        LOOKUP(2, 0, 0),
+        /** Writes to one player's ban, or to every ban in a scope. */
+        WRITE(5, 0, 0),
+        /** Reads of the whole ban table, streamed in chunks. */
+        SCAN(30, 0, 500),
+        /** Table creation and migrations. */
+        SCHEMA(30, 0, 0),
+        /** Raw SQL from staff, streamed, with one row more than is read so truncation can be reported. */
+        ADMIN(10, RAW_SQL_ROW_LIMIT + 1, 500);
+
+        private final int timeoutSeconds;
+        private final int maxRows;
+        private final int fetchSize;
+
+        Operation(int timeoutSeconds, int maxRows, int fetchSize) {
+            this.timeoutSeconds = timeoutSeconds;
+            this.maxRows = maxRows;
+            this.fetchSize = fetchSize;
+        }
+    }
+
+    private final Map<Statement, Long> deadlines = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "HardcoreBan-StatementWatchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Creates a new StatementPolicy and starts its watchdog.
+     */
+    public StatementPolicy() {
+        watchdog.scheduleWithFixedDelay(this::cancelOverdue, WATCH_INTERVAL_MILLIS, WATCH_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Prepares a statement with the limits of an operation.
+     *
+     * @param conn The connection to prepare it on
+     * @param sql The SQL of the statement
+     * @param operation The kind of operation
+     * @return The prepared statement, to be closed by the caller
+     * @throws SQLException If the statement cannot be prepared
+     */
+    public PreparedStatement prepare(Connection conn, String sql, Operation operation) throws SQLException {
+        return apply(conn.prepareStatement(sql), operation);
+    }
+
+    /**
+     * Prepares a statement that returns generated keys with the limits of an operation.
+     *
+     * @param conn The connection to prepare it on
+     * @param sql The SQL of the statement
+     * @param autoGeneratedKeys {@link Statement#RETURN_GENERATED_KEYS} or {@link Statement#NO_GENERATED_KEYS}
+     * @param operation The kind of operation
+     * @return The prepared statement, to be closed by the caller
+     * @throws SQLException If the statement cannot be prepared
+     */
+    public PreparedStatement prepare(Connection conn, String sql, int autoGeneratedKeys, Operation operation)
+            throws SQLException {
+        return apply(conn.prepareStatement(sql, autoGeneratedKeys), operation);
+    }
+
+    /**
+     * Creates a plain statement with the limits of an operation.
+     *
+     * @param conn The connection to create it on
+     * @param operation The kind of operation
+     * @return The statement, to be closed by the caller
+     * @throws SQLException If the statement cannot be created
+     */
+    public Statement create(Connection conn, Operation operation) throws SQLException {
+        return apply(conn.createStatement(), operation);
+    }
+
+    private <S extends Statement> S apply(S stmt, Operation operation) throws SQLException {
+        try {
+            stmt.setQueryTimeout(operation.timeoutSeconds);
+            if (operation.maxRows > 0) {
+                stmt.setMaxRows(operation.maxRows);
+            }
+            if (operation.fetchSize > 0) {
+                stmt.setFetchSize(operation.fetchSize);
+            }
+        } catch (SQLException e) {
+            stmt.close();
+            throw e;
+        }
+
+        deadlines.put(stmt, System.currentTimeMillis() + operation.timeoutSeconds * 1000L + CANCEL_GRACE_MILLIS);
+        return stmt;
+    }
+
+    /**
+     * Cancels statements past their deadline and forgets closed ones.
+     */
+    private void cancelOverdue() {
+        long now = System.currentTimeMillis();
+        deadlines.forEach((stmt, deadline) -> {
+            try {
+                if (stmt.isClosed()) {
+                    deadlines.remove(stmt);
+                } else if (now > deadline) {
+                    deadlines.remove(stmt);
+                    stmt.cancel();
+                }
+            } catch (SQLException e) {
+                deadlines.remove(stmt);
+            }
+        });
+    }
+
+    /**
+     * Stops the watchdog.
+     */
+    public void shutdown() {
+        watchdog.shutdownNow();
+        deadlines.clear();
+    }
+}
@@ -76,7 +76,7 @@ public class PlayerDeathListener implements Listener {
         plugin.log(Level.INFO, "Attempting to ban player " + player.getName() + " until " + new java.util.Date(expiry));
 
         // Ban the player
-        boolean banSuccess = plugin.banPlayer(player.getUniqueId(), expiry);
+        boolean banSuccess = plugin.banPlayer(player.getUniqueId(), expiry) > 0;
 
         if (banSuccess) {
             // Format the ban time for messages
@@ -104,16 +104,22 @@ public class PlayerDeathListener implements Listener {
                 new BukkitRunnable() {
                     @Override
                     public void run() {
-                        if (player.isOnline()) {
-                            // Double check they're still banned before kicking
-                            if (plugin.isBanned(player.getUniqueId())) {
+                        if (!player.isOnline()) {
+                            return;
+                        }
+
+                        // Check and act under the ban lock, so an unban cannot slip in between
+                        plugin.getBanLocks().run(player.getUniqueId(), () -> {
+                            // Double check they're still banned before kicking; the cache follows every
+                            // ban change, so the main thread never waits on the database here
+                            if (plugin.getBanCache().getExpiry(player.getUniqueId()) > System.currentTimeMillis()) {
                                 player.kick(miniMessage.deserialize(kickMessage));
                             } else {
                                 plugin.log(Level.WARNING, "Player " + player.getName() +
                                         " was supposed to be banned but isn't. Not kicking.");
                                 plugin.resetPlayerGameMode(player);
                             }
-                        }
+                        });
                     }
                 }.runTaskLater(plugin.getPlugin(), kickDelayTicks);
             } else {
@@ -1,5 +1,6 @@
 package sh.pcx.hardcoreban.listeners;
 
+import org.bukkit.Bukkit;
 import org.bukkit.GameMode;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
@@ -36,45 +37,75 @@ public class PlayerJoinListener implements Listener {
      * Handles player join events. Enforces bans and resets player gamemodes as needed.
      * Uses HIGHEST priority to run early for ban enforcement.
      *
+     * <p>The ban is looked up off the main thread, batched with other joins arriving at the
+     * same time, and enforced back on the main thread once the lookup completes. In trusted-proxy
+     * mode the lookup is skipped when Velocity has already checked the player.</p>
+     *
      * @param event The player join event
      */
     @EventHandler(priority = EventPriority.HIGHEST)
     public void onPlayerJoin(PlayerJoinEvent event) {
         Player player = event.getPlayer();
-        UUID uuid = player.getUniqueId();
+
+        if (plugin.getBanCheckAssertions().take(player.getUniqueId())) {
+            plugin.log(Level.FINE, "Player " + player.getName() + " joined. Velocity already checked their ban.");
+            checkBan(player, 0);
+            return;
+        }
 
         plugin.log(Level.INFO, "Player " + player.getName() + " joined. Checking ban status...");
 
+        plugin.getDatabaseManager().getExpiryAsync(player.getUniqueId()).whenComplete((expiry, error) -> {
+            if (error != null) {
+                plugin.log(Level.SEVERE, "Error checking if player " + player.getName() + " is banned: "
+                        + error.getMessage());
+                return;
+            }
+
+            Bukkit.getScheduler().runTask(plugin.getPlugin(), () -> {
+                if (player.isOnline()) {
+                    checkBan(player, expiry);
+                }
+            });
+        });
+    }
+
+    /**
+     * Enforces a joined player's ban, removes it if it has expired, or resets their gamemode if
+     * they are not banned. Must be called on the main thread.
+     *
+     * @param player The player who joined
+     * @param expiry The expiry time of the player's ban, or 0 if they have none
+     */
+    private void checkBan(Player player, long expiry) {
+        UUID uuid = player.getUniqueId();
+
         // Check if player is banned
-        boolean banned = plugin.isBanned(uuid);
+        boolean banned = expiry > System.currentTimeMillis();
         plugin.log(Level.INFO, "Ban check for " + player.getName() + ": " + (banned ? "BANNED" : "NOT BANNED"));
 
         if (banned) {
-            long timeLeft = plugin.getTimeLeft(uuid);
+            long timeLeft = expiry - System.currentTimeMillis();
             plugin.log(Level.INFO, "Ban time left for " + player.getName() + ": " + timeLeft + "ms");
 
-            // If still banned, kick them
-            if (timeLeft > 0) {
-                // Create the kick message outside the inner class so it's effectively final
-                final String kickMessage = plugin.getPlugin().getConfig().getString("messages.join-banned",
-                                "<red>You are still banned from hardcore mode for {time}.")
-                        .replace("{time}", TimeFormatter.formatTime(timeLeft));
-
-                // Give them a moment to see the message before kicking
-                new BukkitRunnable() {
-                    @Override
-                    public void run() {
-                        if (player.isOnline()) {
-                            player.kick(miniMessage.deserialize(kickMessage));
-                        }
+            // Create the kick message outside the inner class so it's effectively final
+            final String kickMessage = plugin.getPlugin().getConfig().getString("messages.join-banned",
+                            "<red>You are still banned from hardcore mode for {time}.")
+                    .replace("{time}", TimeFormatter.formatTime(timeLeft));
+
+            // Give them a moment to see the message before kicking
+            new BukkitRunnable() {
+                @Override
+                public void run() {
+                    if (player.isOnline()) {
+                        player.kick(miniMessage.deserialize(kickMessage));
                     }
-                }.runTaskLater(plugin.getPlugin(), 5L);
-            } else {
-                // Ban expired, remove it and reset gamemode
-                plugin.log(Level.INFO, "Ban for " + player.getName() + " has expired. Removing ban and resetting gamemode.");
-                plugin.removeBan(uuid);
-                plugin.resetPlayerGameMode(player);
-            }
+                }
+            }.runTaskLater(plugin.getPlugin(), 5L);
+        } else if (expiry > 0) {
+            // Ban expired but is still stored; the reset is decided under the ban lock with the removal
+            plugin.log(Level.INFO, "Ban for " + player.getName() + " has expired. Removing ban and resetting gamemode.");
+            plugin.removeExpiredBan(player);
         } else {
             // Not banned, but check if they're in spectator mode and reset them if needed
             // This handles the case where they might have been in spectator mode when banned
@@ -0,0 +1,37 @@
+package sh.pcx.hardcoreban.listeners;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import sh.pcx.hardcoreban.HardcoreBanBootstrap;
+
+/**
+ * Listener for handling player quit events.
+ * Tells Velocity which ban change it must have seen before it can let the player in again.
+ */
+public class PlayerQuitListener implements Listener {
+    private final HardcoreBanBootstrap plugin;
+
+    /**
+     * Creates a new PlayerQuitListener.
+     *
+     * @param plugin The main plugin instance
+     */
+    public PlayerQuitListener(HardcoreBanBootstrap plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Handles player quit events, including kicks for new bans. Sends the version of the last
+     * ban change made for the player, if any, so the proxy can check its cache has it.
+     * Uses MONITOR priority since it only reports what already happened.
+     *
+     * @param event The player quit event
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        plugin.sendBanVersionToVelocity(event.getPlayer().getUniqueId());
+    }
+}
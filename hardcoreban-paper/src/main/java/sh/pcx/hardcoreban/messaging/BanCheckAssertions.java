@@ -0,0 +1,166 @@
+package sh.pcx.hardcoreban.messaging;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.google.common.io.ByteArrayDataInput;
+import com.google.common.io.ByteStreams;
+
+import sh.pcx.hardcoreban.HardcoreBanBootstrap;
+
+/**
+ * Keeps the signed statements Velocity sends when it lets a player through to this server,
+ * saying it has already checked the player's ban, so the join can skip the database lookup.
+ *
+ * <p>Each statement carries the position in this server's change stream that Velocity had
+ * applied when it checked. It is only used if that position covers every ban change this server
+ * has sent since it started, this server's cache has no ban for the player, it is for this
+ * server's ban scope, and it is no older than trusted-proxy.max-age-seconds. Statements are
+ * signed with an HMAC-SHA256 of proxy-link.secret, since a player's client can also send
+ * messages on the plugin channel. The layout must match {@code BanCheckAssertion} in the
+ * Velocity plugin. Only used on the main thread.</p>
+ */
+public class BanCheckAssertions {
+
+    /** The message type of a ban check assertion. */
+    public static final String BAN_CHECKED = "BAN_CHECKED";
+
+    private static final int SIGNATURE_LENGTH = 32;
+    // Allowed difference between the proxy's clock and this server's
+    private static final long CLOCK_TOLERANCE = 30000;
+
+    private final HardcoreBanBootstrap plugin;
+    private final Map<UUID, Assertion> assertions = new HashMap<>();
+
+    /**
+     * Creates a new BanCheckAssertions.
+     *
+     * @param plugin The main plugin instance
+     */
+    public BanCheckAssertions(HardcoreBanBootstrap plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Checks if joining players may be let in on Velocity's word.
+     *
+     * @return true if trusted-proxy mode is enabled and a secret is set
+     */
+    public boolean isEnabled() {
+        if (!plugin.getConfigManager().getBoolean("trusted-proxy.enabled", false)) {
+            return false;
+        }
+        String secret = plugin.getConfigManager().getString("proxy-link.secret", "");
+        return !secret.isEmpty() && !secret.equals("change-me");
+    }
+
+    /**
+     * Verifies and keeps a ban check assertion from Velocity.
+     *
+     * @param message The whole message, including its type and signature
+     */
+    public void receive(byte[] message) {
+        if (!isEnabled()) {
+            return;
+        }
+        if (message.length <= SIGNATURE_LENGTH) {
+            plugin.log(Level.WARNING, "Ignoring truncated ban check assertion");
+            return;
+        }
+
+        byte[] unsigned = Arrays.copyOf(message, message.length - SIGNATURE_LENGTH);
+        byte[] signature = Arrays.copyOfRange(message, message.length - SIGNATURE_LENGTH, message.length);
+        if (!MessageDigest.isEqual(signature, sign(plugin.getConfigManager().getString("proxy-link.secret", ""),
+                unsigned))) {
+            plugin.log(Level.WARNING, "Ignoring ban check assertion with an invalid signature");
+            return;
+        }
+
+        ByteArrayDataInput in = ByteStreams.newDataInput(unsigned);
+        in.readUTF(); // type
+        UUID uuid = new UUID(in.readLong(), in.readLong());
+        String scope = in.readUTF();
+        long issuedAt = in.readLong();
+        long epoch = in.readLong();
+        long sequence = in.readLong();
+
+        long now = System.currentTimeMillis();
+        long maxAge = maxAge();
+        if (Math.abs(now - issuedAt) > maxAge + CLOCK_TOLERANCE) {
+            plugin.log(Level.FINE, "Ignoring ban check assertion for " + uuid + " issued at " + issuedAt);
+            return;
+        }
+
+        assertions.values().removeIf(assertion -> now - assertion.receivedAt > maxAge);
+        assertions.put(uuid, new Assertion(scope, epoch, sequence, now));
+        plugin.log(Level.FINE, "Received ban check assertion for " + uuid);
+    }
+
+    /**
+     * Takes the assertion for a joining player and checks that it can stand in for a lookup.
+     * An assertion is used at most once.
+     *
+     * @param uuid The UUID of the joining player
+     * @return true if Velocity's check is recent and covers everything this server knows
+     */
+    public boolean take(UUID uuid) {
+        Assertion assertion = assertions.remove(uuid);
+        if (assertion == null || !isEnabled()) {
+            return false;
+        }
+
+        long now = System.currentTimeMillis();
+        return now - assertion.receivedAt <= maxAge()
+                && assertion.scope.equals(plugin.getConfigManager().getString("ban-scope", "default"))
+                && assertion.epoch == plugin.getSyncEpoch()
+                && assertion.sequence >= plugin.getSyncSequence()
+                && plugin.getBanCache().getExpiry(uuid) <= now;
+    }
+
+    private long maxAge() {
+        return plugin.getConfigManager().getInt("trusted-proxy.max-age-seconds", 5) * 1000L;
+    }
+
+    /**
+     * Computes the signature of an assertion.
+     *
+     * @param secret The shared secret
+     * @param data Everything in the message before the signature
+     * @return The HMAC-SHA256 of the data
+     */
+    private static byte[] sign(String secret, byte[] data) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            return mac.doFinal(data);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    /**
+     * A verified statement from Velocity that a player is not banned.
+     */
+    private static final class Assertion {
+        private final String scope;
+        private final long epoch;
+        private final long sequence;
+        private final long receivedAt;
+
+        private Assertion(String scope, long epoch, long sequence, long receivedAt) {
+            this.scope = scope;
+            this.epoch = epoch;
+            this.sequence = sequence;
+            this.receivedAt = receivedAt;
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package sh.pcx.hardcoreban.messaging;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+import com.google.common.io.ByteArrayDataInput;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+
+import sh.pcx.hardcoreban.HardcoreBanBootstrap;
+
+/**
+ * Client side of the optional direct link to the Velocity proxy.
+ * Keeps a non-blocking socket connection open to the proxy so that ban messages
+ * do not depend on a player being online to carry them. Reconnects with exponential
+ * backoff and exchanges heartbeats so dead connections are detected quickly.
+ *
+ * <p>The handshake authenticates both sides: the backend answers the proxy's challenge with its
+ * name and a signature, and sends a challenge of its own that the proxy must answer in
+ * {@code LINK_AUTH_OK}. Ban messages are only accepted once the proxy's answer checks out.</p>
+ */
+public class ProxyLinkClient implements Runnable {
+
+    private static final long MAX_RECONNECT_DELAY = 30000;
+
+    private final HardcoreBanBootstrap plugin;
+    private final SocketAddress address;
+    private final String secret;
+    private final String serverName;
+    private final long heartbeatMillis;
+    private final Consumer<byte[]> handler;
+    private final Runnable connectHandler;
+    private final SecureRandom random = new SecureRandom();
+
+    private Selector selector;
+    private Thread thread;
+    private volatile boolean running;
+    private volatile LinkConnection connection;
+    private volatile boolean authenticated;
+    // The challenge sent to the proxy on the current connection, null until the proxy has challenged us
+    private byte[] nonce;
+    private long reconnectDelay = 1000;
+    private long nextAttempt;
+
+    /**
+     * Creates a new ProxyLinkClient.
+     *
+     * @param plugin The main plugin instance
+     * @param address The proxy link address
+     * @param secret The shared secret used for the handshake
+     * @param serverName The name of this server as registered in Velocity
+     * @param heartbeatSeconds How often to send heartbeats, in seconds
+     * @param handler Receives every ban protocol payload read from the proxy
+     * @param connectHandler Runs each time the link is established
+     */
+    public ProxyLinkClient(HardcoreBanBootstrap plugin, SocketAddress address, String secret, String serverName,
+                           int heartbeatSeconds, Consumer<byte[]> handler, Runnable connectHandler) {
+        this.plugin = plugin;
+        this.address = address;
+        this.secret = secret;
+        this.serverName = serverName;
+        this.heartbeatMillis = Math.max(1, heartbeatSeconds) * 1000L;
+        this.handler = handler;
+        this.connectHandler = connectHandler;
+    }
+
+    /**
+     * Starts the link thread.
+     *
+     * @throws IOException If the selector cannot be opened
+     */
+    public void start() throws IOException {
+        selector = Selector.open();
+        running = true;
+        thread = new Thread(this, "HardcoreBan-ProxyLink");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the link thread and closes the connection.
+     */
+    public void stop() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        if (thread != null) {
+            try {
+                thread.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Checks if the link is connected and authenticated.
+     *
+     * @return true if messages can currently be sent through the link
+     */
+    public boolean isConnected() {
+        return authenticated;
+    }
+
+    /**
+     * Sends a ban protocol payload to the proxy.
+     *
+     * @param payload The payload in plugin message format
+     * @return true if the payload was queued, false if the link is not connected
+     */
+    public boolean send(byte[] payload) {
+        LinkConnection current = connection;
+        if (!authenticated || current == null) {
+            return false;
+        }
+
+        current.queue(payload);
+        selector.wakeup();
+        return true;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                if (connection == null && System.currentTimeMillis() >= nextAttempt) {
+                    openConnection();
+                }
+
+                LinkConnection current = connection;
+                if (current != null) {
+                    SelectionKey key = current.getChannel().keyFor(selector);
+                    if (key != null && key.isValid() && current.getChannel().isConnected()) {
+                        key.interestOps(SelectionKey.OP_READ |
+                                (current.hasPendingWrites() ? SelectionKey.OP_WRITE : 0));
+                    }
+                }
+
+                selector.select(1000);
+
+                for (SelectionKey key : selector.selectedKeys()) {
+                    handleKey(key);
+                }
+                selector.selectedKeys().clear();
+
+                checkHeartbeat();
+            } catch (IOException e) {
+                plugin.log(authenticated ? Level.WARNING : Level.FINE, "Proxy link error: " + e.getMessage());
+                closeConnection();
+            } catch (Exception e) {
+                plugin.log(Level.SEVERE, "Unexpected proxy link error: " + e.getMessage());
+                closeConnection();
+            }
+        }
+
+        closeConnection();
+        try {
+            selector.close();
+        } catch (IOException ignored) {
+            // Shutting down anyway
+        }
+    }
+
+    /**
+     * Starts a non-blocking connection attempt to the proxy.
+     */
+    private void openConnection() {
+        try {
+            SocketChannel channel = LinkConnection.open(address);
+            channel.configureBlocking(false);
+            LinkConnection newConnection = new LinkConnection(channel);
+
+            if (channel.connect(address)) {
+                channel.register(selector, SelectionKey.OP_READ);
+            } else {
+                channel.register(selector, SelectionKey.OP_CONNECT);
+            }
+            connection = newConnection;
+        } catch (IOException e) {
+            plugin.log(Level.FINE, "Could not connect to proxy link at " + address + ": " + e.getMessage());
+            scheduleReconnect();
+        }
+    }
+
+    /**
+     * Handles a ready selection key.
+     *
+     * @param key The selection key
+     * @throws IOException If the connection fails
+     */
+    private void handleKey(SelectionKey key) throws IOException {
+        LinkConnection current = connection;
+        if (current == null || !key.isValid()) {
+            return;
+        }
+
+        if (key.isConnectable()) {
+            current.getChannel().finishConnect();
+            key.interestOps(SelectionKey.OP_READ);
+            plugin.log(Level.FINE, "Connected to proxy link at " + address + ", waiting for challenge");
+        }
+
+        if (key.isValid() && key.isReadable()) {
+            List<byte[]> frames = current.read();
+            if (frames == null) {
+                throw new IOException("Proxy closed the link");
+            }
+            for (byte[] frame : frames) {
+                handleFrame(current, frame);
+            }
+        }
+
+        if (key.isValid() && key.isWritable()) {
+            current.flush();
+        }
+    }
+
+    /**
+     * Handles a single frame read from the proxy.
+     *
+     * @param current The connection the frame was read from
+     * @param frame The frame payload
+     * @throws IOException If the proxy fails the handshake
+     */
+    private void handleFrame(LinkConnection current, byte[] frame) throws IOException {
+        ByteArrayDataInput in = ByteStreams.newDataInput(frame);
+        String messageType = in.readUTF();
+
+        switch (messageType) {
+            case LinkConnection.CHALLENGE: {
+                if (in.readInt() != LinkConnection.NONCE_LENGTH) {
+                    throw new IOException("Proxy sent a malformed challenge");
+                }
+                byte[] challenge = new byte[LinkConnection.NONCE_LENGTH];
+                in.readFully(challenge);
+                byte[] signature = LinkConnection.sign(secret, challenge, serverName);
+                nonce = new byte[LinkConnection.NONCE_LENGTH];
+                random.nextBytes(nonce);
+
+                ByteArrayDataOutput out = ByteStreams.newDataOutput();
+                out.writeUTF(LinkConnection.AUTH);
+                out.writeUTF(serverName);
+                out.writeInt(signature.length);
+                out.write(signature);
+                out.writeInt(nonce.length);
+                out.write(nonce);
+                current.queue(out.toByteArray());
+                break;
+            }
+            case LinkConnection.AUTH_OK: {
+                int length = in.readInt();
+                if (nonce == null || length < 0 || length > 64) {
+                    throw new IOException("Proxy sent a malformed handshake");
+                }
+                byte[] signature = new byte[length];
+                in.readFully(signature);
+                if (!MessageDigest.isEqual(LinkConnection.signProxy(secret, nonce, serverName), signature)) {
+                    plugin.log(Level.WARNING, "Proxy link at " + address + " failed authentication: bad secret");
+                    throw new IOException("Proxy failed authentication");
+                }
+
+                authenticated = true;
+                reconnectDelay = 1000;
+                plugin.log(Level.INFO, "Proxy link established with " + address);
+                connectHandler.run();
+                break;
+            }
+            case LinkConnection.PING: {
+                ByteArrayDataOutput out = ByteStreams.newDataOutput();
+                out.writeUTF(LinkConnection.PONG);
+                current.queue(out.toByteArray());
+                break;
+            }
+            case LinkConnection.PONG:
+                break;
+            default:
+                if (authenticated) {
+                    handler.accept(frame);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Sends heartbeats and drops the connection if the proxy has gone quiet.
+     */
+    private void checkHeartbeat() {
+        LinkConnection current = connection;
+        if (current == null) {
+            return;
+        }
+
+        // Covers stalled connection attempts and handshakes as well as silent peers
+        long now = System.currentTimeMillis();
+        if (now - current.getLastRead() > heartbeatMillis * 3) {
+            plugin.log(authenticated ? Level.WARNING : Level.FINE, "Proxy link timed out, reconnecting");
+            closeConnection();
+            return;
+        }
+
+        if (authenticated && now - current.getLastWrite() >= heartbeatMillis && !current.hasPendingWrites()) {
+            ByteArrayDataOutput out = ByteStreams.newDataOutput();
+            out.writeUTF(LinkConnection.PING);
+            current.queue(out.toByteArray());
+        }
+    }
+
+    /**
+     * Closes the current connection, if any, and schedules a reconnect.
+     */
+    private void closeConnection() {
+        LinkConnection current = connection;
+        if (current == null) {
+            return;
+        }
+
+        if (authenticated) {
+            plugin.log(Level.INFO, "Proxy link to " + address + " closed");
+        }
+        authenticated = false;
+        nonce = null;
+        connection = null;
+        current.close();
+        scheduleReconnect();
+    }
+
+    /**
+     * Schedules the next connection attempt using exponential backoff.
+     */
+    private void scheduleReconnect() {
+        nextAttempt = System.currentTimeMillis() + reconnectDelay;
+        reconnectDelay = Math.min(reconnectDelay * 2, MAX_RECONNECT_DELAY);
+    }
+}
@@ -0,0 +1,83 @@
+package sh.pcx.hardcoreban.messaging;
+
+import java.util.logging.Level;
+
+import org.bukkit.Bukkit;
+
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+
+import sh.pcx.hardcoreban.HardcoreBanBootstrap;
+
+/**
+ * Periodically tells Velocity how well this server is keeping up, so the proxy can slow down
+ * connections to it when it is under load.
+ *
+ * <p>Reports the one-minute TPS and the average tick time (MSPT) on Paper. Spigot has neither,
+ * so there the TPS is measured from the time between reports and the tick time is sent as
+ * unknown (-1). Reports are only sent when the proxy can be reached; a missing report tells
+ * the proxy nothing is wrong. Each report also carries the epoch and sequence number of the
+ * last ban change this server sent, so the proxy can tell when it has missed one.</p>
+ */
+public class ServerHealthReporter implements Runnable {
+
+    /** Message type of a health report. */
+    public static final String SERVER_HEALTH = "SERVER_HEALTH";
+
+    private final HardcoreBanBootstrap plugin;
+    private final long intervalTicks;
+    private boolean paperMetrics = true;
+    private long lastRunNanos;
+
+    /**
+     * Creates a new ServerHealthReporter.
+     *
+     * @param plugin The main plugin instance
+     * @param intervalTicks The number of ticks between reports
+     */
+    public ServerHealthReporter(HardcoreBanBootstrap plugin, long intervalTicks) {
+        this.plugin = plugin;
+        this.intervalTicks = intervalTicks;
+    }
+
+    /**
+     * Starts reporting on the main thread.
+     */
+    public void start() {
+        Bukkit.getScheduler().runTaskTimer(plugin.getPlugin(), this, intervalTicks, intervalTicks);
+    }
+
+    @Override
+    public void run() {
+        long now = System.nanoTime();
+        long elapsed = lastRunNanos == 0 ? 0 : now - lastRunNanos;
+        lastRunNanos = now;
+
+        double tps;
+        double mspt = -1;
+        if (paperMetrics) {
+            try {
+                tps = Bukkit.getTPS()[0];
+                mspt = Bukkit.getAverageTickTime();
+            } catch (NoSuchMethodError e) {
+                plugin.log(Level.FINE, "TPS and tick time are not available, measuring TPS instead");
+                paperMetrics = false;
+                return;
+            }
+        } else {
+            if (elapsed == 0) {
+                return;
+            }
+            tps = Math.min(20.0, intervalTicks * 1_000_000_000.0 / elapsed);
+        }
+
+        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.writeUTF(SERVER_HEALTH);
+        out.writeDouble(tps);
+        out.writeDouble(mspt);
+        // Lets the proxy notice ban changes it missed without waiting for the next one
+        out.writeLong(plugin.getSyncEpoch());
+        out.writeLong(plugin.getSyncSequence());
+        plugin.sendToVelocity(out.toByteArray(), null);
+    }
+}
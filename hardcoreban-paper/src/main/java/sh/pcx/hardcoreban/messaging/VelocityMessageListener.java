@@ -1,5 +1,8 @@
 package sh.pcx.hardcoreban.messaging;
 
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.logging.Level;
 
@@ -11,6 +14,7 @@ import com.google.common.io.ByteArrayDataOutput;
 import com.google.common.io.ByteStreams;
 
 import sh.pcx.hardcoreban.HardcoreBanBootstrap;
+import sh.pcx.hardcoreban.cache.BanHashTree;
 
 /**
  * Handles plugin messaging channel communication with Velocity proxy.
@@ -35,6 +39,16 @@ public class VelocityMessageListener implements PluginMessageListener {
             return;
         }
 
+        handleMessage(message, player);
+    }
+
+    /**
+     * Handles a message from Velocity, received either as a plugin message or over the proxy link.
+     *
+     * @param message The raw message data
+     * @param player The player the message arrived through, or null if it came over the proxy link
+     */
+    public void handleMessage(byte[] message, Player player) {
         ByteArrayDataInput in = ByteStreams.newDataInput(message);
         String messageType = in.readUTF();
 
@@ -49,14 +63,13 @@ public class VelocityMessageListener implements PluginMessageListener {
                     long timeLeft = plugin.getTimeLeft(uuid);
 
                     // Respond back to Velocity
-                    if (player.isOnline()) {
-                        ByteArrayDataOutput out = ByteStreams.newDataOutput();
-                        out.writeUTF("BAN_STATUS");
-                        out.writeUTF(uuid.toString());
-                        out.writeBoolean(isBanned);
-                        out.writeLong(timeLeft);
-
-                        player.sendPluginMessage(plugin.getPlugin(), "hardcoreban:channel", out.toByteArray());
+                    ByteArrayDataOutput out = ByteStreams.newDataOutput();
+                    out.writeUTF("BAN_STATUS");
+                    out.writeUTF(uuid.toString());
+                    out.writeBoolean(isBanned);
+                    out.writeLong(timeLeft);
+
+                    if (plugin.sendToVelocity(out.toByteArray(), player)) {
                         plugin.log(Level.FINE, "Sent ban status for " + uuidStr + ": banned=" + isBanned +
                                 ", timeLeft=" + timeLeft);
                     }
@@ -65,9 +78,127 @@ public class VelocityMessageListener implements PluginMessageListener {
                 }
                 break;
 
+            case "VELOCITY_BAN":
+                try {
+                    UUID uuid = UUID.fromString(in.readUTF());
+                    long expiry = in.readLong();
+                    plugin.applyVelocityBan(uuid, expiry);
+                } catch (Exception e) {
+                    plugin.log(Level.WARNING, "Error processing VELOCITY_BAN message: " + e.getMessage());
+                }
+                break;
+
+            case "VELOCITY_UNBAN":
+                try {
+                    plugin.applyVelocityUnban(UUID.fromString(in.readUTF()));
+                } catch (Exception e) {
+                    plugin.log(Level.WARNING, "Error processing VELOCITY_UNBAN message: " + e.getMessage());
+                }
+                break;
+
+            case "VELOCITY_CLEAR_ALL":
+                plugin.applyVelocityClearAll();
+                break;
+
+            case "TREE_QUERY":
+                try {
+                    handleTreeQuery(in, player);
+                } catch (Exception e) {
+                    plugin.log(Level.WARNING, "Error processing TREE_QUERY message: " + e.getMessage());
+                }
+                break;
+
+            case "TREE_BUCKETS":
+                try {
+                    handleTreeBuckets(in, player);
+                } catch (Exception e) {
+                    plugin.log(Level.WARNING, "Error processing TREE_BUCKETS message: " + e.getMessage());
+                }
+                break;
+
+            case BanCheckAssertions.BAN_CHECKED:
+                try {
+                    plugin.getBanCheckAssertions().receive(message);
+                } catch (Exception e) {
+                    plugin.log(Level.WARNING, "Error processing BAN_CHECKED message: " + e.getMessage());
+                }
+                break;
+
+            case BanSnapshotCodec.SNAPSHOT_REQUEST:
+                plugin.log(Level.FINE, "Velocity requested a ban snapshot");
+                plugin.sendSnapshotToVelocity(player);
+                break;
+
             default:
                 plugin.log(Level.WARNING, "Received unknown plugin message type: " + messageType);
                 break;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Answers a request from Velocity for the hash tree nodes it wants to compare.
+     *
+     * @param in The remaining message data
+     * @param player The player the message arrived through, or null
+     */
+    private void handleTreeQuery(ByteArrayDataInput in, Player player) {
+        int round = in.readInt();
+        int level = in.readByte();
+        int count = in.readInt();
+        if (level < 0 || level > BanHashTree.LEAF_LEVEL || count < 0 || count > BanHashTree.width(level)) {
+            throw new IllegalArgumentException("invalid query for " + count + " nodes at level " + level);
+        }
+
+        BanHashTree tree = plugin.getBanCache().getHashTree();
+
+        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.writeUTF("TREE_NODES");
+        out.writeInt(round);
+        out.writeByte(level);
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            int index = in.readInt();
+            out.writeInt(index);
+            out.writeLong(tree.getHash(level, index));
+        }
+
+        plugin.sendToVelocity(out.toByteArray(), player);
+    }
+
+    /**
+     * Sends Velocity the contents of the hash tree buckets it found to differ.
+     *
+     * @param in The remaining message data
+     * @param player The player the message arrived through, or null
+     */
+    private void handleTreeBuckets(ByteArrayDataInput in, Player player) {
+        int round = in.readInt();
+        int count = in.readInt();
+        if (count < 0 || count > BanHashTree.BUCKETS) {
+            throw new IllegalArgumentException("invalid bucket count " + count);
+        }
+
+        Set<Integer> buckets = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            buckets.add(in.readInt());
+        }
+        Map<UUID, Long> entries = plugin.getBanCache().getBuckets(buckets);
+
+        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.writeUTF("TREE_BUCKET_DATA");
+        out.writeInt(round);
+        out.writeInt(buckets.size());
+        for (int bucket : buckets) {
+            out.writeInt(bucket);
+        }
+        out.writeInt(entries.size());
+        for (Map.Entry<UUID, Long> entry : entries.entrySet()) {
+            out.writeLong(entry.getKey().getMostSignificantBits());
+            out.writeLong(entry.getKey().getLeastSignificantBits());
+            out.writeLong(entry.getValue());
+        }
+
+        plugin.sendToVelocity(out.toByteArray(), player);
+        plugin.log(Level.FINE, "Sent " + entries.size() + " bans from " + buckets.size() + " buckets for repair");
+    }
+}
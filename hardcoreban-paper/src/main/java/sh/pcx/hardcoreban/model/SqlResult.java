@@ -0,0 +1,128 @@
+package sh.pcx.hardcoreban.model;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Represents the outcome of a statement run from the SQL console.
+ * A query keeps its first rows for display and may have written all of its rows to a file;
+ * any other statement only reports how many rows it changed.
+ */
+public class SqlResult {
+    private final List<String> columns;
+    private final List<List<String>> rows;
+    private final int rowCount;
+    private final boolean truncated;
+    private final Path exportFile;
+    private final int updateCount;
+    private final long elapsedMillis;
+
+    /**
+     * Creates a new SqlResult for a query.
+     *
+     * @param columns The column labels
+     * @param rows The rows kept for display
+     * @param rowCount The number of rows read
+     * @param truncated Whether the query had more rows than could be read
+     * @param exportFile The file all rows were written to, or null if they were not exported
+     * @param elapsedMillis How long the query took
+     */
+    public SqlResult(List<String> columns, List<List<String>> rows, int rowCount, boolean truncated, Path exportFile,
+                     long elapsedMillis) {
+        this.columns = columns;
+        this.rows = rows;
+        this.rowCount = rowCount;
+        this.truncated = truncated;
+        this.exportFile = exportFile;
+        this.updateCount = -1;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * Creates a new SqlResult for a statement that does not return rows.
+     *
+     * @param updateCount The number of rows the statement changed
+     * @param elapsedMillis How long the statement took
+     */
+    public SqlResult(int updateCount, long elapsedMillis) {
+        this.columns = List.of();
+        this.rows = List.of();
+        this.rowCount = 0;
+        this.truncated = false;
+        this.exportFile = null;
+        this.updateCount = updateCount;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * Checks if the statement returned rows.
+     *
+     * @return true for a query, false for an update or other statement
+     */
+    public boolean isQuery() {
+        return updateCount < 0;
+    }
+
+    /**
+     * Gets the column labels of a query.
+     *
+     * @return The column labels
+     */
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Gets the rows kept for display, each a list of values as text.
+     *
+     * @return The rows
+     */
+    public List<List<String>> getRows() {
+        return rows;
+    }
+
+    /**
+     * Gets the number of rows the query read, including those that were only exported.
+     *
+     * @return The row count
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Checks if the query had more rows than the console reads.
+     *
+     * @return true if rows were left unread
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Gets the file all rows of the query were written to.
+     *
+     * @return The export file, or null if the rows were not exported
+     */
+    public Path getExportFile() {
+        return exportFile;
+    }
+
+    /**
+     * Gets the number of rows a statement changed.
+     *
+     * @return The update count, or -1 for a query
+     */
+    public int getUpdateCount() {
+        return updateCount;
+    }
+
+    /**
+     * Gets how long the statement took, including reading and exporting its rows.
+     *
+     * @return The time in milliseconds
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+}
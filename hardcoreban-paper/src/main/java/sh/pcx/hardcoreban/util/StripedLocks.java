@@ -0,0 +1,118 @@
+package sh.pcx.hardcoreban.util;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Serializes ban changes per player without a single global lock.
+ *
+ * <p>A fixed array of locks is indexed by a hash of the player's UUID, so changes for one player
+ * never interleave while changes for players on other stripes run in parallel. Two players can
+ * share a stripe, which only costs them some waiting. The locks are reentrant, so an action may
+ * call other locked actions for the same player. Counts how often a lock was already held when
+ * it was requested, and how long callers waited for it.</p>
+ */
+public class StripedLocks {
+
+    private final ReentrantLock[] locks;
+    private final int mask;
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder contended = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+
+    /**
+     * Creates a new StripedLocks.
+     *
+     * @param stripes The number of locks, rounded up to a power of two
+     */
+    public StripedLocks(int stripes) {
+        int size = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.locks = new ReentrantLock[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Runs an action while holding a player's lock.
+     *
+     * @param uuid The UUID of the player
+     * @param action The action to run
+     */
+    public void run(UUID uuid, Runnable action) {
+        call(uuid, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs an action while holding a player's lock and returns its result.
+     *
+     * @param uuid The UUID of the player
+     * @param action The action to run
+     * @param <T> The type of the result
+     * @return The result of the action
+     */
+    public <T> T call(UUID uuid, Supplier<T> action) {
+        ReentrantLock lock = locks[stripe(uuid)];
+        acquisitions.increment();
+        if (!lock.tryLock()) {
+            contended.increment();
+            long start = System.nanoTime();
+            lock.lock();
+            waitNanos.add(System.nanoTime() - start);
+        }
+
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int stripe(UUID uuid) {
+        int hash = uuid.hashCode();
+        // Spread the high bits into the low ones used for the index
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /**
+     * Gets the number of locks.
+     *
+     * @return The number of stripes
+     */
+    public int getStripes() {
+        return locks.length;
+    }
+
+    /**
+     * Gets how many times a lock has been taken.
+     *
+     * @return The number of acquisitions
+     */
+    public long getAcquisitions() {
+        return acquisitions.sum();
+    }
+
+    /**
+     * Gets how many times a lock was held by another thread when it was requested.
+     *
+     * @return The number of contended acquisitions
+     */
+    public long getContended() {
+        return contended.sum();
+    }
+
+    /**
+     * Gets the total time callers have waited for contended locks.
+     *
+     * @return The wait time in nanoseconds
+     */
+    public long getWaitNanos() {
+        return waitNanos.sum();
+    }
+}
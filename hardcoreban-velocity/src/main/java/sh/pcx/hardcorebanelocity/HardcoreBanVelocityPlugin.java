@@ -3,6 +3,7 @@ package sh.pcx.hardcorebanelocity;
 import com.google.inject.Inject;
 import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.proxy.ProxyInitializeEvent;
+import com.velocitypowered.api.event.proxy.ProxyReloadEvent;
 import com.velocitypowered.api.event.proxy.ProxyShutdownEvent;
 import com.velocitypowered.api.plugin.Plugin;
 import com.velocitypowered.api.plugin.annotation.DataDirectory;
@@ -17,16 +18,33 @@ import net.kyori.adventure.text.minimessage.MiniMessage;
 
 import org.slf4j.Logger;
 
+import sh.pcx.hardcorebanelocity.cache.BanCache;
+import sh.pcx.hardcorebanelocity.cache.BanExpiryScheduler;
+import sh.pcx.hardcorebanelocity.cache.BanSnapshotFile;
+import sh.pcx.hardcorebanelocity.cache.BanVersionFence;
+import sh.pcx.hardcorebanelocity.cache.DenialCache;
+import sh.pcx.hardcorebanelocity.cache.PlayerNameIndex;
+import sh.pcx.hardcorebanelocity.cache.SharedBanTableReader;
 import sh.pcx.hardcorebanelocity.commands.HardcoreBanCommand;
 import sh.pcx.hardcorebanelocity.database.DatabaseManager;
+import sh.pcx.hardcorebanelocity.listeners.AdmissionController;
+import sh.pcx.hardcorebanelocity.listeners.LoginPrefetchListener;
 import sh.pcx.hardcorebanelocity.listeners.PluginMessageListener;
 import sh.pcx.hardcorebanelocity.listeners.ServerConnectListener;
+import sh.pcx.hardcorebanelocity.listeners.WaitingRoomListener;
+import sh.pcx.hardcorebanelocity.messaging.AntiEntropy;
+import sh.pcx.hardcorebanelocity.messaging.CarrierIndex;
+import sh.pcx.hardcorebanelocity.messaging.LinkConnection;
 import sh.pcx.hardcorebanelocity.messaging.MessageSender;
+import sh.pcx.hardcorebanelocity.messaging.ProxyLinkServer;
+import sh.pcx.hardcorebanelocity.util.BanMessages;
 import sh.pcx.hardcorebanelocity.util.ConfigManager;
+import sh.pcx.hardcorebanelocity.util.HardcoreServerRegistry;
 import sh.pcx.hardcorebanelocity.util.TimeFormatter;
 
 import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -51,12 +69,29 @@ public class HardcoreBanVelocityPlugin {
     private final MiniMessage miniMessage = MiniMessage.miniMessage();
 
     private ConfigManager configManager;
+    private HardcoreServerRegistry hardcoreServers;
     private DatabaseManager databaseManager;
     private MessageSender messageSender;
     private ChannelIdentifier channelIdentifier;
-
-    // Cache of player names for UUID lookup
-    private Map<UUID, String> playerNameCache = new ConcurrentHashMap<>();
+    private PluginMessageListener pluginMessageListener;
+    private final CarrierIndex carrierIndex = new CarrierIndex();
+    private LoginPrefetchListener loginPrefetch;
+    private WaitingRoomListener waitingRoom;
+    private AdmissionController admission;
+    private ProxyLinkServer proxyLink;
+    private final Map<String, SharedBanTableReader> sharedBanTables = new ConcurrentHashMap<>();
+    private final Map<String, BanCache> banCaches = new ConcurrentHashMap<>();
+    private BanExpiryScheduler banExpiries;
+    private DenialCache denialCache;
+    private final BanVersionFence banVersionFence = new BanVersionFence(this);
+    private BanMessages banMessages;
+    private BanSnapshotFile banSnapshotFile;
+    private volatile long lastRefreshSuccess;
+    private int refreshFailures; // only touched by the refresh task
+    private AntiEntropy antiEntropy;
+
+    // Names of players seen in ban data, by UUID and by name
+    private final PlayerNameIndex playerNames = new PlayerNameIndex();
 
     /**
      * Creates a new instance of the plugin.
@@ -83,44 +118,66 @@ public class HardcoreBanVelocityPlugin {
         try {
             // Initialize configuration
             configManager = new ConfigManager(logger, dataDirectory);
+            hardcoreServers = new HardcoreServerRegistry(server, configManager, logger);
+            banMessages = new BanMessages(configManager, miniMessage);
+
+            // Drop cached bans the moment they expire
+            banExpiries = new BanExpiryScheduler(this);
+
+            // Enforce the bans saved at the last shutdown right away; the database catches up in the background
+            boolean restored = restoreBanSnapshot();
 
             // Initialize database manager
             databaseManager = new DatabaseManager(this);
             boolean dbConnected = false;
 
-            try {
-                dbConnected = databaseManager.connect();
-            } catch (Exception e) {
-                logger.error("Error connecting to database", e);
-            }
+            if (!restored) {
+                try {
+                    dbConnected = databaseManager.connect();
+                } catch (Exception e) {
+                    logger.error("Error connecting to database", e);
+                }
 
-            if (!dbConnected) {
-                logger.error("Could not connect to database. Plugin functionality will be limited.");
+                if (!dbConnected) {
+                    logger.error("Could not connect to database. Retrying in the background; until bans are "
+                            + "loaded, connections to hardcore servers are handled by ban-cache.fail-closed.");
+                }
             }
 
+            // Read bans from shared memory written by co-located backends, if enabled
+            setupSharedBanTables();
+
             // Register plugin messaging channel
             setupPluginMessaging();
 
             // Register event listeners
             registerEventListeners();
 
+            // Start the direct link to Paper backends, if enabled
+            setupProxyLink();
+
+            String secret = configManager.getString("proxy-link.secret", "");
+            if (configManager.getBoolean("trusted-proxy.enabled", false)
+                    && (secret.isEmpty() || secret.equals("change-me"))) {
+                logger.warn("Trusted proxy mode is enabled but proxy-link.secret is not set. "
+                        + "Hardcore servers will keep checking bans themselves.");
+            }
+
             // Register commands
             registerCommands();
 
             // Initialize message sender for Velocity->Paper communication
             messageSender = new MessageSender(this, logger, channelIdentifier);
-
-            // Start tasks
-            startTasks();
+            antiEntropy = new AntiEntropy(this);
 
             // Preload bans if database connection was successful
-            if (dbConnected) {
-                try {
-                    refreshBans();
-                } catch (Exception e) {
-                    logger.error("Failed to refresh bans", e);
-                }
-            }
+            boolean refreshed = dbConnected && refreshBans();
+
+            // Start tasks
+            banExpiries.start();
+            waitingRoom.start();
+            admission.start();
+            startTasks(refreshed);
 
             logger.info("HardcoreBan Velocity plugin initialized successfully!");
         } catch (Exception e) {
@@ -128,6 +185,18 @@ public class HardcoreBanVelocityPlugin {
         }
     }
 
+    /**
+     * Re-resolves the hardcore servers when the proxy reloads, since the reload may
+     * register new server instances.
+     *
+     * @param event The proxy reload event
+     */
+    @Subscribe
+    public void onProxyReload(ProxyReloadEvent event) {
+        hardcoreServers.reload();
+        setupSharedBanTables();
+    }
+
     /**
      * Cleans up when the proxy shuts down.
      *
@@ -135,6 +204,32 @@ public class HardcoreBanVelocityPlugin {
      */
     @Subscribe
     public void onProxyShutdown(ProxyShutdownEvent event) {
+        // Close the direct link to Paper backends
+        if (proxyLink != null) {
+            proxyLink.stop();
+        }
+
+        // Unmap the shared ban tables
+        for (SharedBanTableReader sharedBanTable : sharedBanTables.values()) {
+            try {
+                sharedBanTable.close();
+            } catch (Exception e) {
+                logger.warn("Failed to close shared ban table: {}", e.getMessage());
+            }
+        }
+
+        // Save the bans for a fast start next time
+        saveBanSnapshot();
+        if (banExpiries != null) {
+            banExpiries.stop();
+        }
+        if (waitingRoom != null) {
+            waitingRoom.stop();
+        }
+        if (admission != null) {
+            admission.stop();
+        }
+
         // Disconnect from database
         if (databaseManager != null) {
             databaseManager.disconnect();
@@ -143,6 +238,77 @@ public class HardcoreBanVelocityPlugin {
         logger.info("HardcoreBan Velocity plugin shutting down");
     }
 
+    /**
+     * Fills the ban caches from the snapshot saved by the last run, if ban-cache.persist is enabled.
+     *
+     * @return true if the caches of every scope were restored
+     */
+    private boolean restoreBanSnapshot() {
+        if (!configManager.getBoolean("ban-cache.persist", true)) {
+            return false;
+        }
+
+        banSnapshotFile = new BanSnapshotFile(logger, dataDirectory.resolve("bans.dat"));
+        long start = System.nanoTime();
+        Map<String, BanSnapshotFile.Saved> saved = banSnapshotFile.load();
+        if (saved.isEmpty()) {
+            return false;
+        }
+
+        boolean complete = true;
+        int restoredBans = 0;
+        for (String scope : hardcoreServers.getScopes()) {
+            BanSnapshotFile.Saved scopeBans = saved.get(scope);
+            if (scopeBans == null) {
+                complete = false;
+                continue;
+            }
+            BanCache banCache = getBanCache(scope);
+            banCache.restore(scopeBans.getBans(), scopeBans.getValidatedAt());
+            restoredBans += banCache.size();
+            complete &= banCache.isFresh();
+        }
+
+        logger.info("Restored {} saved bans in {} ms{}", restoredBans, (System.nanoTime() - start) / 1_000_000,
+                complete ? "" : "; some scopes are missing or stale and wait for the database");
+        return complete;
+    }
+
+    /**
+     * Saves the ban caches so the next start can enforce bans before reaching the database.
+     */
+    private void saveBanSnapshot() {
+        if (banSnapshotFile == null) {
+            return;
+        }
+
+        try {
+            banSnapshotFile.save(banCaches);
+        } catch (Exception e) {
+            logger.warn("Failed to save bans: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Sets up a reader for the shared-memory ban table of each ban scope, if enabled in the config.
+     * Each file is published by a hardcore Paper server of that scope when it runs on the same host.
+     */
+    private void setupSharedBanTables() {
+        if (!configManager.getBoolean("shared-memory.enabled", false)) {
+            return;
+        }
+
+        Path directory = Path.of(configManager.getString("shared-memory.directory", "/dev/shm/hardcoreban"));
+        int maxAge = configManager.getInt("shared-memory.max-age-seconds", 180);
+        for (String scope : hardcoreServers.getScopes()) {
+            sharedBanTables.computeIfAbsent(scope, s -> {
+                Path file = directory.resolve(s + ".dat");
+                logger.info("Checking bans in scope {} against shared memory at {} before the database", s, file);
+                return new SharedBanTableReader(logger, file, maxAge);
+            });
+        }
+    }
+
     /**
      * Sets up plugin messaging channels.
      */
@@ -155,8 +321,55 @@ public class HardcoreBanVelocityPlugin {
      * Registers event listeners.
      */
     private void registerEventListeners() {
-        server.getEventManager().register(this, new PluginMessageListener(this));
+        denialCache = new DenialCache(configManager.getInt("connection-throttle.message-burst", 2),
+                configManager.getInt("connection-throttle.message-cooldown-seconds", 5) * 1000L);
+
+        pluginMessageListener = new PluginMessageListener(this);
+        server.getEventManager().register(this, pluginMessageListener);
+        server.getEventManager().register(this, carrierIndex);
+        loginPrefetch = new LoginPrefetchListener(this);
+        server.getEventManager().register(this, loginPrefetch);
+        waitingRoom = new WaitingRoomListener(this);
+        server.getEventManager().register(this, waitingRoom);
         server.getEventManager().register(this, new ServerConnectListener(this));
+        admission = new AdmissionController(this);
+        server.getEventManager().register(this, admission);
+    }
+
+    /**
+     * Starts the optional direct socket link to Paper backends, if enabled in the config.
+     * Frames are handed to the plugin message listener on the link thread, one at a time and in order.
+     */
+    private void setupProxyLink() {
+        if (!configManager.getBoolean("proxy-link.enabled", false)) {
+            return;
+        }
+
+        String secret = configManager.getString("proxy-link.secret", "");
+        if (secret.isEmpty() || secret.equals("change-me")) {
+            logger.warn("Proxy link is enabled but proxy-link.secret is not set. The link will not be started.");
+            return;
+        }
+
+        try {
+            proxyLink = new ProxyLinkServer(logger,
+                    LinkConnection.parseAddress(configManager.getString("proxy-link.address", "127.0.0.1:25590")),
+                    secret,
+                    configManager.getInt("proxy-link.heartbeat-seconds", 5),
+                    (serverName, data) -> {
+                        // Handled on the link thread, so each backend's deltas are applied in the order sent
+                        try {
+                            pluginMessageListener.handleMessage(serverName, data);
+                        } catch (Exception e) {
+                            logger.error("Error handling proxy link message from {}: {}", serverName, e.getMessage());
+                        }
+                    },
+                    serverName -> hardcoreServers.getScope(serverName) != null);
+            proxyLink.start();
+        } catch (Exception e) {
+            logger.error("Failed to start proxy link", e);
+            proxyLink = null;
+        }
     }
 
     /**
@@ -174,55 +387,165 @@ public class HardcoreBanVelocityPlugin {
 
     /**
      * Starts scheduled tasks.
+     *
+     * @param refreshed Whether the bans were just loaded from the database
      */
-    private void startTasks() {
+    private void startTasks(boolean refreshed) {
         int checkInterval = configManager.getInt("check-interval", 10); // Default to 10 seconds
 
-        // Refresh bans from database periodically
-        server.getScheduler().buildTask(this, this::refreshBans)
-                .repeat(checkInterval, TimeUnit.SECONDS)
+        // Refresh bans from database periodically, backing off while it is failing
+        scheduleRefresh(refreshed ? checkInterval : 0);
+
+        // Compare each scope's ban cache with its hardcore backends and repair any drift
+        int antiEntropyInterval = configManager.getInt("anti-entropy.interval-seconds", 300);
+        if (antiEntropyInterval > 0) {
+            server.getScheduler().buildTask(this, () -> {
+                        for (String scope : hardcoreServers.getScopes()) {
+                            hardcoreServers.getServers(scope).forEach(antiEntropy::start);
+                        }
+                    })
+                    .delay(antiEntropyInterval, TimeUnit.SECONDS)
+                    .repeat(antiEntropyInterval, TimeUnit.SECONDS)
+                    .schedule();
+        }
+    }
+
+    /**
+     * Schedules the next background refresh of the ban caches.
+     *
+     * @param delaySeconds The delay before the refresh, in seconds
+     */
+    private void scheduleRefresh(long delaySeconds) {
+        server.getScheduler().buildTask(this, this::runScheduledRefresh)
+                .delay(delaySeconds, TimeUnit.SECONDS)
                 .schedule();
     }
 
     /**
-     * Refreshes ban data from the database.
+     * Refreshes the ban caches and schedules the next refresh. While the database keeps failing the
+     * delay doubles up to ban-cache.max-backoff-seconds, the caches keep serving their last known bans,
+     * and hardcore servers whose cache has gone stale are asked for a snapshot instead.
      */
-    public void refreshBans() {
+    private void runScheduledRefresh() {
+        int checkInterval = configManager.getInt("check-interval", 10);
+        if (refreshBans()) {
+            refreshFailures = 0;
+            scheduleRefresh(checkInterval);
+            return;
+        }
+
+        refreshFailures++;
+        long maxBackoff = Math.max(checkInterval, configManager.getInt("ban-cache.max-backoff-seconds", 300));
+        long backoff = Math.min(maxBackoff, (long) checkInterval << Math.min(refreshFailures, 16));
+        logger.warn("Could not refresh bans from the database ({} failures in a row), retrying in {} seconds",
+                refreshFailures, backoff);
+
+        for (String scope : hardcoreServers.getScopes()) {
+            if (!getBanCache(scope).isFresh()) {
+                hardcoreServers.getServers(scope).forEach(messageSender::sendSnapshotRequest);
+            }
+        }
+
+        scheduleRefresh(backoff);
+    }
+
+    /**
+     * Refreshes ban data from the database into the ban cache of each scope,
+     * reconnecting first if the database was unreachable.
+     *
+     * @return true if the bans were refreshed, false if the database could not be read
+     */
+    public boolean refreshBans() {
         try {
-            databaseManager.getAllBans();
+            if (!databaseManager.isConnected() && !databaseManager.connect()) {
+                return false;
+            }
+
+            // Changes arriving while the table is read are replayed on top of it
+            Map<String, Long> readStarts = new HashMap<>();
+            for (String scope : hardcoreServers.getScopes()) {
+                readStarts.put(scope, getBanCache(scope).beginRead());
+            }
+
+            boolean complete = true;
+            try {
+                Map<String, Map<UUID, Long>> bans = databaseManager.fetchAllBans();
+                for (String scope : hardcoreServers.getScopes()) {
+                    if (!getBanCache(scope).install(bans.getOrDefault(scope, Map.of()), readStarts.get(scope))) {
+                        logger.warn("Ban cache of scope {} changed too much during the refresh; keeping it", scope);
+                        complete = false;
+                    }
+                }
+            } finally {
+                for (String scope : readStarts.keySet()) {
+                    getBanCache(scope).endRead();
+                }
+            }
+
+            if (complete) {
+                lastRefreshSuccess = System.currentTimeMillis();
+            }
+            saveBanSnapshot();
             logger.debug("Refreshed bans from database");
+            return true;
         } catch (Exception e) {
             logger.error("Error refreshing bans: {}", e.getMessage());
+            return false;
         }
     }
 
     /**
-     * Checks if a player is banned.
+     * Gets the time the bans were last read from the database.
+     *
+     * @return The time in milliseconds, or 0 if they never were
+     */
+    public long getLastRefreshSuccess() {
+        return lastRefreshSuccess;
+    }
+
+    /**
+     * Checks if a player is banned in a scope.
      *
      * @param uuid The UUID of the player
+     * @param scope The ban scope
      * @return true if the player is banned, false otherwise
      */
-    public boolean isBanned(UUID uuid) {
-        return databaseManager.isBanned(uuid);
+    public boolean isBanned(UUID uuid, String scope) {
+        return databaseManager.isBanned(uuid, scope);
     }
 
     /**
-     * Gets the time left on a player's ban.
+     * Gets the time left on a player's ban in a scope.
      *
      * @param uuid The UUID of the player
+     * @param scope The ban scope
      * @return The time left in milliseconds, or 0 if not banned
      */
-    public long getTimeLeft(UUID uuid) {
-        return databaseManager.getTimeLeft(uuid);
+    public long getTimeLeft(UUID uuid, String scope) {
+        return databaseManager.getTimeLeft(uuid, scope);
     }
 
     /**
-     * Gets all banned players.
+     * Gets all banned players in every configured scope.
      *
-     * @return A map of UUID to expiry time
+     * @return A map of scope to a map of UUID to expiry time
      */
-    public Map<UUID, Long> getBannedPlayers() {
-        return databaseManager.getAllBans();
+    public Map<String, Map<UUID, Long>> getBannedPlayers() {
+        Map<String, Map<UUID, Long>> bans = new LinkedHashMap<>();
+        Map<String, Map<UUID, Long>> fromDatabase = null;
+
+        for (String scope : hardcoreServers.getScopes()) {
+            BanCache banCache = getBanCache(scope);
+            if (banCache.isSynced()) {
+                bans.put(scope, banCache.snapshot());
+                continue;
+            }
+            if (fromDatabase == null) {
+                fromDatabase = databaseManager.getAllBans();
+            }
+            bans.put(scope, fromDatabase.getOrDefault(scope, new HashMap<>()));
+        }
+        return bans;
     }
 
     /**
@@ -233,8 +556,9 @@ public class HardcoreBanVelocityPlugin {
      */
     public String getPlayerName(UUID uuid) {
         // Check if we have a cached name
-        if (playerNameCache.containsKey(uuid)) {
-            return playerNameCache.get(uuid);
+        String name = playerNames.getName(uuid);
+        if (name != null) {
+            return name;
         }
 
         // Try to get from an online player
@@ -250,7 +574,16 @@ public class HardcoreBanVelocityPlugin {
      * @param name The name of the player
      */
     public void setPlayerName(UUID uuid, String name) {
-        playerNameCache.put(uuid, name);
+        playerNames.put(uuid, name);
+    }
+
+    /**
+     * Gets the index of player names seen in ban data.
+     *
+     * @return The player name index
+     */
+    public PlayerNameIndex getPlayerNames() {
+        return playerNames;
     }
 
     /**
@@ -280,6 +613,15 @@ public class HardcoreBanVelocityPlugin {
         return configManager;
     }
 
+    /**
+     * Gets the registry of hardcore servers and their ban scopes.
+     *
+     * @return The hardcore server registry
+     */
+    public HardcoreServerRegistry getHardcoreServers() {
+        return hardcoreServers;
+    }
+
     /**
      * Gets the database manager.
      *
@@ -298,6 +640,108 @@ public class HardcoreBanVelocityPlugin {
         return messageSender;
     }
 
+    /**
+     * Gets the index of players that can carry plugin messages to each backend.
+     *
+     * @return The carrier index
+     */
+    public CarrierIndex getCarrierIndex() {
+        return carrierIndex;
+    }
+
+    /**
+     * Gets the direct link to Paper backends.
+     *
+     * @return The proxy link server, or null if the link is disabled
+     */
+    public ProxyLinkServer getProxyLink() {
+        return proxyLink;
+    }
+
+    /**
+     * Gets the proxy's cache of active bans in a scope.
+     *
+     * @param scope The ban scope
+     * @return The ban cache
+     */
+    public BanCache getBanCache(String scope) {
+        return banCaches.computeIfAbsent(scope, s -> new BanCache(s,
+                configManager.getInt("ban-cache.max-staleness-seconds", 3600) * 1000L, banExpiries));
+    }
+
+    /**
+     * Gets the prepared ban messages.
+     *
+     * @return The ban messages
+     */
+    public BanMessages getBanMessages() {
+        return banMessages;
+    }
+
+    /**
+     * Gets the memo of recent connection denials.
+     *
+     * @return The denial cache
+     */
+    public DenialCache getDenialCache() {
+        return denialCache;
+    }
+
+    /**
+     * Gets the fence that keeps players away from the ban cache until it has their latest ban change.
+     *
+     * @return The ban version fence
+     */
+    public BanVersionFence getBanVersionFence() {
+        return banVersionFence;
+    }
+
+    /**
+     * Gets the listener holding ban lookups prefetched at login.
+     *
+     * @return The login prefetch listener
+     */
+    public LoginPrefetchListener getLoginPrefetch() {
+        return loginPrefetch;
+    }
+
+    /**
+     * Gets the waiting room that parks banned players on the lobby.
+     *
+     * @return The waiting room listener
+     */
+    public WaitingRoomListener getWaitingRoom() {
+        return waitingRoom;
+    }
+
+    /**
+     * Gets the controller that paces connections to hardcore servers.
+     *
+     * @return The admission controller
+     */
+    public AdmissionController getAdmission() {
+        return admission;
+    }
+
+    /**
+     * Gets the ban cache consistency checker.
+     *
+     * @return The anti-entropy instance
+     */
+    public AntiEntropy getAntiEntropy() {
+        return antiEntropy;
+    }
+
+    /**
+     * Gets the shared-memory ban table reader for a scope.
+     *
+     * @param scope The ban scope
+     * @return The reader, or null if shared memory is disabled
+     */
+    public SharedBanTableReader getSharedBanTable(String scope) {
+        return sharedBanTables.get(scope);
+    }
+
     /**
      * Gets the MiniMessage instance.
      *
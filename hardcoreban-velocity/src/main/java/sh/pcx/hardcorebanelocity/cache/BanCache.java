@@ -0,0 +1,591 @@
+package sh.pcx.hardcorebanelocity.cache;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * The proxy's view of the active bans in one ban scope.
+ *
+ * <p>The view is filled either from the database or from a snapshot sent by a hardcore
+ * backend in the scope, and then kept current by the backends' BAN, UNBAN and CLEAR_ALL deltas
+ * and by the bans the proxy writes itself.
+ * Every delta carries its backend's epoch (chosen at startup) and a sequence number, so a missed
+ * delta or a backend restart shows up as a gap and the caller can ask for a new snapshot.
+ * A delta at or below the position already reached is a duplicate, or is covered by an installed
+ * snapshot, and is ignored.
+ * Several backends may share a scope, so the position is tracked separately for each of them.
+ * Installing a snapshot swaps the whole map at once, so lookups never see a half-built view.</p>
+ *
+ * <p>A backend's snapshot or consistency repair only speaks for what that backend has seen, and it
+ * may not have seen a ban another backend or the proxy made moments ago. So the view remembers which
+ * backend last reported each ban, and a snapshot or repair from a backend only removes the bans that
+ * backend reported itself. Other bans stay until a delta lifts them or a database read confirms
+ * they are gone.</p>
+ *
+ * <p>A database read takes a while, and changes keep arriving during it. While a read is open,
+ * every change to the view is also written to a journal, and installing the read replays the
+ * changes made since it started on top of it, so a read never undoes a newer change.</p>
+ *
+ * <p>The view stays usable while the database is unreachable, but only up to a maximum age since
+ * it was last confirmed by a database read, a backend snapshot or a clean consistency check.
+ * Past that age {@link #isFresh()} is false and callers must look elsewhere.</p>
+ *
+ * <p>Every ban the view gains is handed to the {@link BanExpiryScheduler}, which removes it
+ * at its expiry time.</p>
+ */
+public class BanCache {
+
+    private static final int MAX_PENDING = 4096;
+    private static final int MAX_JOURNAL = 65536;
+
+    private volatile Map<UUID, Long> bans = new ConcurrentHashMap<>();
+    private volatile boolean synced;
+    private volatile long validatedAt;
+    private final String scope;
+    private final long maxAge;
+    private final BanExpiryScheduler expiries;
+
+    // Position in each backend's change stream, by lowercase server name; guarded by this
+    private final Map<String, Stream> streams = new HashMap<>();
+
+    // Backend that last reported each ban, by lowercase server name; bans from elsewhere have none; guarded by this
+    private final Map<UUID, String> owners = new HashMap<>();
+
+    // Changes made while database reads are open, numbered from journalBase + 1; guarded by this
+    private final List<Consumer<Map<UUID, Long>>> journal = new ArrayList<>();
+    private long journalBase;
+    private int openReads;
+    private boolean journalOverflowed;
+
+    /**
+     * Creates a new, empty BanCache.
+     *
+     * @param scope The ban scope the cache holds
+     * @param maxAge How long in milliseconds the view may be served after it was last confirmed
+     * @param expiries Removes cached bans when they expire
+     */
+    public BanCache(String scope, long maxAge, BanExpiryScheduler expiries) {
+        this.scope = scope;
+        this.maxAge = maxAge;
+        this.expiries = expiries;
+    }
+
+    /**
+     * Gets the ban scope the cache holds.
+     *
+     * @return The scope
+     */
+    public String getScope() {
+        return scope;
+    }
+
+    /**
+     * Gets the expiry time of a cached ban.
+     *
+     * @param uuid The UUID of the player
+     * @return The expiry time, or 0 if the player has no cached ban
+     */
+    public long getExpiry(UUID uuid) {
+        return bans.getOrDefault(uuid, 0L);
+    }
+
+    /**
+     * Checks if the cache has been filled from the database or a snapshot.
+     *
+     * @return true if lookups can be answered from the cache
+     */
+    public boolean isSynced() {
+        return synced;
+    }
+
+    /**
+     * Checks if the cache has been filled and was confirmed recently enough to be trusted.
+     *
+     * @return true if lookups can be answered from the cache
+     */
+    public boolean isFresh() {
+        return synced && System.currentTimeMillis() - validatedAt <= maxAge;
+    }
+
+    /**
+     * Gets the time the view was last confirmed against the database or a backend.
+     *
+     * @return The time in milliseconds, or 0 if it never was
+     */
+    public long getValidatedAt() {
+        return validatedAt;
+    }
+
+    /**
+     * Records that the view was just confirmed to match a backend.
+     */
+    public void markValidated() {
+        if (synced) {
+            validatedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Removes a ban that has reached its expiry time, unless it was lifted or changed meanwhile.
+     *
+     * @param uuid The UUID of the player
+     * @param expiry The expiry time that was reached
+     * @return true if the ban was removed
+     */
+    public synchronized boolean expire(UUID uuid, long expiry) {
+        if (!bans.remove(uuid, expiry)) {
+            return false;
+        }
+        // Journaled like any other change, so an open database read cannot bring the ban back
+        record(target -> target.remove(uuid, expiry));
+        owners.remove(uuid);
+        return true;
+    }
+
+    /**
+     * Records a ban the proxy wrote to the database itself. The backends are told separately,
+     * so no backend's stream position changes.
+     *
+     * @param uuid The UUID of the player
+     * @param expiry The time the ban expires
+     */
+    public synchronized void put(UUID uuid, long expiry) {
+        record(target -> target.put(uuid, expiry));
+        owners.remove(uuid);
+        Long previous = bans.put(uuid, expiry);
+        if (previous == null || previous.longValue() != expiry) {
+            expiries.schedule(this, uuid, expiry);
+        }
+    }
+
+    /**
+     * Removes a ban the proxy lifted in the database itself.
+     *
+     * @param uuid The UUID of the player
+     * @return true if the player had a cached ban
+     */
+    public synchronized boolean remove(UUID uuid) {
+        record(target -> target.remove(uuid));
+        owners.remove(uuid);
+        return bans.remove(uuid) != null;
+    }
+
+    /**
+     * Builds a hash tree over the active cached bans.
+     *
+     * @return The hash tree
+     */
+    public BanHashTree buildHashTree() {
+        return BanHashTree.build(bans, System.currentTimeMillis());
+    }
+
+    /**
+     * Brings some hash tree buckets in line with a backend's copy, leaving every other bucket
+     * untouched. Bans missing from the backend's copy are only removed if that backend reported them.
+     *
+     * @param source The name of the backend the copy came from
+     * @param buckets The bucket indexes being repaired
+     * @param authoritative The backend's active bans in those buckets
+     * @return The number of entries that were added, changed or removed
+     */
+    public synchronized int repairBuckets(String source, Set<Integer> buckets, Map<UUID, Long> authoritative) {
+        String owner = source.toLowerCase();
+        Map<UUID, Long> current = bans;
+        int changed = 0;
+
+        for (UUID uuid : current.keySet()) {
+            if (buckets.contains(BanHashTree.bucket(uuid)) && !authoritative.containsKey(uuid)
+                    && owner.equals(owners.get(uuid))) {
+                record(target -> target.remove(uuid));
+                current.remove(uuid);
+                owners.remove(uuid);
+                changed++;
+            }
+        }
+        for (Map.Entry<UUID, Long> entry : authoritative.entrySet()) {
+            record(target -> target.put(entry.getKey(), entry.getValue()));
+            owners.put(entry.getKey(), owner);
+            Long previous = current.put(entry.getKey(), entry.getValue());
+            if (previous == null || previous.longValue() != entry.getValue()) {
+                expiries.schedule(this, entry.getKey(), entry.getValue());
+                changed++;
+            }
+        }
+        validatedAt = System.currentTimeMillis();
+        return changed;
+    }
+
+    /**
+     * Gets a copy of the cached bans.
+     *
+     * @return A map of UUID to expiry time
+     */
+    public Map<UUID, Long> snapshot() {
+        return new HashMap<>(bans);
+    }
+
+    /**
+     * Gets the number of cached bans.
+     *
+     * @return The number of bans
+     */
+    public int size() {
+        return bans.size();
+    }
+
+    /**
+     * Marks the start of a database read. Changes made from now on are journaled until the read
+     * is ended with {@link #endRead()}, which must always follow, even if the read fails.
+     *
+     * @return The point the read started at, to pass to {@link #install(Map, long)}
+     */
+    public synchronized long beginRead() {
+        openReads++;
+        return journalBase + journal.size();
+    }
+
+    /**
+     * Marks the end of a database read, dropping the journal once no read needs it.
+     */
+    public synchronized void endRead() {
+        if (--openReads > 0) {
+            return;
+        }
+        journalBase += journal.size();
+        journal.clear();
+        journalOverflowed = false;
+    }
+
+    /**
+     * Replaces the cached bans with a set read from the database, with every change made since the
+     * read started applied on top. The position in the backends' change streams is left unchanged,
+     * since the view still holds every delta it has applied.
+     *
+     * @param latest The active bans mapped to their expiry times
+     * @param readStart The point the read started at, from {@link #beginRead()}
+     * @return false if too many changes were made during the read and the view was left unchanged
+     */
+    public synchronized boolean install(Map<UUID, Long> latest, long readStart) {
+        if (journalOverflowed) {
+            return false;
+        }
+
+        Map<UUID, Long> installed = new ConcurrentHashMap<>(latest);
+        for (int i = (int) (readStart - journalBase); i < journal.size(); i++) {
+            journal.get(i).accept(installed);
+        }
+
+        scheduleChanged(bans, installed);
+        bans = installed;
+        owners.keySet().retainAll(installed.keySet());
+        validatedAt = System.currentTimeMillis();
+        synced = true;
+        return true;
+    }
+
+    /**
+     * Fills an empty cache with bans saved before a restart. They keep the confirmation time they
+     * were saved with, so they are only trusted for what is left of the original staleness bound.
+     *
+     * @param saved The saved bans mapped to their expiry times
+     * @param savedValidatedAt The time the saved bans were last confirmed
+     * @return false if the cache was already filled and was left unchanged
+     */
+    public synchronized boolean restore(Map<UUID, Long> saved, long savedValidatedAt) {
+        if (synced) {
+            return false;
+        }
+
+        long now = System.currentTimeMillis();
+        Map<UUID, Long> restored = new ConcurrentHashMap<>();
+        saved.forEach((uuid, expiry) -> {
+            if (expiry > now) {
+                restored.put(uuid, expiry);
+            }
+        });
+
+        scheduleChanged(Map.of(), restored);
+        recordReplacement(restored);
+        bans = restored;
+        owners.clear();
+        validatedAt = Math.min(savedValidatedAt, now);
+        synced = true;
+        return true;
+    }
+
+    /**
+     * Replaces the cached bans with a snapshot from a backend, then replays any of its
+     * deltas that arrived while the snapshot was in flight and are newer than it, in stream order
+     * whatever order they arrived in. If one of them is still missing, the stream stays behind it
+     * and {@link #getPosition(String)} reports the gap, so the caller can ask for another snapshot.
+     * Cached bans missing from the snapshot are kept unless the backend reported them itself,
+     * since they may come from a change the backend has not heard of yet.
+     *
+     * @param source The name of the backend the snapshot came from
+     * @param snapshotEpoch The backend epoch the snapshot was taken in
+     * @param snapshotSequence The backend sequence number the snapshot reflects
+     * @param latest The active bans mapped to their expiry times
+     * @return false if the snapshot was older than the current view and was ignored
+     */
+    public synchronized boolean installSnapshot(String source, long snapshotEpoch, long snapshotSequence,
+                                                Map<UUID, Long> latest) {
+        Stream stream = stream(source);
+        if (synced && !stream.awaitingSnapshot && snapshotEpoch == stream.epoch && snapshotSequence < stream.sequence) {
+            // Deltas that overtook the snapshot already brought the view past it
+            return false;
+        }
+
+        String owner = source.toLowerCase();
+        Map<UUID, Long> installed = new ConcurrentHashMap<>(latest);
+        bans.forEach((uuid, expiry) -> {
+            if (!installed.containsKey(uuid) && !owner.equals(owners.get(uuid))) {
+                installed.put(uuid, expiry);
+            }
+        });
+        for (UUID uuid : latest.keySet()) {
+            owners.put(uuid, owner);
+        }
+        stream.epoch = snapshotEpoch;
+        stream.sequence = snapshotSequence;
+        stream.awaitingSnapshot = false;
+
+        stream.pending.sort(Comparator.<Delta>comparingLong(delta -> delta.epoch)
+                .thenComparingLong(delta -> delta.sequence));
+        List<Delta> stillPending = new ArrayList<>();
+        long replayed = snapshotSequence;
+        for (Delta delta : stream.pending) {
+            // Skip deltas from another epoch, ones the snapshot covers and duplicates
+            if (delta.epoch != snapshotEpoch || delta.sequence <= replayed) {
+                continue;
+            }
+            delta.applyTo(installed);
+            replayed = delta.sequence;
+            if (!stream.awaitingSnapshot && delta.sequence == stream.sequence + 1) {
+                stream.sequence = delta.sequence;
+            } else {
+                // A delta before this one is missing; keep the rest for the next snapshot
+                stream.awaitingSnapshot = true;
+                stillPending.add(delta);
+            }
+        }
+        stream.pending.clear();
+        stream.pending.addAll(stillPending);
+
+        recordReplacement(installed);
+        scheduleChanged(bans, installed);
+        bans = installed;
+        owners.keySet().retainAll(installed.keySet());
+        validatedAt = System.currentTimeMillis();
+        synced = true;
+        return true;
+    }
+
+    /**
+     * Applies a BAN delta from the backend.
+     *
+     * @return false if a gap was detected and a snapshot is needed from the source backend
+     */
+    public synchronized boolean applyBan(String source, long deltaEpoch, long deltaSequence, UUID uuid, long expiry) {
+        Stream stream = stream(source);
+        if (stream.covers(deltaEpoch, deltaSequence)) {
+            return true;
+        }
+        owners.put(uuid, source.toLowerCase());
+        return apply(stream, new Delta(deltaEpoch, deltaSequence, uuid, expiry));
+    }
+
+    /**
+     * Applies an UNBAN delta from the backend.
+     *
+     * @return false if a gap was detected and a snapshot is needed from the source backend
+     */
+    public synchronized boolean applyUnban(String source, long deltaEpoch, long deltaSequence, UUID uuid) {
+        Stream stream = stream(source);
+        if (stream.covers(deltaEpoch, deltaSequence)) {
+            return true;
+        }
+        owners.remove(uuid);
+        return apply(stream, new Delta(deltaEpoch, deltaSequence, uuid, 0));
+    }
+
+    /**
+     * Applies a CLEAR_ALL delta from the backend.
+     *
+     * @return false if a gap was detected and a snapshot is needed from the source backend
+     */
+    public synchronized boolean applyClear(String source, long deltaEpoch, long deltaSequence) {
+        Stream stream = stream(source);
+        if (stream.covers(deltaEpoch, deltaSequence)) {
+            return true;
+        }
+        owners.clear();
+        return apply(stream, new Delta(deltaEpoch, deltaSequence, null, 0));
+    }
+
+    /**
+     * Applies a delta beyond the stream position to the live view and advances the position.
+     * Deltas are applied even across a forward gap, since they are still the newest information;
+     * while a snapshot is awaited they are also kept so they can be replayed on top of it.
+     */
+    private boolean apply(Stream stream, Delta delta) {
+        record(delta::applyTo);
+        delta.applyTo(bans);
+        if (delta.uuid != null && delta.expiry != 0) {
+            expiries.schedule(this, delta.uuid, delta.expiry);
+        }
+
+        if (!stream.awaitingSnapshot && delta.epoch == stream.epoch && delta.sequence == stream.sequence + 1) {
+            stream.sequence = delta.sequence;
+            return true;
+        }
+
+        stream.awaitingSnapshot = true;
+        if (stream.pending.size() >= MAX_PENDING) {
+            stream.pending.remove(0);
+        }
+        stream.pending.add(delta);
+        return false;
+    }
+
+    /**
+     * Journals a change to the view while a database read is open.
+     */
+    private void record(Consumer<Map<UUID, Long>> change) {
+        if (openReads == 0 || journalOverflowed) {
+            return;
+        }
+        if (journal.size() >= MAX_JOURNAL) {
+            journalOverflowed = true;
+            return;
+        }
+        journal.add(change);
+    }
+
+    /**
+     * Journals the replacement of the whole view while a database read is open.
+     */
+    private void recordReplacement(Map<UUID, Long> replacement) {
+        if (openReads == 0) {
+            return;
+        }
+        Map<UUID, Long> copy = Map.copyOf(replacement);
+        record(target -> {
+            target.clear();
+            target.putAll(copy);
+        });
+    }
+
+    /**
+     * Schedules the expiry of every ban that is new or has a different expiry than before.
+     * Unchanged bans are already scheduled.
+     */
+    private void scheduleChanged(Map<UUID, Long> previous, Map<UUID, Long> latest) {
+        for (Map.Entry<UUID, Long> entry : latest.entrySet()) {
+            if (!Objects.equals(previous.get(entry.getKey()), entry.getValue())) {
+                expiries.schedule(this, entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Gets how far the view has followed a backend's change stream.
+     *
+     * @param source The name of the backend
+     * @return The position, or null if the stream has not been followed yet or has a gap
+     */
+    public synchronized Position getPosition(String source) {
+        Stream stream = streams.get(source.toLowerCase());
+        if (stream == null || stream.awaitingSnapshot || stream.sequence < 0) {
+            return null;
+        }
+        return new Position(stream.epoch, stream.sequence);
+    }
+
+    private Stream stream(String source) {
+        return streams.computeIfAbsent(source.toLowerCase(), name -> new Stream());
+    }
+
+    /**
+     * A point in a backend's change stream: every change up to it has been applied to the view.
+     */
+    public static final class Position {
+        private final long epoch;
+        private final long sequence;
+
+        private Position(long epoch, long sequence) {
+            this.epoch = epoch;
+            this.sequence = sequence;
+        }
+
+        /**
+         * Gets the backend epoch.
+         *
+         * @return The epoch
+         */
+        public long getEpoch() {
+            return epoch;
+        }
+
+        /**
+         * Gets the sequence number of the last change applied.
+         *
+         * @return The sequence number
+         */
+        public long getSequence() {
+            return sequence;
+        }
+    }
+
+    /**
+     * A backend's position in its change stream.
+     */
+    private static final class Stream {
+        private long epoch;
+        private long sequence = -1;
+        private boolean awaitingSnapshot;
+        private final List<Delta> pending = new ArrayList<>();
+
+        /**
+         * Checks if a delta is at or below the position already reached, as a duplicate or one
+         * an installed snapshot covers.
+         */
+        private boolean covers(long deltaEpoch, long deltaSequence) {
+            return deltaEpoch == epoch && deltaSequence <= sequence;
+        }
+    }
+
+    /**
+     * A single change from the backend's stream.
+     */
+    private static final class Delta {
+        private final long epoch;
+        private final long sequence;
+        private final UUID uuid;     // null for CLEAR_ALL
+        private final long expiry;   // 0 for UNBAN
+
+        private Delta(long epoch, long sequence, UUID uuid, long expiry) {
+            this.epoch = epoch;
+            this.sequence = sequence;
+            this.uuid = uuid;
+            this.expiry = expiry;
+        }
+
+        private void applyTo(Map<UUID, Long> target) {
+            if (uuid == null) {
+                target.clear();
+            } else if (expiry == 0) {
+                target.remove(uuid);
+            } else {
+                target.put(uuid, expiry);
+            }
+        }
+    }
+}
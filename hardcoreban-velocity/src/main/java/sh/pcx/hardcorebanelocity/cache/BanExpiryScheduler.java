@@ -0,0 +1,118 @@
+package sh.pcx.hardcorebanelocity.cache;
+
+import java.util.UUID;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+import sh.pcx.hardcorebanelocity.HardcoreBanVelocityPlugin;
+import sh.pcx.hardcorebanelocity.events.BanExpiredEvent;
+
+/**
+ * Removes bans from the proxy's ban caches at the moment they expire and fires a
+ * {@link BanExpiredEvent} for each, so expiries are noticed without polling the database.
+ *
+ * <p>Ban caches schedule every ban they gain or whose expiry changes. Entries are never removed
+ * from the queue when a ban is lifted or extended; when such an entry comes due the cache no
+ * longer holds that exact expiry, and it is dropped without effect.</p>
+ */
+public class BanExpiryScheduler {
+
+    private final HardcoreBanVelocityPlugin plugin;
+    private final DelayQueue<Expiry> queue = new DelayQueue<>();
+    private Thread thread;
+
+    /**
+     * Creates a new BanExpiryScheduler.
+     *
+     * @param plugin The main plugin instance
+     */
+    public BanExpiryScheduler(HardcoreBanVelocityPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Starts the thread that waits for bans to expire.
+     */
+    public void start() {
+        thread = Thread.ofPlatform().daemon().name("HardcoreBan-Expiry").start(this::run);
+    }
+
+    /**
+     * Stops waiting for bans to expire.
+     */
+    public void stop() {
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Schedules the removal of a ban when it expires.
+     *
+     * @param banCache The ban cache holding the ban
+     * @param uuid The UUID of the banned player
+     * @param expiry The time the ban expires
+     */
+    public void schedule(BanCache banCache, UUID uuid, long expiry) {
+        queue.add(new Expiry(banCache, uuid, expiry));
+    }
+
+    /**
+     * Gets the number of scheduled expiries, including ones that will be dropped.
+     *
+     * @return The queue size
+     */
+    public int size() {
+        return queue.size();
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Expiry due;
+            try {
+                due = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            try {
+                if (due.banCache.expire(due.uuid, due.expiry)) {
+                    plugin.getDenialCache().invalidate(due.uuid);
+                    plugin.getLoginPrefetch().invalidate(due.uuid);
+                    plugin.getServer().getEventManager()
+                            .fireAndForget(new BanExpiredEvent(due.uuid, due.banCache.getScope(), due.expiry));
+                    plugin.getLogger().debug("Ban of {} in scope {} expired", plugin.getPlayerName(due.uuid),
+                            due.banCache.getScope());
+                }
+            } catch (Exception e) {
+                plugin.getLogger().error("Error expiring ban of {}: {}", due.uuid, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * A ban waiting for its expiry time.
+     */
+    private static final class Expiry implements Delayed {
+        private final BanCache banCache;
+        private final UUID uuid;
+        private final long expiry;
+
+        private Expiry(BanCache banCache, UUID uuid, long expiry) {
+            this.banCache = banCache;
+            this.uuid = uuid;
+            this.expiry = expiry;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(expiry - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(expiry, ((Expiry) other).expiry);
+        }
+    }
+}
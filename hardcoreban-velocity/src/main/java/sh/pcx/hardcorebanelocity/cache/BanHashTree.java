@@ -0,0 +1,101 @@
+package sh.pcx.hardcorebanelocity.cache;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A bucketed hash tree over a set of active bans, used to find where the proxy's
+ * view of the bans differs from the backend's without sending the whole set.
+ *
+ * <p>Bans are spread over {@link #BUCKETS} leaf buckets by UUID hash. Each node of the
+ * 16-ary tree above them holds the sum of its children's hashes, so a node's hash only
+ * depends on which (UUID, expiry) pairs sit below it, never on insertion order.
+ * Level 0 is the root; level {@link #LEAF_LEVEL} holds the buckets.
+ * Must match {@code BanHashTree} in the Paper plugin.</p>
+ */
+public final class BanHashTree {
+
+    public static final int FANOUT = 16;
+    public static final int LEAF_LEVEL = 3;
+    public static final int BUCKETS = 4096;
+
+    private final long[][] levels = new long[LEAF_LEVEL + 1][];
+
+    private BanHashTree(long[] leaves) {
+        levels[LEAF_LEVEL] = leaves;
+        for (int level = LEAF_LEVEL - 1; level >= 0; level--) {
+            long[] children = levels[level + 1];
+            long[] nodes = new long[children.length / FANOUT];
+            for (int i = 0; i < children.length; i++) {
+                nodes[i / FANOUT] += children[i];
+            }
+            levels[level] = nodes;
+        }
+    }
+
+    /**
+     * Builds a tree over the bans that are still active.
+     *
+     * @param bans The bans mapped to their expiry times
+     * @param now The current time; bans expiring at or before it are left out
+     * @return The tree
+     */
+    public static BanHashTree build(Map<UUID, Long> bans, long now) {
+        long[] leaves = new long[BUCKETS];
+        for (Map.Entry<UUID, Long> entry : bans.entrySet()) {
+            long expiry = entry.getValue();
+            if (expiry > now) {
+                leaves[bucket(entry.getKey())] += entryHash(entry.getKey(), expiry);
+            }
+        }
+        return new BanHashTree(leaves);
+    }
+
+    /**
+     * Gets the hash of a node.
+     *
+     * @param level The level of the node, 0 for the root
+     * @param index The index of the node within its level
+     * @return The node hash
+     */
+    public long getHash(int level, int index) {
+        return levels[level][index];
+    }
+
+    /**
+     * Gets the number of nodes on a level.
+     *
+     * @param level The level, 0 for the root
+     * @return The number of nodes
+     */
+    public static int width(int level) {
+        return 1 << (4 * level);
+    }
+
+    /**
+     * Gets the leaf bucket a player's ban falls into.
+     *
+     * @param uuid The UUID of the player
+     * @return The bucket index
+     */
+    public static int bucket(UUID uuid) {
+        return (int) (mix(uuid.getMostSignificantBits() ^ uuid.getLeastSignificantBits()) >>> 52);
+    }
+
+    private static long entryHash(UUID uuid, long expiry) {
+        long h = mix(uuid.getMostSignificantBits() + 0x9E3779B97F4A7C15L * uuid.getLeastSignificantBits());
+        return mix(h ^ expiry);
+    }
+
+    /**
+     * Finalization mix from MurmurHash3; must match the Paper plugin.
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,200 @@
+package sh.pcx.hardcorebanelocity.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32C;
+
+import org.slf4j.Logger;
+
+import sh.pcx.hardcorebanelocity.messaging.BanSnapshotCodec;
+
+/**
+ * Keeps a copy of the proxy's ban caches on disk, so bans can be enforced right after a restart
+ * without waiting for the database.
+ *
+ * <p>Each scope is stored as a {@link BanSnapshotCodec} snapshot together with the time its cache
+ * was last confirmed, so a restored cache is only trusted for as long as the original one would
+ * have been. The file ends with a CRC32C of everything before it and is replaced by writing a
+ * temporary file and renaming it over the old one, so a crash mid-write leaves the previous copy
+ * intact and a damaged file is detected and ignored.</p>
+ */
+public class BanSnapshotFile {
+
+    private static final int MAGIC = 0x48434253; // "HCBS"
+    private static final int FORMAT = 1;
+    private static final int MAX_SCOPES = 1024;
+
+    private final Logger logger;
+    private final Path file;
+
+    /**
+     * Creates a new BanSnapshotFile.
+     *
+     * @param logger The plugin logger
+     * @param file The file to keep the snapshot in
+     */
+    public BanSnapshotFile(Logger logger, Path file) {
+        this.logger = logger;
+        this.file = file;
+    }
+
+    /**
+     * Writes the bans of every filled cache to the file, replacing its previous contents.
+     *
+     * @param banCaches The ban caches by scope
+     * @throws IOException If the file could not be written
+     */
+    public synchronized void save(Map<String, BanCache> banCaches) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeByte(FORMAT);
+        out.writeLong(System.currentTimeMillis());
+
+        Map<String, BanCache> synced = new LinkedHashMap<>();
+        banCaches.forEach((scope, banCache) -> {
+            if (banCache.isSynced()) {
+                synced.put(scope, banCache);
+            }
+        });
+
+        out.writeInt(synced.size());
+        for (Map.Entry<String, BanCache> entry : synced.entrySet()) {
+            // Read the confirmation time first, so it never claims more than the bans saw
+            long validatedAt = entry.getValue().getValidatedAt();
+            byte[] snapshot = BanSnapshotCodec.encode(entry.getValue().snapshot());
+            out.writeUTF(entry.getKey());
+            out.writeLong(validatedAt);
+            out.writeInt(snapshot.length);
+            out.write(snapshot);
+        }
+
+        CRC32C crc = new CRC32C();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+        out.flush();
+
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Reads the saved bans. A missing, damaged or unreadable file yields no bans.
+     *
+     * @return The saved bans by scope, empty if there are none
+     */
+    public Map<String, Saved> load() {
+        byte[] data;
+        try {
+            data = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            return Map.of();
+        } catch (IOException e) {
+            logger.warn("Could not read saved bans from {}: {}", file, e.getMessage());
+            return Map.of();
+        }
+
+        try {
+            if (data.length < 4) {
+                throw new IOException("file is truncated");
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(data, 0, data.length - 4);
+            int expected = ByteBuffer.wrap(data, data.length - 4, 4).getInt();
+            if ((int) crc.getValue() != expected) {
+                throw new IOException("checksum mismatch");
+            }
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, data.length - 4));
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a ban snapshot");
+            }
+            int format = in.readUnsignedByte();
+            if (format != FORMAT) {
+                throw new IOException("unsupported format " + format);
+            }
+            in.readLong(); // saved at
+
+            int scopeCount = in.readInt();
+            if (scopeCount < 0 || scopeCount > MAX_SCOPES) {
+                throw new IOException("invalid scope count " + scopeCount);
+            }
+
+            Map<String, Saved> saved = new LinkedHashMap<>();
+            for (int i = 0; i < scopeCount; i++) {
+                String scope = in.readUTF();
+                long validatedAt = in.readLong();
+                int length = in.readInt();
+                if (length < 0 || length > in.available()) {
+                    throw new IOException("invalid snapshot length " + length);
+                }
+                byte[] snapshot = new byte[length];
+                in.readFully(snapshot);
+                saved.put(scope, new Saved(validatedAt, BanSnapshotCodec.decode(snapshot)));
+            }
+            return saved;
+        } catch (IOException e) {
+            logger.warn("Ignoring saved bans in {}: {}", file, e.getMessage());
+            return Map.of();
+        }
+    }
+
+    /**
+     * The saved bans of one scope.
+     */
+    public static final class Saved {
+        private final long validatedAt;
+        private final Map<UUID, Long> bans;
+
+        private Saved(long validatedAt, Map<UUID, Long> bans) {
+            this.validatedAt = validatedAt;
+            this.bans = bans;
+        }
+
+        /**
+         * Gets the time the saved cache was last confirmed.
+         *
+         * @return The time in milliseconds
+         */
+        public long getValidatedAt() {
+            return validatedAt;
+        }
+
+        /**
+         * Gets the saved bans.
+         *
+         * @return The bans mapped to their expiry times
+         */
+        public Map<UUID, Long> getBans() {
+            return bans;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package sh.pcx.hardcorebanelocity.cache;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import sh.pcx.hardcorebanelocity.HardcoreBanVelocityPlugin;
+
+/**
+ * Keeps a player's connects away from the ban cache while it has not caught up with a ban change
+ * a hardcore server says it made for them.
+ *
+ * <p>Every ban change on a Paper server is stamped with its epoch and a sequence number, which
+ * serve as the version of that server's ban state. When a player whose ban changed leaves the
+ * server, it sends the version of that change separately from the change itself. If the proxy's
+ * cache has not applied that version yet, the change was delayed or lost, and the player is
+ * fenced: their connects to that scope are checked against the database, which the server wrote
+ * before sending the change, until the cache catches up or {@link #MAX_AGE} passes.</p>
+ */
+public class BanVersionFence {
+
+    private static final long MAX_AGE = 60000;
+
+    private final HardcoreBanVelocityPlugin plugin;
+    private final Map<UUID, Fence> fences = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new BanVersionFence.
+     *
+     * @param plugin The main plugin instance
+     */
+    public BanVersionFence(HardcoreBanVelocityPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Checks if the ban cache of a scope has applied a server's changes up to a version.
+     *
+     * @param serverName The name of the server
+     * @param scope The ban scope of the server
+     * @param epoch The server's epoch
+     * @param version The sequence number of the change
+     * @return true if the change has been applied, or the version is 0 and there were no changes
+     */
+    public boolean isCovered(String serverName, String scope, long epoch, long version) {
+        if (version <= 0) {
+            return true;
+        }
+        BanCache.Position position = plugin.getBanCache(scope).getPosition(serverName);
+        return position != null && position.getEpoch() == epoch && position.getSequence() >= version;
+    }
+
+    /**
+     * Fences a player until the cache has applied a change a server made to their ban.
+     *
+     * @param uuid The UUID of the player
+     * @param serverName The name of the server that made the change
+     * @param scope The ban scope of the server
+     * @param epoch The server's epoch
+     * @param version The sequence number of the change
+     * @return true if the player was fenced, false if the cache already has the change
+     */
+    public boolean require(UUID uuid, String serverName, String scope, long epoch, long version) {
+        if (isCovered(serverName, scope, epoch, version)) {
+            return false;
+        }
+
+        // Players who never come back would otherwise keep their fences
+        long now = System.currentTimeMillis();
+        fences.values().removeIf(fence -> now - fence.createdAt > MAX_AGE);
+        fences.put(uuid, new Fence(serverName, scope, epoch, version));
+        return true;
+    }
+
+    /**
+     * Checks if a player's connects to a scope must bypass the cache. A fence is dropped once the
+     * cache has caught up or it has grown too old.
+     *
+     * @param uuid The UUID of the player
+     * @param scope The ban scope of the target server
+     * @return true if the cache may not have the player's latest ban change
+     */
+    public boolean isFenced(UUID uuid, String scope) {
+        Fence fence = fences.get(uuid);
+        if (fence == null || !fence.scope.equals(scope)) {
+            return false;
+        }
+
+        if (System.currentTimeMillis() - fence.createdAt > MAX_AGE
+                || isCovered(fence.serverName, fence.scope, fence.epoch, fence.version)) {
+            fences.remove(uuid, fence);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * A change the cache must apply before it can answer for a player again.
+     */
+    private static final class Fence {
+        private final String serverName;
+        private final String scope;
+        private final long epoch;
+        private final long version;
+        private final long createdAt = System.currentTimeMillis();
+
+        private Fence(String serverName, String scope, long epoch, long version) {
+            this.serverName = serverName;
+            this.scope = scope;
+            this.epoch = epoch;
+            this.version = version;
+        }
+    }
+}
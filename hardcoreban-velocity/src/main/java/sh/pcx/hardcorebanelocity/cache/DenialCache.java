@@ -0,0 +1,172 @@
+package sh.pcx.hardcorebanelocity.cache;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.title.Title;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers recent connection denials, so a banned player retrying a hardcore server is
+ * turned away from memory instead of repeating the ban lookup and rendering the messages again.
+ *
+ * <p>The ban time is shown rounded up to whole minutes, so a denial is kept until the time left
+ * crosses the next minute boundary, when the displayed time would change. Each denial also holds
+ * a token bucket that limits how often the ban title and chat message are sent to the player.</p>
+ */
+public class DenialCache {
+
+    private static final long MINUTE = 60000;
+
+    private final Map<UUID, Denial> denials = new ConcurrentHashMap<>();
+    private final int messageBurst;
+    private final long messageCooldown;
+
+    /**
+     * Creates a new DenialCache.
+     *
+     * @param messageBurst How many ban messages a player can be sent in quick succession
+     * @param messageCooldown The time in milliseconds it takes to earn back one message
+     */
+    public DenialCache(int messageBurst, long messageCooldown) {
+        this.messageBurst = Math.max(1, messageBurst);
+        this.messageCooldown = messageCooldown;
+    }
+
+    /**
+     * Gets a player's remembered denial for a scope.
+     *
+     * @param uuid The UUID of the player
+     * @param scope The ban scope of the target server
+     * @param now The current time
+     * @return The denial, or null if there is none that is still valid
+     */
+    public Denial get(UUID uuid, String scope, long now) {
+        Denial denial = denials.get(uuid);
+        if (denial == null || now >= denial.validUntil || !denial.scope.equals(scope)) {
+            return null;
+        }
+        return denial;
+    }
+
+    /**
+     * Remembers that a player was denied. A denial that replaces an earlier one keeps its
+     * message tokens, so renewing it each minute does not hand out a fresh burst.
+     *
+     * @param uuid The UUID of the player
+     * @param scope The ban scope of the target server
+     * @param timeLeft The time left on the ban in milliseconds
+     * @param now The current time
+     * @param title The ban title shown to the player
+     * @param chat The ban chat message shown to the player
+     * @return The remembered denial
+     */
+    public Denial put(UUID uuid, String scope, long timeLeft, long now, Title title, Component chat) {
+        // Time left until the displayed (rounded up) minute count drops by one
+        long untilNextMinute = timeLeft - ((timeLeft - 1) / MINUTE) * MINUTE;
+        Denial denial = new Denial(scope, now + timeLeft, now + untilNextMinute, title, chat, messageBurst, now);
+        Denial previous = denials.put(uuid, denial);
+        if (previous != null) {
+            previous.transferTokens(denial);
+        }
+        return denial;
+    }
+
+    /**
+     * Forgets a player's denial after their bans have changed or they left.
+     *
+     * @param uuid The UUID of the player
+     */
+    public void invalidate(UUID uuid) {
+        denials.remove(uuid);
+    }
+
+    /**
+     * Forgets every denial.
+     */
+    public void invalidateAll() {
+        denials.clear();
+    }
+
+    /**
+     * A remembered denial and its rendered messages.
+     */
+    public final class Denial {
+        private final String scope;
+        private final long expiry;
+        private final long validUntil;
+        private final Title title;
+        private final Component chat;
+
+        // Message token bucket; guarded by this
+        private double tokens;
+        private long refilledAt;
+
+        private Denial(String scope, long expiry, long validUntil, Title title, Component chat, double tokens,
+                       long now) {
+            this.scope = scope;
+            this.expiry = expiry;
+            this.validUntil = validUntil;
+            this.title = title;
+            this.chat = chat;
+            this.tokens = tokens;
+            this.refilledAt = now;
+        }
+
+        private synchronized void transferTokens(Denial next) {
+            synchronized (next) {
+                next.tokens = tokens;
+                next.refilledAt = refilledAt;
+            }
+        }
+
+        /**
+         * Takes a message token if one is available.
+         *
+         * @param now The current time
+         * @return true if the ban messages may be sent now
+         */
+        public synchronized boolean tryNotify(long now) {
+            if (messageCooldown > 0) {
+                tokens = Math.min(messageBurst, tokens + (double) (now - refilledAt) / messageCooldown);
+            } else {
+                tokens = messageBurst;
+            }
+            refilledAt = now;
+
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+
+        /**
+         * Gets the time the ban behind this denial expires.
+         *
+         * @return The expiry time in milliseconds
+         */
+        public long getExpiry() {
+            return expiry;
+        }
+
+        /**
+         * Gets the rendered ban title.
+         *
+         * @return The title
+         */
+        public Title getTitle() {
+            return title;
+        }
+
+        /**
+         * Gets the rendered ban chat message.
+         *
+         * @return The chat message
+         */
+        public Component getChat() {
+            return chat;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package sh.pcx.hardcorebanelocity.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+
+/**
+ * The names of players the proxy has seen in ban data, looked up by UUID or by name.
+ * Names are kept in a sorted map by lowercase name, so completing a name prefix reads
+ * only the matching range instead of every known player.
+ */
+public class PlayerNameIndex {
+
+    private final Map<UUID, String> names = new ConcurrentHashMap<>();
+    private final NavigableMap<String, UUID> uuids = new ConcurrentSkipListMap<>();
+
+    /**
+     * Gets a player's name.
+     *
+     * @param uuid The UUID of the player
+     * @return The name, or null if it is not known
+     */
+    public String getName(UUID uuid) {
+        return names.get(uuid);
+    }
+
+    /**
+     * Finds a player by name, ignoring case.
+     *
+     * @param name The player's name
+     * @return The UUID, or null if the name is not known
+     */
+    public UUID find(String name) {
+        return uuids.get(name.toLowerCase());
+    }
+
+    /**
+     * Records a player's name, replacing any earlier one.
+     *
+     * @param uuid The UUID of the player
+     * @param name The name of the player
+     */
+    public synchronized void put(UUID uuid, String name) {
+        String previous = names.put(uuid, name);
+        if (previous != null && !previous.equalsIgnoreCase(name)) {
+            uuids.remove(previous.toLowerCase(), uuid);
+        }
+        uuids.put(name.toLowerCase(), uuid);
+    }
+
+    /**
+     * Completes a name prefix, ignoring case.
+     *
+     * @param prefix The start of the name
+     * @param filter Which players to include
+     * @param limit The most names to return
+     * @return The matching names in alphabetical order
+     */
+    public List<String> complete(String prefix, Predicate<UUID> filter, int limit) {
+        String from = prefix.toLowerCase();
+        List<String> matches = new ArrayList<>();
+        for (UUID uuid : uuids.subMap(from, true, from + Character.MAX_VALUE, false).values()) {
+            if (matches.size() >= limit) {
+                break;
+            }
+            String name = names.get(uuid);
+            if (name != null && filter.test(uuid)) {
+                matches.add(name);
+            }
+        }
+        return matches;
+    }
+}
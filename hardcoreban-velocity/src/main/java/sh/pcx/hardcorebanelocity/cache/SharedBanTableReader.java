@@ -0,0 +1,210 @@
+package sh.pcx.hardcorebanelocity.cache;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+
+/**
+ * Reads the shared-memory ban table published by a Paper server on the same host.
+ * Lookups never block: they read the memory-mapped table under a seqlock and give up
+ * after a few retries, in which case the caller falls back to the database.
+ * The layout must match {@code SharedBanTable} in the Paper plugin.
+ */
+public class SharedBanTableReader implements AutoCloseable {
+
+    /** Returned by {@link #lookup(UUID)} when the table cannot answer. */
+    public static final long UNKNOWN = -1;
+
+    private static final int MAGIC = 0x4843424E; // "HCBN"
+    private static final int FORMAT = 1;
+
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_FORMAT = 4;
+    private static final int OFFSET_SEQ = 8;
+    private static final int OFFSET_CAPACITY = 16;
+    private static final int OFFSET_HEARTBEAT = 24;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 24;
+    private static final int MAX_RETRIES = 8;
+    private static final long REOPEN_INTERVAL = 5000;
+
+    private static final VarHandle LONGS =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final Logger logger;
+    private final Path file;
+    private final long maxAgeMillis;
+
+    private volatile MappedByteBuffer buffer;
+    private volatile int capacity;
+    private FileChannel channel;
+    private long lastOpenAttempt;
+
+    /**
+     * Creates a new SharedBanTableReader. The file is opened lazily and reopened
+     * if the writer grows the table.
+     *
+     * @param logger The plugin logger
+     * @param file The shared table file written by the Paper server
+     * @param maxAgeSeconds Ignore the table if the writer has not refreshed it for this long
+     */
+    public SharedBanTableReader(Logger logger, Path file, int maxAgeSeconds) {
+        this.logger = logger;
+        this.file = file;
+        this.maxAgeMillis = maxAgeSeconds * 1000L;
+    }
+
+    /**
+     * Looks up a player's ban in the shared table.
+     *
+     * @param uuid The UUID of the player
+     * @return The ban expiry time, 0 if the table has no ban for the player,
+     *         or {@link #UNKNOWN} if the table is missing, stale or busy
+     */
+    public long lookup(UUID uuid) {
+        MappedByteBuffer table = buffer;
+        if (table == null) {
+            table = open();
+            if (table == null) {
+                return UNKNOWN;
+            }
+        }
+
+        long heartbeat = (long) LONGS.getAcquire(table, OFFSET_HEARTBEAT);
+        if (System.currentTimeMillis() - heartbeat > maxAgeMillis) {
+            return UNKNOWN;
+        }
+
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+
+        for (int attempt = 0; attempt < MAX_RETRIES; attempt++) {
+            long seq = (long) LONGS.getAcquire(table, OFFSET_SEQ);
+            if ((seq & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+
+            int tableCapacity = table.getInt(OFFSET_CAPACITY);
+            if (tableCapacity != capacity) {
+                // The writer grew the file; map the new size and retry
+                table = open();
+                if (table == null) {
+                    return UNKNOWN;
+                }
+                continue;
+            }
+
+            long result = probe(table, tableCapacity, msb, lsb);
+
+            VarHandle.loadLoadFence();
+            if ((long) LONGS.getOpaque(table, OFFSET_SEQ) == seq) {
+                return result;
+            }
+        }
+
+        return UNKNOWN;
+    }
+
+    /**
+     * Probes the table for a UUID. The result is only meaningful if the seqlock
+     * sequence did not change while probing.
+     *
+     * @return The expiry, or 0 if the UUID is not present
+     */
+    private long probe(MappedByteBuffer table, int tableCapacity, long msb, long lsb) {
+        int mask = tableCapacity - 1;
+        int slot = (int) (mix(msb ^ lsb) & mask);
+
+        for (int probes = 0; probes < tableCapacity; probes++) {
+            int offset = HEADER_SIZE + slot * SLOT_SIZE;
+            long expiry = table.getLong(offset + 16);
+            if (expiry == 0) {
+                return 0;
+            }
+            if (table.getLong(offset) == msb && table.getLong(offset + 8) == lsb) {
+                return expiry;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    /**
+     * Maps the shared table file, validating its header.
+     *
+     * @return The mapped buffer, or null if the file is missing or invalid
+     */
+    private synchronized MappedByteBuffer open() {
+        long now = System.currentTimeMillis();
+        if (buffer == null && now - lastOpenAttempt < REOPEN_INTERVAL) {
+            return null;
+        }
+        lastOpenAttempt = now;
+
+        try {
+            if (channel == null) {
+                if (!Files.exists(file)) {
+                    return null;
+                }
+                channel = FileChannel.open(file, StandardOpenOption.READ);
+            }
+
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mapped.order(ByteOrder.nativeOrder());
+
+            if (mapped.capacity() < HEADER_SIZE || mapped.getInt(OFFSET_MAGIC) != MAGIC
+                    || mapped.getInt(OFFSET_FORMAT) != FORMAT) {
+                logger.warn("Shared ban table {} has an unexpected format; ignoring it", file);
+                return null;
+            }
+
+            int tableCapacity = mapped.getInt(OFFSET_CAPACITY);
+            if (Integer.bitCount(tableCapacity) != 1
+                    || HEADER_SIZE + (long) tableCapacity * SLOT_SIZE > mapped.capacity()) {
+                // Caught mid-resize; the next lookup will try again
+                return null;
+            }
+
+            if (buffer == null) {
+                logger.info("Reading shared ban table from {}", file);
+            }
+            capacity = tableCapacity;
+            buffer = mapped;
+            return mapped;
+        } catch (IOException e) {
+            logger.warn("Failed to map shared ban table {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer = null;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Finalization mix from MurmurHash3; must match the writer.
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
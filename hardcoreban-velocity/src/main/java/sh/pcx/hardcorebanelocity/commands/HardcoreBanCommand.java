@@ -2,17 +2,26 @@ package sh.pcx.hardcorebanelocity.commands;
 
 import com.velocitypowered.api.command.CommandSource;
 import com.velocitypowered.api.command.SimpleCommand;
+import com.velocitypowered.api.proxy.Player;
 
 import net.kyori.adventure.text.minimessage.MiniMessage;
 
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import org.slf4j.Logger;
 
 import sh.pcx.hardcorebanelocity.HardcoreBanVelocityPlugin;
+import sh.pcx.hardcorebanelocity.cache.BanCache;
+import sh.pcx.hardcorebanelocity.database.DatabaseManager;
+import sh.pcx.hardcorebanelocity.database.DatabaseWorkQueue;
+import sh.pcx.hardcorebanelocity.database.DatabaseWorkQueue.WorkClass;
 import sh.pcx.hardcorebanelocity.util.TimeFormatter;
 
 /**
@@ -20,6 +29,9 @@ import sh.pcx.hardcorebanelocity.util.TimeFormatter;
  */
 public class HardcoreBanCommand implements SimpleCommand {
 
+    private static final int PAGE_SIZE = 10;
+    private static final int MAX_SUGGESTIONS = 50;
+
     private final HardcoreBanVelocityPlugin plugin;
     private final MiniMessage miniMessage;
     private final Logger logger;
@@ -54,9 +66,21 @@ public class HardcoreBanCommand implements SimpleCommand {
             case "list":
                 handleListCommand(source, args);
                 break;
+            case "ban":
+                handleBanCommand(source, args);
+                break;
+            case "unban":
+                handleUnbanCommand(source, args);
+                break;
+            case "extend":
+                handleExtendCommand(source, args);
+                break;
             case "refresh":
                 handleRefreshCommand(source, args);
                 break;
+            case "status":
+                handleStatusCommand(source, args);
+                break;
             default:
                 source.sendMessage(miniMessage.deserialize("<red>Unknown command. Use /vhardcoreban for help."));
                 break;
@@ -71,17 +95,25 @@ public class HardcoreBanCommand implements SimpleCommand {
     private void displayHelp(CommandSource source) {
         source.sendMessage(miniMessage.deserialize("<yellow>HardcoreBan Velocity commands:"));
         source.sendMessage(miniMessage.deserialize("<yellow>/vhardcoreban check <player> - Check if a player is banned"));
-        source.sendMessage(miniMessage.deserialize("<yellow>/vhardcoreban list - List all banned players"));
+        source.sendMessage(miniMessage.deserialize("<yellow>/vhardcoreban list [page] - List banned players"));
 
         if (source.hasPermission("hardcoreban.admin")) {
+            source.sendMessage(miniMessage.deserialize(
+                    "<yellow>/vhardcoreban ban <player> <duration> [scope] - Ban a player"));
+            source.sendMessage(miniMessage.deserialize(
+                    "<yellow>/vhardcoreban unban <player> [scope] - Lift a player's ban"));
+            source.sendMessage(miniMessage.deserialize(
+                    "<yellow>/vhardcoreban extend <player> <duration> [scope] - Add time to a ban"));
             source.sendMessage(miniMessage.deserialize("<yellow>/vhardcoreban refresh - Refresh ban data from database"));
+            source.sendMessage(miniMessage.deserialize("<yellow>/vhardcoreban status - Show how current the ban caches are"));
+            source.sendMessage(miniMessage.deserialize(
+                    "<yellow>Durations are like 90, 30m, 12h, 2d or 1d12h; plain numbers are minutes."));
         }
-
-        source.sendMessage(miniMessage.deserialize("<yellow>Note: Bans are managed on the Paper server."));
     }
 
     /**
-     * Handles the "check" command to check if a player is banned.
+     * Handles the "check" command to check if a player is banned. The lookup runs on a
+     * database thread and answers when it is done, so the command dispatcher is never held up.
      *
      * @param source The command source
      * @param args The command arguments
@@ -99,63 +131,395 @@ public class HardcoreBanCommand implements SimpleCommand {
 
         String playerName = args[1];
 
-        // Force a refresh of ban data
-        plugin.refreshBans();
+        resolvePlayer(playerName).thenCompose(id -> id == null ? CompletableFuture.completedFuture(null) : getBans(id))
+                .thenAccept(bans -> {
+                    if (bans == null) {
+                        source.sendMessage(miniMessage.deserialize("<red>Player not found."));
+                        return;
+                    }
+
+                    boolean banned = false;
+                    long now = System.currentTimeMillis();
+                    for (String scope : plugin.getHardcoreServers().getScopes()) {
+                        long timeLeft = bans.getOrDefault(scope, 0L) - now;
+                        if (timeLeft > 0) {
+                            source.sendMessage(miniMessage.deserialize("<yellow>" + playerName +
+                                    " is banned in " + scope + " for " + TimeFormatter.formatTime(timeLeft) + "."));
+                            banned = true;
+                        }
+                    }
 
-        // Try to find player UUID by name
-        UUID uuid = findPlayerUuidByName(playerName);
+                    if (!banned) {
+                        source.sendMessage(miniMessage.deserialize("<yellow>" + playerName + " is not banned."));
+                    }
+                })
+                .exceptionally(e -> {
+                    logger.error("Failed to check bans of {}: {}", playerName, e.getMessage());
+                    source.sendMessage(miniMessage.deserialize(
+                            "<red>Could not check bans: the database is unavailable."));
+                    return null;
+                });
+    }
+
+    /**
+     * Handles the "list" command to list banned players one page at a time.
+     * Uses the ban caches when they are all fresh, otherwise reads the bans once from the database
+     * on a database thread.
+     *
+     * @param source The command source
+     * @param args The command arguments
+     */
+    private void handleListCommand(CommandSource source, String[] args) {
+        if (!source.hasPermission("hardcoreban.list")) {
+            source.sendMessage(miniMessage.deserialize("<red>You don't have permission to use this command."));
+            return;
+        }
 
-        if (uuid == null) {
-            source.sendMessage(miniMessage.deserialize("<red>Player not found."));
+        int page;
+        try {
+            page = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        } catch (NumberFormatException e) {
+            source.sendMessage(miniMessage.deserialize("<red>Usage: /vhardcoreban list [page]"));
             return;
         }
 
-        if (plugin.isBanned(uuid)) {
-            long timeLeft = plugin.getTimeLeft(uuid);
-            String formattedTime = TimeFormatter.formatTime(timeLeft);
+        getAllBans().thenAccept(bannedPlayers -> {
+            List<Entry> entries = new ArrayList<>();
+            for (Map.Entry<String, Map<UUID, Long>> scopeEntry : bannedPlayers.entrySet()) {
+                for (Map.Entry<UUID, Long> entry : scopeEntry.getValue().entrySet()) {
+                    entries.add(new Entry(scopeEntry.getKey(), entry.getKey(), entry.getValue()));
+                }
+            }
+
+            if (entries.isEmpty()) {
+                source.sendMessage(miniMessage.deserialize("<yellow>There are no banned players."));
+                return;
+            }
+
+            // Soonest to expire first within each scope, so pages stay stable between calls
+            entries.sort(Comparator.comparing((Entry entry) -> entry.scope)
+                    .thenComparingLong(entry -> entry.expiry)
+                    .thenComparing(entry -> entry.uuid));
+
+            int pages = (entries.size() + PAGE_SIZE - 1) / PAGE_SIZE;
+            int shown = Math.min(Math.max(page, 1), pages);
+            source.sendMessage(miniMessage.deserialize("<yellow>Banned players (" + entries.size() +
+                    ", page " + shown + " of " + pages + "):"));
+
+            long now = System.currentTimeMillis();
+            for (Entry entry : entries.subList((shown - 1) * PAGE_SIZE, Math.min(entries.size(), shown * PAGE_SIZE))) {
+                source.sendMessage(miniMessage.deserialize("<yellow> - " + plugin.getPlayerName(entry.uuid) +
+                        " (" + entry.scope + ") - " + TimeFormatter.formatTimeCompact(entry.expiry - now) +
+                        " remaining"));
+            }
+
+            if (shown < pages) {
+                source.sendMessage(miniMessage.deserialize("<yellow>Use /vhardcoreban list " + (shown + 1) +
+                        " for the next page."));
+            }
+        }).exceptionally(e -> {
+            logger.error("Failed to list bans: {}", e.getMessage());
+            source.sendMessage(miniMessage.deserialize("<red>Could not list bans: the database is unavailable."));
+            return null;
+        });
+    }
 
-            source.sendMessage(miniMessage.deserialize("<yellow>" + playerName +
-                    " is banned for " + formattedTime + "."));
-        } else {
-            source.sendMessage(miniMessage.deserialize("<yellow>" + playerName + " is not banned."));
+    /**
+     * Handles the "ban" command to ban a player in a scope. The ban is written on a database thread,
+     * then applied to the proxy's cache and sent to the scope's backends. If the database kept a
+     * newer row instead, the cache is reloaded from it and nothing is sent.
+     *
+     * @param source The command source
+     * @param args The command arguments
+     */
+    private void handleBanCommand(CommandSource source, String[] args) {
+        if (!source.hasPermission("hardcoreban.admin")) {
+            source.sendMessage(miniMessage.deserialize("<red>You don't have permission to use this command."));
+            return;
         }
+
+        if (args.length < 3) {
+            source.sendMessage(miniMessage.deserialize("<red>Usage: /vhardcoreban ban <player> <duration> [scope]"));
+            return;
+        }
+
+        long duration = TimeFormatter.parseDuration(args[2]);
+        if (duration < 0) {
+            source.sendMessage(miniMessage.deserialize("<red>Invalid duration: " + args[2]));
+            return;
+        }
+
+        String scope = resolveScope(source, args, 3);
+        if (scope == null) {
+            return;
+        }
+
+        String playerName = args[1];
+        String bannedBy = source instanceof Player ? ((Player) source).getUsername() : "Console";
+        DatabaseManager databaseManager = plugin.getDatabaseManager();
+
+        resolvePlayer(playerName).thenCompose(uuid -> {
+            if (uuid == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            long expiry = System.currentTimeMillis() + duration;
+            return databaseManager.supplyAsync(WorkClass.WRITE, () ->
+                    databaseManager.addBan(uuid, scope, knownName(uuid, playerName), expiry, bannedBy, "Banned by staff")
+            ).thenCompose(written -> {
+                if (!written) {
+                    return reloadBan(source, playerName, uuid, scope, "ban").thenApply(ignored -> uuid);
+                }
+                boolean reached = applyBan(scope, uuid, expiry);
+                logger.info("{} banned {} in scope {} until {}", bannedBy, playerName, scope,
+                        new java.util.Date(expiry));
+                source.sendMessage(miniMessage.deserialize("<green>" + playerName + " is banned in " + scope +
+                        " for " + TimeFormatter.formatTime(duration) + "."));
+                warnIfUnreached(source, scope, reached);
+                return CompletableFuture.completedFuture(uuid);
+            });
+        }).thenAccept(uuid -> {
+            if (uuid == null) {
+                source.sendMessage(miniMessage.deserialize("<red>Player not found."));
+            }
+        }).exceptionally(e -> {
+            logger.error("Failed to ban {}: {}", playerName, e.getMessage());
+            source.sendMessage(miniMessage.deserialize("<red>Could not ban " + playerName +
+                    ": the database is unavailable."));
+            return null;
+        });
     }
 
     /**
-     * Handles the "list" command to list all banned players.
+     * Handles the "unban" command to lift a player's ban in a scope.
      *
      * @param source The command source
      * @param args The command arguments
      */
-    private void handleListCommand(CommandSource source, String[] args) {
-        if (!source.hasPermission("hardcoreban.list")) {
+    private void handleUnbanCommand(CommandSource source, String[] args) {
+        if (!source.hasPermission("hardcoreban.admin")) {
             source.sendMessage(miniMessage.deserialize("<red>You don't have permission to use this command."));
             return;
         }
 
-        // Force a refresh of ban data
-        plugin.refreshBans();
+        if (args.length < 2) {
+            source.sendMessage(miniMessage.deserialize("<red>Usage: /vhardcoreban unban <player> [scope]"));
+            return;
+        }
 
-        Map<UUID, Long> bannedPlayers = plugin.getBannedPlayers();
+        String scope = resolveScope(source, args, 2);
+        if (scope == null) {
+            return;
+        }
 
-        if (bannedPlayers.isEmpty()) {
-            source.sendMessage(miniMessage.deserialize("<yellow>There are no banned players."));
+        String playerName = args[1];
+        DatabaseManager databaseManager = plugin.getDatabaseManager();
+
+        resolvePlayer(playerName).thenCompose(uuid -> {
+            if (uuid == null) {
+                source.sendMessage(miniMessage.deserialize("<red>Player not found."));
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Boolean> removal =
+                    databaseManager.supplyAsync(WorkClass.WRITE, () -> databaseManager.removeBan(uuid, scope));
+            return removal.thenCompose(removed -> {
+                if (!removed) {
+                    return reloadBan(source, playerName, uuid, scope, "unban");
+                }
+
+                plugin.getBanCache(scope).remove(uuid);
+                plugin.getLoginPrefetch().invalidate(uuid);
+                plugin.getDenialCache().invalidate(uuid);
+                boolean reached = plugin.getMessageSender().sendUnban(scope, uuid);
+                plugin.getWaitingRoom().release(uuid, scope);
+
+                logger.info("{} lifted the ban of {} in scope {}", source instanceof Player
+                        ? ((Player) source).getUsername() : "Console", playerName, scope);
+                source.sendMessage(miniMessage.deserialize("<green>" + playerName + " is no longer banned in " +
+                        scope + "."));
+                warnIfUnreached(source, scope, reached);
+                return CompletableFuture.completedFuture(null);
+            });
+        }).exceptionally(e -> {
+            logger.error("Failed to unban {}: {}", playerName, e.getMessage());
+            source.sendMessage(miniMessage.deserialize("<red>Could not unban " + playerName +
+                    ": the database is unavailable."));
+            return null;
+        });
+    }
+
+    /**
+     * Brings the proxy's cached ban for a player back in line with the database after a ban or
+     * unban changed nothing, either because there was nothing to lift or because the stored row is
+     * newer. Nothing is sent to the backends, since the database did not change.
+     *
+     * @param source The command source
+     * @param playerName The name the player was given as
+     * @param uuid The UUID of the player
+     * @param scope The ban scope
+     * @param action The command that changed nothing, for the message
+     * @return A future completed once the cache matches the database
+     */
+    private CompletableFuture<Void> reloadBan(CommandSource source, String playerName, UUID uuid, String scope,
+                                              String action) {
+        return plugin.getDatabaseManager().getBansAsync(uuid).thenAccept(bans -> {
+            long expiry = bans.getOrDefault(scope, 0L);
+            BanCache banCache = plugin.getBanCache(scope);
+            plugin.getLoginPrefetch().invalidate(uuid);
+            plugin.getDenialCache().invalidate(uuid);
+
+            if (expiry <= System.currentTimeMillis()) {
+                banCache.remove(uuid);
+                source.sendMessage(miniMessage.deserialize("<yellow>" + playerName + " is not banned in " +
+                        scope + "."));
+                return;
+            }
+
+            banCache.put(uuid, expiry);
+            source.sendMessage(miniMessage.deserialize("<yellow>A newer ban of " + playerName + " in " + scope +
+                    " was kept over the " + action + ", and stays for " +
+                    TimeFormatter.formatTime(expiry - System.currentTimeMillis()) + "."));
+        });
+    }
+
+    /**
+     * Handles the "extend" command to add time to a player's active ban in a scope.
+     *
+     * @param source The command source
+     * @param args The command arguments
+     */
+    private void handleExtendCommand(CommandSource source, String[] args) {
+        if (!source.hasPermission("hardcoreban.admin")) {
+            source.sendMessage(miniMessage.deserialize("<red>You don't have permission to use this command."));
             return;
         }
 
-        source.sendMessage(miniMessage.deserialize("<yellow>Banned players (" + bannedPlayers.size() + "):"));
+        if (args.length < 3) {
+            source.sendMessage(miniMessage.deserialize("<red>Usage: /vhardcoreban extend <player> <duration> [scope]"));
+            return;
+        }
 
-        for (Map.Entry<UUID, Long> entry : bannedPlayers.entrySet()) {
-            UUID playerUuid = entry.getKey();
-            long expiry = entry.getValue();
-            long timeLeft = expiry - System.currentTimeMillis();
+        long duration = TimeFormatter.parseDuration(args[2]);
+        if (duration < 0) {
+            source.sendMessage(miniMessage.deserialize("<red>Invalid duration: " + args[2]));
+            return;
+        }
 
-            String bannedPlayerName = plugin.getPlayerName(playerUuid);
-            String formattedTime = TimeFormatter.formatTimeCompact(timeLeft);
+        String scope = resolveScope(source, args, 3);
+        if (scope == null) {
+            return;
+        }
+
+        String playerName = args[1];
+        DatabaseManager databaseManager = plugin.getDatabaseManager();
 
-            source.sendMessage(miniMessage.deserialize("<yellow> - " + bannedPlayerName +
-                    " - " + formattedTime + " remaining"));
+        resolvePlayer(playerName).thenCompose(uuid -> {
+            if (uuid == null) {
+                source.sendMessage(miniMessage.deserialize("<red>Player not found."));
+                return CompletableFuture.completedFuture(null);
+            }
+            return databaseManager.supplyAsync(WorkClass.WRITE, () -> databaseManager.extendBan(uuid, scope, duration))
+                    .thenAccept(expiry -> {
+                        if (expiry == 0) {
+                            source.sendMessage(miniMessage.deserialize("<yellow>" + playerName +
+                                    " is not banned in " + scope + "."));
+                            return;
+                        }
+
+                        boolean reached = applyBan(scope, uuid, expiry);
+                        logger.info("Extended the ban of {} in scope {} until {}", playerName, scope,
+                                new java.util.Date(expiry));
+                        source.sendMessage(miniMessage.deserialize("<green>" + playerName + " is now banned in " +
+                                scope + " for " + TimeFormatter.formatTime(expiry - System.currentTimeMillis()) + "."));
+                        warnIfUnreached(source, scope, reached);
+                    });
+        }).exceptionally(e -> {
+            logger.error("Failed to extend the ban of {}: {}", playerName, e.getMessage());
+            source.sendMessage(miniMessage.deserialize("<red>Could not extend the ban of " + playerName +
+                    ": the database is unavailable."));
+            return null;
+        });
+    }
+
+    /**
+     * Applies a ban the proxy has written to the database: updates the scope's ban cache at once,
+     * drops remembered lookups for the player and sends the ban to the scope's backends.
+     *
+     * @param scope The ban scope
+     * @param uuid The UUID of the player
+     * @param expiry The time the ban expires
+     * @return true if at least one backend was sent the ban
+     */
+    private boolean applyBan(String scope, UUID uuid, long expiry) {
+        plugin.getBanCache(scope).put(uuid, expiry);
+        plugin.getLoginPrefetch().invalidate(uuid);
+        plugin.getDenialCache().invalidate(uuid);
+        return plugin.getMessageSender().sendBan(scope, uuid, expiry);
+    }
+
+    /**
+     * Tells the command source when no backend in a scope could be told of a change.
+     * The backends still pick it up from the database on their next ban check.
+     */
+    private void warnIfUnreached(CommandSource source, String scope, boolean reached) {
+        if (!reached) {
+            source.sendMessage(miniMessage.deserialize("<yellow>No server in " + scope +
+                    " is reachable right now; they will pick up the change from the database."));
+        }
+    }
+
+    /**
+     * Gets the scope named by an optional command argument, or the only scope if there is just one.
+     * Tells the source what went wrong if there is no usable scope.
+     *
+     * @param source The command source
+     * @param args The command arguments
+     * @param index The index of the scope argument
+     * @return The scope, or null if none could be chosen
+     */
+    private String resolveScope(CommandSource source, String[] args, int index) {
+        Set<String> scopes = plugin.getHardcoreServers().getScopes();
+        if (args.length > index) {
+            for (String scope : scopes) {
+                if (scope.equalsIgnoreCase(args[index])) {
+                    return scope;
+                }
+            }
+            source.sendMessage(miniMessage.deserialize("<red>Unknown scope: " + args[index] +
+                    ". Scopes: " + String.join(", ", scopes)));
+            return null;
+        }
+
+        if (scopes.size() == 1) {
+            return scopes.iterator().next();
         }
+        source.sendMessage(miniMessage.deserialize("<red>Please name a scope: " + String.join(", ", scopes)));
+        return null;
+    }
+
+    /**
+     * Finds a player's UUID by name among online players and known names, then in the ban records.
+     *
+     * @param name The player's name
+     * @return A future completed with the player's UUID, or null if not found
+     */
+    private CompletableFuture<UUID> resolvePlayer(String name) {
+        UUID known = findPlayerUuidByName(name);
+        if (known != null) {
+            return CompletableFuture.completedFuture(known);
+        }
+        DatabaseManager databaseManager = plugin.getDatabaseManager();
+        return databaseManager.supplyAsync(WorkClass.ADMIN, () -> databaseManager.findPlayer(name));
+    }
+
+    /**
+     * Gets the name to store with a ban, preferring the player's own spelling over what was typed.
+     */
+    private String knownName(UUID uuid, String typed) {
+        String name = plugin.getPlayerNames().getName(uuid);
+        if (name != null) {
+            return name;
+        }
+        return plugin.getServer().getPlayer(uuid).map(Player::getUsername).orElse(typed);
     }
 
     /**
@@ -171,13 +535,64 @@ public class HardcoreBanCommand implements SimpleCommand {
         }
 
         // Force a refresh
-        plugin.refreshBans();
+        plugin.getDatabaseManager().supplyAsync(WorkClass.MAINTENANCE, plugin::refreshBans).thenAccept(refreshed -> {
+            if (refreshed) {
+                source.sendMessage(miniMessage.deserialize("<green>Ban data refreshed from database."));
+            } else {
+                source.sendMessage(miniMessage.deserialize(
+                        "<red>Could not reach the database. Cached bans are still in use."));
+            }
+        }).exceptionally(e -> {
+            logger.error("Failed to refresh bans: {}", e.getMessage());
+            source.sendMessage(miniMessage.deserialize(
+                    "<red>Could not refresh bans: the database is unavailable. Cached bans are still in use."));
+            return null;
+        });
+    }
+
+    /**
+     * Handles the "status" command to show how current the proxy's ban caches are, and how
+     * busy each class of database work is.
+     *
+     * @param source The command source
+     * @param args The command arguments
+     */
+    private void handleStatusCommand(CommandSource source, String[] args) {
+        if (!source.hasPermission("hardcoreban.admin")) {
+            source.sendMessage(miniMessage.deserialize("<red>You don't have permission to use this command."));
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long lastRefresh = plugin.getLastRefreshSuccess();
+        source.sendMessage(miniMessage.deserialize("<yellow>Last database refresh: " +
+                (lastRefresh == 0 ? "never" : TimeFormatter.formatTimeCompact(now - lastRefresh) + " ago")));
+
+        for (String scope : plugin.getHardcoreServers().getScopes()) {
+            BanCache banCache = plugin.getBanCache(scope);
+            String state;
+            if (!banCache.isSynced()) {
+                state = "<red>not loaded";
+            } else {
+                state = (banCache.isFresh() ? "<green>fresh" : "<red>stale") + "<yellow>, " + banCache.size() +
+                        " bans, confirmed " + TimeFormatter.formatTimeCompact(now - banCache.getValidatedAt()) + " ago";
+            }
+            source.sendMessage(miniMessage.deserialize("<yellow> - " + scope + ": " + state));
+        }
 
-        source.sendMessage(miniMessage.deserialize("<green>Ban data refreshed from database."));
+        DatabaseWorkQueue workQueue = plugin.getDatabaseManager().getWorkQueue();
+        source.sendMessage(miniMessage.deserialize("<yellow>Database work:"));
+        for (WorkClass workClass : WorkClass.values()) {
+            source.sendMessage(miniMessage.deserialize(String.format(
+                    "<yellow> - %s: %d/%d running, %d queued, %.1f ms average wait, %.1f ms max, %d rejected",
+                    workClass.getKey(), workQueue.getRunning(workClass), workQueue.getPoolSize(workClass),
+                    workQueue.getQueued(workClass), workQueue.getAverageWaitMillis(workClass),
+                    workQueue.getMaxWaitMillis(workClass), workQueue.getRejected(workClass))));
+        }
     }
 
     @Override
-    public List<String> suggest(Invocation invocation) {
+    public CompletableFuture<List<String>> suggestAsync(Invocation invocation) {
         CommandSource source = invocation.source();
         String[] args = invocation.arguments();
         List<String> suggestions = new ArrayList<>();
@@ -185,16 +600,41 @@ public class HardcoreBanCommand implements SimpleCommand {
         if (args.length == 0 || args.length == 1) {
             if (source.hasPermission("hardcoreban.check")) suggestions.add("check");
             if (source.hasPermission("hardcoreban.list")) suggestions.add("list");
+            if (source.hasPermission("hardcoreban.admin")) suggestions.add("ban");
+            if (source.hasPermission("hardcoreban.admin")) suggestions.add("unban");
+            if (source.hasPermission("hardcoreban.admin")) suggestions.add("extend");
             if (source.hasPermission("hardcoreban.admin")) suggestions.add("refresh");
+            if (source.hasPermission("hardcoreban.admin")) suggestions.add("status");
 
-            return filterByStart(suggestions, args.length == 0 ? "" : args[0]);
-        } else if (args.length == 2 && args[0].equalsIgnoreCase("check") && source.hasPermission("hardcoreban.check")) {
-            // Add online player names
+            return CompletableFuture.completedFuture(filterByStart(suggestions, args.length == 0 ? "" : args[0]));
+        }
+
+        String subCommand = args[0].toLowerCase();
+        boolean admin = source.hasPermission("hardcoreban.admin");
+        if (args.length == 2 && subCommand.equals("ban") && admin) {
             plugin.getServer().getAllPlayers().forEach(p -> suggestions.add(p.getUsername()));
-            return filterByStart(suggestions, args[1]);
+            return CompletableFuture.completedFuture(filterByStart(suggestions, args[1]));
+        } else if (args.length == 2 && ((subCommand.equals("check") && source.hasPermission("hardcoreban.check")) ||
+                ((subCommand.equals("unban") || subCommand.equals("extend")) && admin))) {
+            // Online players, then banned players from the name index
+            plugin.getServer().getAllPlayers().forEach(p -> suggestions.add(p.getUsername()));
+            List<String> online = filterByStart(suggestions, args[1]);
+            long now = System.currentTimeMillis();
+            List<String> banned = plugin.getPlayerNames().complete(args[1], uuid -> isCachedBanned(uuid, now),
+                    MAX_SUGGESTIONS);
+            for (String name : banned) {
+                if (!online.contains(name)) {
+                    online.add(name);
+                }
+            }
+            return CompletableFuture.completedFuture(online);
+        } else if (admin && ((args.length == 3 && subCommand.equals("unban")) ||
+                (args.length == 4 && (subCommand.equals("ban") || subCommand.equals("extend"))))) {
+            suggestions.addAll(plugin.getHardcoreServers().getScopes());
+            return CompletableFuture.completedFuture(filterByStart(suggestions, args[args.length - 1]));
         }
 
-        return suggestions;
+        return CompletableFuture.completedFuture(suggestions);
     }
 
     /**
@@ -215,7 +655,7 @@ public class HardcoreBanCommand implements SimpleCommand {
     }
 
     /**
-     * Finds a player's UUID by their name.
+     * Finds a player's UUID by their name among online players and known names.
      *
      * @param name The player's name
      * @return The player's UUID, or null if not found
@@ -224,16 +664,79 @@ public class HardcoreBanCommand implements SimpleCommand {
         // Try online players first
         return plugin.getServer().getPlayer(name)
                 .map(p -> p.getUniqueId())
-                .orElseGet(() -> {
-                    // Then try banned players list
-                    for (Map.Entry<UUID, Long> entry : plugin.getBannedPlayers().entrySet()) {
-                        UUID id = entry.getKey();
-                        String playerName = plugin.getPlayerName(id);
-                        if (playerName.equalsIgnoreCase(name)) {
-                            return id;
-                        }
-                    }
-                    return null;
-                });
+                .orElseGet(() -> plugin.getPlayerNames().find(name));
+    }
+
+    /**
+     * Gets a player's bans in every scope, from the ban caches when they are all fresh
+     * and from the database otherwise.
+     *
+     * @param uuid The UUID of the player
+     * @return A future completed with a map of scope to expiry time
+     */
+    private CompletableFuture<Map<String, Long>> getBans(UUID uuid) {
+        if (!allCachesFresh()) {
+            return plugin.getDatabaseManager().getBansAsync(uuid);
+        }
+
+        Map<String, Long> bans = new HashMap<>();
+        for (String scope : plugin.getHardcoreServers().getScopes()) {
+            long expiry = plugin.getBanCache(scope).getExpiry(uuid);
+            if (expiry > 0) {
+                bans.put(scope, expiry);
+            }
+        }
+        return CompletableFuture.completedFuture(bans);
+    }
+
+    /**
+     * Gets the bans in every scope, from the ban caches when they are all fresh
+     * and from one database read otherwise.
+     *
+     * @return A future completed with a map of scope to a map of UUID to expiry time
+     */
+    private CompletableFuture<Map<String, Map<UUID, Long>>> getAllBans() {
+        if (!allCachesFresh()) {
+            return plugin.getDatabaseManager().getAllBansAsync();
+        }
+
+        Map<String, Map<UUID, Long>> bans = new HashMap<>();
+        for (String scope : plugin.getHardcoreServers().getScopes()) {
+            bans.put(scope, plugin.getBanCache(scope).snapshot());
+        }
+        return CompletableFuture.completedFuture(bans);
+    }
+
+    private boolean allCachesFresh() {
+        for (String scope : plugin.getHardcoreServers().getScopes()) {
+            if (!plugin.getBanCache(scope).isFresh()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isCachedBanned(UUID uuid, long now) {
+        for (String scope : plugin.getHardcoreServers().getScopes()) {
+            if (plugin.getBanCache(scope).getExpiry(uuid) > now) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A ban shown by the list command.
+     */
+    private static final class Entry {
+        private final String scope;
+        private final UUID uuid;
+        private final long expiry;
+
+        private Entry(String scope, UUID uuid, long expiry) {
+            this.scope = scope;
+            this.uuid = uuid;
+            this.expiry = expiry;
+        }
     }
-}
\ No newline at end of file
+}
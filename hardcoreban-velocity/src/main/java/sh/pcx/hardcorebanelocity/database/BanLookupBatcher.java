@@ -0,0 +1,140 @@
+package sh.pcx.hardcorebanelocity.database;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects single-player ban lookups over a short window and resolves them with one query.
+ *
+ * <p>The first lookup after a flush starts the window; every lookup that arrives before it
+ * closes joins the same batch, and a full batch is sent at once. A lookup for a player who is
+ * already waiting for the window to close shares that lookup's future instead of adding another
+ * row. Once a batch's query has started, new lookups for its players go into the next batch, since
+ * the running query may have read the rows before a change they should see.
+ * Must match {@code BanLookupBatcher} in the Paper plugin.</p>
+ *
+ * @param <V> The per-player result
+ */
+public class BanLookupBatcher<V> {
+
+    /**
+     * Loads the results for a batch of players.
+     *
+     * @param <V> The per-player result
+     */
+    @FunctionalInterface
+    public interface Loader<V> {
+        /**
+         * Loads the results for a batch of players.
+         *
+         * @param uuids The players to look up, without duplicates
+         * @return The results of the players that have one
+         * @throws Exception If the lookup fails
+         */
+        Map<UUID, V> load(List<UUID> uuids) throws Exception;
+    }
+
+    private final Loader<V> loader;
+    private final V absent;
+    private final Executor executor;
+    private final Executor delayed;
+    private final int maxBatch;
+
+    // Lookups whose query has not started yet, both guarded by this
+    private final Map<UUID, CompletableFuture<V>> waiting = new HashMap<>();
+    private List<UUID> pending = new ArrayList<>();
+
+    /**
+     * Creates a new BanLookupBatcher.
+     *
+     * @param loader Runs the batched query
+     * @param absent The result for players the query returns nothing for
+     * @param executor Runs the batched queries
+     * @param windowMillis How long to collect lookups before querying
+     * @param maxBatch The most players in one query
+     */
+    public BanLookupBatcher(Loader<V> loader, V absent, Executor executor, long windowMillis, int maxBatch) {
+        this.loader = loader;
+        this.absent = absent;
+        this.executor = executor;
+        this.delayed = CompletableFuture.delayedExecutor(windowMillis, TimeUnit.MILLISECONDS, executor);
+        this.maxBatch = maxBatch;
+    }
+
+    /**
+     * Looks up a player in the next batch.
+     *
+     * @param uuid The UUID of the player
+     * @return A future completed with the player's result once the batch has been queried
+     */
+    public CompletableFuture<V> lookup(UUID uuid) {
+        CompletableFuture<V> future;
+        int batchSize;
+
+        synchronized (this) {
+            future = waiting.get(uuid);
+            if (future != null) {
+                return future;
+            }
+
+            future = new CompletableFuture<>();
+            waiting.put(uuid, future);
+            pending.add(uuid);
+            batchSize = pending.size();
+        }
+
+        if (batchSize >= maxBatch) {
+            executor.execute(this::flush);
+        } else if (batchSize == 1) {
+            delayed.execute(this::flush);
+        }
+        return future;
+    }
+
+    private void flush() {
+        List<UUID> batch;
+        List<CompletableFuture<V>> futures = new ArrayList<>();
+        boolean more;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            if (pending.size() <= maxBatch) {
+                batch = pending;
+                pending = new ArrayList<>();
+            } else {
+                batch = new ArrayList<>(pending.subList(0, maxBatch));
+                pending = new ArrayList<>(pending.subList(maxBatch, pending.size()));
+            }
+            more = !pending.isEmpty();
+            for (UUID uuid : batch) {
+                futures.add(waiting.remove(uuid));
+            }
+        }
+
+        // Lookups that overflowed this batch go out right away rather than waiting another window
+        if (more) {
+            executor.execute(this::flush);
+        }
+
+        Map<UUID, V> results;
+        try {
+            results = loader.load(batch);
+        } catch (Exception e) {
+            for (CompletableFuture<V> future : futures) {
+                future.completeExceptionally(e);
+            }
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            futures.get(i).complete(results.getOrDefault(batch.get(i), absent));
+        }
+    }
+}
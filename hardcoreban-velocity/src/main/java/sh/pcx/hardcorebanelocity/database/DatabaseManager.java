@@ -8,19 +8,36 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 
 import org.slf4j.Logger;
 import sh.pcx.hardcorebanelocity.HardcoreBanVelocityPlugin;
+import sh.pcx.hardcorebanelocity.database.DatabaseWorkQueue.WorkClass;
+import sh.pcx.hardcorebanelocity.database.StatementPolicy.Operation;
 import sh.pcx.hardcorebanelocity.util.ConfigManager;
 
 /**
  * Manages database operations for the HardcoreBan Velocity plugin.
- * Handles connections via HikariCP connection pool and ban data retrieval.
+ * Handles connections via HikariCP connection pools, one per class of work, and ban data retrieval.
+ * The async variants run on virtual threads in a {@link DatabaseWorkQueue}, never on the proxy's
+ * event threads.
  */
 public class DatabaseManager {
+    private static final long LOOKUP_WINDOW_MILLIS = 5;
+    private static final int MAX_LOOKUP_BATCH = 500;
+    // The database server's clock in milliseconds; every host stamps writes with it, so their clocks never matter
+    private static final String DB_NOW = "ROUND(UNIX_TIMESTAMP(NOW(3)) * 1000)";
+    // True when an incoming ban row is newer than the stored one: the later banned_at wins, then the later expiry
+    private static final String INCOMING_IS_NEWER =
+            "(VALUES(banned_at) > banned_at OR (VALUES(banned_at) = banned_at AND VALUES(expiry) >= expiry))";
+
     private final HardcoreBanVelocityPlugin plugin;
     private final Logger logger;
     private final String host;
@@ -28,7 +45,13 @@ public class DatabaseManager {
     private final String database;
     private final String username;
     private final String password;
-    private HikariDataSource dataSource;
+    private volatile Map<WorkClass, HikariDataSource> pools = Map.of();
+
+    // Async queries run in a lane per priority class, each with its own pool, so a burst parks
+    // cheaply there instead of timing out in Hikari, and staff work never takes login capacity
+    private final DatabaseWorkQueue workQueue;
+    private final BanLookupBatcher<Map<String, Long>> lookupBatcher;
+    private final StatementPolicy statementPolicy = new StatementPolicy();
 
     /**
      * Creates a new DatabaseManager instance.
@@ -48,33 +71,46 @@ public class DatabaseManager {
         this.database = configManager.getString("database.database", "minecraft");
         this.username = configManager.getString("database.username", "root");
         this.password = configManager.getString("database.password", "");
+
+        Map<WorkClass, Integer> poolSizes = new EnumMap<>(WorkClass.class);
+        for (WorkClass workClass : WorkClass.values()) {
+            poolSizes.put(workClass, Math.max(1, configManager.getInt("database.pools." + workClass.getKey(),
+                    workClass.getDefaultPoolSize())));
+        }
+        this.workQueue = new DatabaseWorkQueue(poolSizes);
+        this.lookupBatcher = new BanLookupBatcher<>(this::fetchBans, Map.of(),
+                workQueue.executor(WorkClass.ENFORCEMENT), LOOKUP_WINDOW_MILLIS, MAX_LOOKUP_BATCH);
     }
 
     /**
-     * Connects to the database using HikariCP connection pool.
+     * Connects to the database using one HikariCP connection pool per class of work.
      *
      * @return true if connection successful, false otherwise
      */
-    public boolean connect() {
-        if (dataSource != null && !dataSource.isClosed()) {
+    public synchronized boolean connect() {
+        if (isConnected()) {
             return true;
         }
 
+        Map<WorkClass, HikariDataSource> opened = new EnumMap<>(WorkClass.class);
         try {
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl("jdbc:mysql://" + host + ":" + port + "/" + database +
-                    "?useSSL=false&serverTimezone=UTC");
-            config.setUsername(username);
-            config.setPassword(password);
-            config.setPoolName("HardcoreBan-Velocity-Pool");
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            config.setIdleTimeout(300000);
-            config.setConnectionTimeout(10000);
-            config.setMaxLifetime(1800000);
-            config.setConnectionTestQuery("SELECT 1");
-
-            dataSource = new HikariDataSource(config);
+            for (WorkClass workClass : WorkClass.values()) {
+                HikariConfig config = new HikariConfig();
+                config.setJdbcUrl("jdbc:mysql://" + host + ":" + port + "/" + database +
+                        "?useSSL=false&serverTimezone=UTC&useCursorFetch=true&useAffectedRows=true");
+                config.setUsername(username);
+                config.setPassword(password);
+                config.setPoolName("HardcoreBan-Velocity-" + workClass.getKey());
+                config.setMaximumPoolSize(workQueue.getPoolSize(workClass));
+                config.setMinimumIdle(workClass == WorkClass.ENFORCEMENT ? 2 : 1);
+                config.setIdleTimeout(300000);
+                config.setConnectionTimeout(10000);
+                config.setMaxLifetime(1800000);
+                config.setConnectionTestQuery("SELECT 1");
+
+                opened.put(workClass, new HikariDataSource(config));
+            }
+            pools = opened;
 
             // Create the table if it doesn't exist
             createTableIfNotExists();
@@ -83,17 +119,61 @@ public class DatabaseManager {
             return true;
         } catch (Exception e) {
             logger.error("Failed to connect to database: {}", e.getMessage());
-            dataSource = null;
+            opened.values().forEach(HikariDataSource::close);
+            pools = Map.of();
             return false;
         }
     }
 
     /**
-     * Disconnects from the database by closing the HikariCP pool.
+     * Checks if the connection pools are open.
+     *
+     * @return true if connected, false otherwise
+     */
+    public boolean isConnected() {
+        HikariDataSource pool = pools.get(WorkClass.ENFORCEMENT);
+        return pool != null && !pool.isClosed();
+    }
+
+    /**
+     * Gets a connection from the pool of a class of work.
+     *
+     * @param workClass The class of the work the connection is for
+     * @return A connection, to be closed by the caller
+     * @throws SQLException If the database is unavailable or no connection becomes free in time
+     */
+    private Connection getConnection(WorkClass workClass) throws SQLException {
+        HikariDataSource pool = pools.get(workClass);
+        if (pool == null || pool.isClosed()) {
+            throw new SQLException("Database connection pool is not available");
+        }
+        return pool.getConnection();
+    }
+
+    private void closePools() {
+        Map<WorkClass, HikariDataSource> closing = pools;
+        pools = Map.of();
+        closing.values().forEach(HikariDataSource::close);
+    }
+
+    /**
+     * Gets the queue that runs asynchronous database work, for its metrics.
+     *
+     * @return The database work queue
      */
-    public void disconnect() {
-        if (dataSource != null && !dataSource.isClosed()) {
-            dataSource.close();
+    public DatabaseWorkQueue getWorkQueue() {
+        return workQueue;
+    }
+
+    /**
+     * Disconnects from the database by closing the HikariCP pools.
+     */
+    public synchronized void disconnect() {
+        workQueue.shutdown();
+        statementPolicy.shutdown();
+
+        if (isConnected()) {
+            closePools();
             logger.info("Disconnected from database.");
         }
     }
@@ -102,23 +182,26 @@ public class DatabaseManager {
      * Creates the required database table if it doesn't exist.
      */
     private void createTableIfNotExists() {
-        if (dataSource == null || dataSource.isClosed()) {
+        if (!isConnected()) {
             logger.error("Cannot create table: database connection pool is closed or null");
             return;
         }
 
         String sql = "CREATE TABLE IF NOT EXISTS hardcoreban_bans (" +
-                "uuid VARCHAR(36) PRIMARY KEY, " +
+                "uuid VARCHAR(36), " +
+                "scope VARCHAR(64) NOT NULL DEFAULT 'default', " +
                 "player_name VARCHAR(36), " +
                 "expiry BIGINT, " +
                 "banned_by VARCHAR(36), " +
                 "banned_at BIGINT, " +
-                "reason VARCHAR(255)" +
+                "reason VARCHAR(255), " +
+                "PRIMARY KEY (uuid, scope)" +
                 ");";
 
-        try (Connection conn = dataSource.getConnection();
-             Statement stmt = conn.createStatement()) {
+        try (Connection conn = getConnection(WorkClass.MAINTENANCE);
+             Statement stmt = statementPolicy.create(conn, Operation.SCHEMA)) {
             stmt.execute(sql);
+            migrateScopeColumn(conn, stmt);
             logger.info("Verified that database table exists");
         } catch (SQLException e) {
             logger.error("Failed to create database table: {}", e.getMessage());
@@ -126,22 +209,45 @@ public class DatabaseManager {
     }
 
     /**
-     * Checks if a player is currently banned.
+     * Adds the scope column to tables created before bans were scoped, keeping existing
+     * bans in the "default" scope and making (uuid, scope) the primary key.
+     *
+     * @param conn The connection to use
+     * @param stmt A statement on that connection
+     * @throws SQLException If the migration fails
+     */
+    private void migrateScopeColumn(Connection conn, Statement stmt) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getColumns(conn.getCatalog(), null, "hardcoreban_bans", "scope")) {
+            if (rs.next()) {
+                return;
+            }
+        }
+
+        stmt.execute("ALTER TABLE hardcoreban_bans " +
+                "ADD COLUMN scope VARCHAR(64) NOT NULL DEFAULT 'default' AFTER uuid, " +
+                "DROP PRIMARY KEY, ADD PRIMARY KEY (uuid, scope)");
+        logger.info("Added ban scopes to the database table");
+    }
+
+    /**
+     * Checks if a player is currently banned in a scope.
      *
      * @param uuid The UUID of the player
+     * @param scope The ban scope
      * @return true if the player is banned, false otherwise
      */
-    public boolean isBanned(UUID uuid) {
-        if (dataSource == null || dataSource.isClosed()) {
+    public boolean isBanned(UUID uuid, String scope) {
+        if (!isConnected()) {
             logger.warn("Database connection pool is not available");
             return false;
         }
 
-        String sql = "SELECT expiry FROM hardcoreban_bans WHERE uuid = ?";
+        String sql = "SELECT expiry FROM hardcoreban_bans WHERE uuid = ? AND scope = ?";
 
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (Connection conn = getConnection(WorkClass.ENFORCEMENT);
+             PreparedStatement stmt = statementPolicy.prepare(conn, sql, Operation.LOOKUP)) {
             stmt.setString(1, uuid.toString());
+            stmt.setString(2, scope);
 
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
@@ -157,22 +263,24 @@ public class DatabaseManager {
     }
 
     /**
-     * Gets the time left on a player's ban in milliseconds.
+     * Gets the time left on a player's ban in a scope in milliseconds.
      *
      * @param uuid The UUID of the player
+     * @param scope The ban scope
      * @return The time left in milliseconds, or 0 if the player isn't banned
      */
-    public long getTimeLeft(UUID uuid) {
-        if (dataSource == null || dataSource.isClosed()) {
+    public long getTimeLeft(UUID uuid, String scope) {
+        if (!isConnected()) {
             logger.warn("Database connection pool is not available");
             return 0;
         }
 
-        String sql = "SELECT expiry FROM hardcoreban_bans WHERE uuid = ?";
+        String sql = "SELECT expiry FROM hardcoreban_bans WHERE uuid = ? AND scope = ?";
 
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (Connection conn = getConnection(WorkClass.ENFORCEMENT);
+             PreparedStatement stmt = statementPolicy.prepare(conn, sql, Operation.LOOKUP)) {
             stmt.setString(1, uuid.toString());
+            stmt.setString(2, scope);
 
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
@@ -189,22 +297,255 @@ public class DatabaseManager {
     }
 
     /**
-     * Gets all currently active bans.
+     * Gets the active bans of a batch of players in every scope.
      *
-     * @return A map of UUID to expiry time
+     * @param uuids The UUIDs of the players
+     * @return A map of UUID to a map of scope to expiry time, for the players that are banned anywhere
+     * @throws SQLException If the database is unavailable or the query fails
      */
-    public Map<UUID, Long> getAllBans() {
-        Map<UUID, Long> bans = new HashMap<>();
+    private Map<UUID, Map<String, Long>> fetchBans(List<UUID> uuids) throws SQLException {
+        Map<UUID, Map<String, Long>> bans = new HashMap<>();
 
-        if (dataSource == null || dataSource.isClosed()) {
-            logger.warn("Database connection pool is not available");
-            return bans;
+        if (!isConnected()) {
+            throw new SQLException("Database connection pool is not available");
+        }
+
+        String sql = "SELECT uuid, scope, expiry FROM hardcoreban_bans WHERE uuid IN (" +
+                String.join(", ", Collections.nCopies(uuids.size(), "?")) + ")";
+
+        try (Connection conn = getConnection(WorkClass.ENFORCEMENT);
+             PreparedStatement stmt = statementPolicy.prepare(conn, sql, Operation.LOOKUP)) {
+            for (int i = 0; i < uuids.size(); i++) {
+                stmt.setString(i + 1, uuids.get(i).toString());
+            }
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                long now = System.currentTimeMillis();
+                while (rs.next()) {
+                    long expiry = rs.getLong("expiry");
+                    if (expiry > now) {
+                        bans.computeIfAbsent(UUID.fromString(rs.getString("uuid")), uuid -> new HashMap<>())
+                                .put(rs.getString("scope"), expiry);
+                    }
+                }
+            }
+        }
+
+        return bans;
+    }
+
+    /**
+     * Gets a player's active bans in every scope without blocking the caller.
+     * Lookups arriving close together are resolved by a single query.
+     *
+     * @param uuid The UUID of the player
+     * @return A future completed with a map of scope to expiry time
+     */
+    public CompletableFuture<Map<String, Long>> getBansAsync(UUID uuid) {
+        return lookupBatcher.lookup(uuid);
+    }
+
+    /**
+     * Gets the time left on a player's ban in a scope without blocking the caller.
+     *
+     * @param uuid The UUID of the player
+     * @param scope The ban scope
+     * @return A future completed with the time left in milliseconds, or 0 if the player isn't banned
+     */
+    public CompletableFuture<Long> getTimeLeftAsync(UUID uuid, String scope) {
+        return getBansAsync(uuid)
+                .thenApply(bans -> Math.max(0, bans.getOrDefault(scope, 0L) - System.currentTimeMillis()));
+    }
+
+    /**
+     * Runs a database task in the lane of its class, waiting for a free connection without blocking the caller.
+     *
+     * @param workClass The class of the task, which must match the connections it uses
+     * @param task The task
+     * @param <T> The result of the task
+     * @return A future completed with the task's result, or exceptionally if it failed or its lane was full
+     */
+    public <T> CompletableFuture<T> supplyAsync(WorkClass workClass, Callable<T> task) {
+        return workQueue.submit(workClass, task);
+    }
+
+    /**
+     * Gets all currently active bans, grouped by ban scope, without blocking the caller.
+     *
+     * @return A future completed with a map of scope to a map of UUID to expiry time
+     */
+    public CompletableFuture<Map<String, Map<UUID, Long>>> getAllBansAsync() {
+        return supplyAsync(WorkClass.MAINTENANCE, this::fetchAllBans);
+    }
+
+    /**
+     * Finds a player with a ban record by name, ignoring case.
+     *
+     * @param name The player's name
+     * @return The UUID of the player, or null if no ban record has that name
+     * @throws SQLException If the database is unavailable or the query fails
+     */
+    public UUID findPlayer(String name) throws SQLException {
+        if (!isConnected()) {
+            throw new SQLException("Database connection pool is not available");
+        }
+
+        String sql = "SELECT uuid, player_name FROM hardcoreban_bans WHERE player_name = ? LIMIT 1";
+
+        try (Connection conn = getConnection(WorkClass.ADMIN);
+             PreparedStatement stmt = statementPolicy.prepare(conn, sql, Operation.LOOKUP)) {
+            stmt.setString(1, name);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                UUID uuid = UUID.fromString(rs.getString("uuid"));
+                plugin.setPlayerName(uuid, rs.getString("player_name"));
+                return uuid;
+            }
+        }
+    }
+
+    /**
+     * Adds or replaces a player's ban in a scope, stamped with the database server's clock as its
+     * banned_at. An existing row is only replaced when this ban is newer, by the same rule the Paper
+     * plugin uses: the later banned_at wins, and between equal times the later expiry. The check is
+     * made by the database in the same statement.
+     *
+     * @param uuid The UUID of the player
+     * @param scope The ban scope
+     * @param playerName The name of the player
+     * @param expiry The time when the ban expires
+     * @param bannedBy Who banned the player
+     * @param reason The reason for the ban
+     * @return true if this ban was written, false if a newer ban or removal was kept
+     * @throws SQLException If the database is unavailable or the write fails
+     */
+    public boolean addBan(UUID uuid, String scope, String playerName, long expiry, String bannedBy, String reason)
+            throws SQLException {
+        if (!isConnected()) {
+            throw new SQLException("Database connection pool is not available");
+        }
+
+        // expiry and banned_at are assigned last, since the condition reads them
+        String sql = "INSERT INTO hardcoreban_bans " +
+                "(uuid, scope, player_name, expiry, banned_by, banned_at, reason) " +
+                "VALUES (?, ?, ?, ?, ?, " + DB_NOW + ", ?) " +
+                "ON DUPLICATE KEY UPDATE " +
+                "player_name = IF(" + INCOMING_IS_NEWER + ", VALUES(player_name), player_name), " +
+                "banned_by = IF(" + INCOMING_IS_NEWER + ", VALUES(banned_by), banned_by), " +
+                "reason = IF(" + INCOMING_IS_NEWER + ", VALUES(reason), reason), " +
+                "expiry = IF(" + INCOMING_IS_NEWER + ", VALUES(expiry), expiry), " +
+                "banned_at = IF(" + INCOMING_IS_NEWER + ", VALUES(banned_at), banned_at)";
+
+        try (Connection conn = getConnection(WorkClass.WRITE);
+             PreparedStatement stmt = statementPolicy.prepare(conn, sql, Operation.WRITE)) {
+            stmt.setString(1, uuid.toString());
+            stmt.setString(2, scope);
+            stmt.setString(3, playerName);
+            stmt.setLong(4, expiry);
+            stmt.setString(5, bannedBy);
+            stmt.setString(6, reason);
+            // The connection reports affected rows, so 0 means the stored row was newer and kept
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * Adds time to a player's active ban in a scope. The new expiry is computed by the database,
+     * so extensions issued at the same time from different places all count. It is handed back
+     * through LAST_INSERT_ID, so the extension takes a single round trip.
+     *
+     * @param uuid The UUID of the player
+     * @param scope The ban scope
+     * @param millis The time to add in milliseconds
+     * @return The new expiry time, or 0 if the player has no active ban in the scope
+     * @throws SQLException If the database is unavailable or the write fails
+     */
+    public long extendBan(UUID uuid, String scope, long millis) throws SQLException {
+        if (!isConnected()) {
+            throw new SQLException("Database connection pool is not available");
+        }
+
+        String sql = "UPDATE hardcoreban_bans SET expiry = LAST_INSERT_ID(expiry + ?) " +
+                "WHERE uuid = ? AND scope = ? AND expiry > ?";
+
+        try (Connection conn = getConnection(WorkClass.WRITE);
+             PreparedStatement stmt = statementPolicy.prepare(conn, sql, Statement.RETURN_GENERATED_KEYS,
+                     Operation.WRITE)) {
+            stmt.setLong(1, millis);
+            stmt.setString(2, uuid.toString());
+            stmt.setString(3, scope);
+            stmt.setLong(4, System.currentTimeMillis());
+            if (stmt.executeUpdate() == 0) {
+                return 0;
+            }
+
+            try (ResultSet rs = stmt.getGeneratedKeys()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Removes a player's ban in a scope. The row is kept as a removal marker (expiry 0, banned_at set
+     * to the database server's clock) that the Paper plugin's cleanup deletes later, so the removal
+     * is ordered against bans by the same rule as other writes.
+     *
+     * @param uuid The UUID of the player
+     * @param scope The ban scope
+     * @return true if a ban was removed, false if the player wasn't banned
+     * @throws SQLException If the database is unavailable or the write fails
+     */
+    public boolean removeBan(UUID uuid, String scope) throws SQLException {
+        if (!isConnected()) {
+            throw new SQLException("Database connection pool is not available");
+        }
+
+        String sql = "UPDATE hardcoreban_bans SET expiry = 0, banned_at = " + DB_NOW + " " +
+                "WHERE uuid = ? AND scope = ? AND expiry > 0";
+
+        try (Connection conn = getConnection(WorkClass.WRITE);
+             PreparedStatement stmt = statementPolicy.prepare(conn, sql, Operation.WRITE)) {
+            stmt.setString(1, uuid.toString());
+            stmt.setString(2, scope);
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * Gets all currently active bans, grouped by ban scope.
+     *
+     * @return A map of scope to a map of UUID to expiry time
+     */
+    public Map<String, Map<UUID, Long>> getAllBans() {
+        try {
+            return fetchAllBans();
+        } catch (SQLException e) {
+            logger.error("Failed to get all bans: {}", e.getMessage());
+            return new HashMap<>();
         }
+    }
 
-        String sql = "SELECT uuid, player_name, expiry FROM hardcoreban_bans";
+    /**
+     * Gets all currently active bans, reporting failures to the caller instead of
+     * returning an empty map, so a database outage is not mistaken for "no bans".
+     *
+     * @return A map of scope to a map of UUID to expiry time
+     * @throws SQLException If the database is unavailable or the query fails
+     */
+    public Map<String, Map<UUID, Long>> fetchAllBans() throws SQLException {
+        Map<String, Map<UUID, Long>> bans = new HashMap<>();
+
+        if (!isConnected()) {
+            throw new SQLException("Database connection pool is not available");
+        }
+
+        String sql = "SELECT uuid, scope, player_name, expiry FROM hardcoreban_bans";
 
-        try (Connection conn = dataSource.getConnection();
-             Statement stmt = conn.createStatement();
+        try (Connection conn = getConnection(WorkClass.MAINTENANCE);
+             Statement stmt = statementPolicy.create(conn, Operation.SCAN);
              ResultSet rs = stmt.executeQuery(sql)) {
             while (rs.next()) {
                 UUID uuid = UUID.fromString(rs.getString("uuid"));
@@ -213,7 +554,7 @@ public class DatabaseManager {
 
                 // Only include non-expired bans
                 if (expiry > System.currentTimeMillis()) {
-                    bans.put(uuid, expiry);
+                    bans.computeIfAbsent(rs.getString("scope"), scope -> new HashMap<>()).put(uuid, expiry);
 
                     // Store player name in the plugin's name cache
                     if (playerName != null && !playerName.isEmpty()) {
@@ -221,8 +562,6 @@ public class DatabaseManager {
                     }
                 }
             }
-        } catch (SQLException e) {
-            logger.error("Failed to get all bans: {}", e.getMessage());
         }
 
         return bans;
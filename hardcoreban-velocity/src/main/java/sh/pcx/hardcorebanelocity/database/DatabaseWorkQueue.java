@@ -0,0 +1,243 @@
+package sh.pcx.hardcorebanelocity.database;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs database work in one lane per priority class, so staff and background work can never
+ * hold up the lookups that decide whether a player may join.
+ *
+ * <p>Every lane has its own connection pool, and as many of its tasks run at once as the pool
+ * has connections; the rest park cheaply on virtual threads until one finishes. Since lanes
+ * share no connections, a lane can only be slowed by its own backlog. The lower a lane's
+ * priority, the smaller the backlog it accepts before it rejects new work. The lookup batcher
+ * is exempt from the limit, since batching already bounds how much it submits. Queue depth,
+ * wait time and rejections are counted per lane. Must match {@code DatabaseWorkQueue} in the
+ * Paper plugin.</p>
+ */
+public class DatabaseWorkQueue {
+
+    /**
+     * The priority classes of database work, from highest to lowest.
+     */
+    public enum WorkClass {
+        /** Ban lookups that decide whether a player may join. */
+        ENFORCEMENT("enforcement", 4, 1000),
+        /** Bans, unbans and extensions. */
+        WRITE("writes", 2, 200),
+        /** Cache refreshes, ban listings, cleanup and schema checks. */
+        MAINTENANCE("maintenance", 2, 20),
+        /** Staff lookups and raw SQL. */
+        ADMIN("admin", 2, 10);
+
+        private final String key;
+        private final int defaultPoolSize;
+        private final int queueLimit;
+
+        WorkClass(String key, int defaultPoolSize, int queueLimit) {
+            this.key = key;
+            this.defaultPoolSize = defaultPoolSize;
+            this.queueLimit = queueLimit;
+        }
+
+        /**
+         * Gets the name of the class in the configuration and in metrics.
+         *
+         * @return The key
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * Gets the number of connections the class gets unless configured otherwise.
+         *
+         * @return The default pool size
+         */
+        public int getDefaultPoolSize() {
+            return defaultPoolSize;
+        }
+
+        /**
+         * Gets the most tasks of the class that may wait for a connection.
+         *
+         * @return The queue limit
+         */
+        public int getQueueLimit() {
+            return queueLimit;
+        }
+    }
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<WorkClass, Lane> lanes = new EnumMap<>(WorkClass.class);
+
+    /**
+     * Creates a new DatabaseWorkQueue.
+     *
+     * @param poolSizes The number of connections in each class's pool
+     */
+    public DatabaseWorkQueue(Map<WorkClass, Integer> poolSizes) {
+        for (WorkClass workClass : WorkClass.values()) {
+            lanes.put(workClass, new Lane(poolSizes.getOrDefault(workClass, workClass.getDefaultPoolSize())));
+        }
+    }
+
+    /**
+     * Runs a task in a class's lane without blocking the caller.
+     *
+     * @param workClass The priority class of the task
+     * @param task The task
+     * @param <T> The result of the task
+     * @return A future completed with the task's result, or exceptionally if it failed or the lane was full
+     */
+    public <T> CompletableFuture<T> submit(WorkClass workClass, Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Lane lane = lanes.get(workClass);
+
+        if (lane.queued.incrementAndGet() > workClass.getQueueLimit()) {
+            lane.queued.decrementAndGet();
+            lane.rejected.increment();
+            future.completeExceptionally(new RejectedExecutionException(
+                    "Too much " + workClass.getKey() + " database work is queued"));
+            return future;
+        }
+
+        run(lane, () -> {
+            try {
+                future.complete(task.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Gets an executor that runs tasks in a class's lane regardless of its queue limit.
+     *
+     * @param workClass The priority class of the tasks
+     * @return The executor
+     */
+    public Executor executor(WorkClass workClass) {
+        Lane lane = lanes.get(workClass);
+        return task -> {
+            lane.queued.incrementAndGet();
+            run(lane, task);
+        };
+    }
+
+    private void run(Lane lane, Runnable task) {
+        long queuedAt = System.nanoTime();
+        executor.execute(() -> {
+            lane.permits.acquireUninterruptibly();
+            lane.queued.decrementAndGet();
+            long waited = System.nanoTime() - queuedAt;
+            lane.started.increment();
+            lane.waitNanos.add(waited);
+            lane.maxWaitNanos.accumulate(waited);
+            try {
+                task.run();
+            } finally {
+                lane.permits.release();
+            }
+        });
+    }
+
+    /**
+     * Stops accepting work. Tasks already submitted still run.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Gets the number of connections in a class's pool.
+     *
+     * @param workClass The priority class
+     * @return The pool size
+     */
+    public int getPoolSize(WorkClass workClass) {
+        return lanes.get(workClass).poolSize;
+    }
+
+    /**
+     * Gets the number of a class's tasks waiting for a connection.
+     *
+     * @param workClass The priority class
+     * @return The queue depth
+     */
+    public int getQueued(WorkClass workClass) {
+        return lanes.get(workClass).queued.get();
+    }
+
+    /**
+     * Gets the number of a class's tasks that are running.
+     *
+     * @param workClass The priority class
+     * @return The number of running tasks
+     */
+    public int getRunning(WorkClass workClass) {
+        Lane lane = lanes.get(workClass);
+        return lane.poolSize - lane.permits.availablePermits();
+    }
+
+    /**
+     * Gets the number of a class's tasks that were rejected because its lane was full.
+     *
+     * @param workClass The priority class
+     * @return The number of rejected tasks
+     */
+    public long getRejected(WorkClass workClass) {
+        return lanes.get(workClass).rejected.sum();
+    }
+
+    /**
+     * Gets the average time a class's tasks waited for a connection.
+     *
+     * @param workClass The priority class
+     * @return The average wait in milliseconds, or 0 if no task has started
+     */
+    public double getAverageWaitMillis(WorkClass workClass) {
+        Lane lane = lanes.get(workClass);
+        long started = lane.started.sum();
+        return started == 0 ? 0 : lane.waitNanos.sum() / 1_000_000.0 / started;
+    }
+
+    /**
+     * Gets the longest time one of a class's tasks waited for a connection.
+     *
+     * @param workClass The priority class
+     * @return The longest wait in milliseconds
+     */
+    public double getMaxWaitMillis(WorkClass workClass) {
+        return lanes.get(workClass).maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * The tasks and counters of one priority class.
+     */
+    private static final class Lane {
+        private final int poolSize;
+        private final Semaphore permits;
+        private final AtomicInteger queued = new AtomicInteger();
+        private final LongAdder started = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+        private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+
+        private Lane(int poolSize) {
+            this.poolSize = poolSize;
+            this.permits = new Semaphore(poolSize);
+        }
+    }
+}
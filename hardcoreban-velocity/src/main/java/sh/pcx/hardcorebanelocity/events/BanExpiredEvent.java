@@ -0,0 +1,54 @@
+package sh.pcx.hardcorebanelocity.events;
+
+import java.util.UUID;
+
+/**
+ * Fired on the proxy's event bus when a player's ban in a scope runs out, at the moment it expires.
+ * The player may connect to the scope's hardcore servers from then on.
+ */
+public final class BanExpiredEvent {
+
+    private final UUID uuid;
+    private final String scope;
+    private final long expiry;
+
+    /**
+     * Creates a new BanExpiredEvent.
+     *
+     * @param uuid The UUID of the player
+     * @param scope The ban scope the ban was in
+     * @param expiry The time the ban expired
+     */
+    public BanExpiredEvent(UUID uuid, String scope, long expiry) {
+        this.uuid = uuid;
+        this.scope = scope;
+        this.expiry = expiry;
+    }
+
+    /**
+     * Gets the player whose ban expired.
+     *
+     * @return The UUID of the player
+     */
+    public UUID getUuid() {
+        return uuid;
+    }
+
+    /**
+     * Gets the ban scope the ban was in.
+     *
+     * @return The scope
+     */
+    public String getScope() {
+        return scope;
+    }
+
+    /**
+     * Gets the time the ban expired.
+     *
+     * @return The time in milliseconds
+     */
+    public long getExpiry() {
+        return expiry;
+    }
+}
@@ -0,0 +1,326 @@
+package sh.pcx.hardcorebanelocity.listeners;
+
+import com.velocitypowered.api.event.PostOrder;
+import com.velocitypowered.api.event.Subscribe;
+import com.velocitypowered.api.event.connection.DisconnectEvent;
+import com.velocitypowered.api.event.player.ServerPreConnectEvent;
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.ServerConnection;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import com.velocitypowered.api.scheduler.ScheduledTask;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.TextReplacementConfig;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import sh.pcx.hardcorebanelocity.HardcoreBanVelocityPlugin;
+import sh.pcx.hardcorebanelocity.util.ConfigManager;
+
+/**
+ * Limits how fast players are let into each hardcore server, so a wave of bans expiring at
+ * the same moment does not send every player to the backend at once.
+ *
+ * <p>Runs after the ban check, so only connections that would otherwise go through are counted.
+ * Each hardcore server has a token bucket refilled at the configured rate, scaled down while
+ * the backend reports a tick time above target-mspt (or, without a tick time, a TPS below
+ * target-tps) and never below min-connects-per-second. When no token is free the connection
+ * is held back and the player is queued; the queue is first in, first out, players are told
+ * their position, and they are connected automatically when their turn comes. A player who
+ * retries while queued keeps their place.</p>
+ *
+ * <p>A player is queued on the server they are waiting on; one who is held back while joining
+ * the proxy waits on the first non-hardcore server in the proxy's try list instead of being
+ * kicked. A player who has moved to another server by their turn has given up their place and
+ * is dropped from the queue rather than pulled back.</p>
+ */
+public class AdmissionController {
+
+    private static final long TICK_MILLIS = 250;
+    private static final int TICKS_PER_POSITION_UPDATE = 4;
+    // How long a player sent on from the queue may take to arrive without a new token
+    private static final long PASS_MILLIS = 10000;
+    // Health reports older than this are ignored and the full rate applies
+    private static final long HEALTH_TIMEOUT = 15000;
+
+    private final HardcoreBanVelocityPlugin plugin;
+    private final ConfigManager configManager;
+    // The queued message, parsed once with {position} left in as text
+    private final Component queuedTemplate;
+    private final Map<String, Gate> gates = new ConcurrentHashMap<>();
+    private ScheduledTask task;
+    private int ticks;
+
+    /**
+     * Creates a new AdmissionController.
+     *
+     * @param plugin The main plugin instance
+     */
+    public AdmissionController(HardcoreBanVelocityPlugin plugin) {
+        this.plugin = plugin;
+        this.configManager = plugin.getConfigManager();
+        this.queuedTemplate = plugin.getMiniMessage().deserialize(configManager.getString("messages.admission-queued",
+                "<yellow>The hardcore server is busy. You are <white>#{position}</white> in line."));
+    }
+
+    /**
+     * Starts the task that lets queued players in, if admission control is enabled in the config.
+     */
+    public void start() {
+        if (!isEnabled()) {
+            return;
+        }
+
+        task = plugin.getServer().getScheduler().buildTask(plugin, this::tick)
+                .repeat(TICK_MILLIS, TimeUnit.MILLISECONDS)
+                .schedule();
+    }
+
+    /**
+     * Stops the task that lets queued players in.
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+        }
+    }
+
+    /**
+     * Checks if connections to hardcore servers are rate limited.
+     *
+     * @return true if admission control is enabled
+     */
+    public boolean isEnabled() {
+        return configManager.getBoolean("admission.enabled", false);
+    }
+
+    /**
+     * Records a health report from a hardcore server.
+     *
+     * @param serverName The name of the server
+     * @param tps The server's TPS
+     * @param mspt The server's average tick time in milliseconds, or a negative value if unknown
+     */
+    public void reportHealth(String serverName, double tps, double mspt) {
+        Gate gate = gates.computeIfAbsent(serverName.toLowerCase(), name -> new Gate());
+        synchronized (gate) {
+            gate.tps = tps;
+            gate.mspt = mspt;
+            gate.reportedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Holds back connections to a hardcore server that is over its admission rate.
+     * Runs after the ban check, whose result is final by then: Velocity finishes an earlier
+     * handler's asynchronous work before calling later ones.
+     *
+     * @param event The server pre-connect event
+     */
+    @Subscribe(order = PostOrder.LATE)
+    public void onServerPreConnect(ServerPreConnectEvent event) {
+        if (!isEnabled() || !event.getResult().isAllowed()) {
+            return;
+        }
+
+        Optional<RegisteredServer> target = event.getResult().getServer();
+        if (target.isEmpty() || plugin.getHardcoreServers().scopeOf(target.get()) == null) {
+            return;
+        }
+
+        Player player = event.getPlayer();
+        UUID uuid = player.getUniqueId();
+        Gate gate = gates.computeIfAbsent(target.get().getServerInfo().getName().toLowerCase(), name -> new Gate());
+        long now = System.currentTimeMillis();
+        Optional<RegisteredServer> current = player.getCurrentServer().map(ServerConnection::getServer);
+        // A player joining the proxy waits on a fallback, or is turned away if there is none
+        RegisteredServer waitingOn = current.orElseGet(this::fallback);
+        int position = 0;
+
+        synchronized (gate) {
+            Long pass = gate.passes.remove(uuid);
+            if (pass != null && now - pass <= PASS_MILLIS) {
+                return;
+            }
+
+            gate.refill(now);
+            if (gate.queue.isEmpty() && gate.tokens >= 1) {
+                gate.tokens--;
+                return;
+            }
+
+            gate.target = target.get();
+            if (waitingOn != null) {
+                // Replacing an entry keeps the player's place in line
+                gate.queue.put(uuid, waitingOn.getServerInfo().getName());
+                position = gate.position(uuid);
+            }
+        }
+
+        event.setResult(current.isEmpty() && waitingOn != null
+                ? ServerPreConnectEvent.ServerResult.allowed(waitingOn)
+                : ServerPreConnectEvent.ServerResult.denied());
+        if (waitingOn == null) {
+            return;
+        }
+        player.sendMessage(queuedMessage(position));
+    }
+
+    private Component queuedMessage(int position) {
+        return queuedTemplate.replaceText(TextReplacementConfig.builder()
+                .matchLiteral("{position}")
+                .replacement(String.valueOf(position))
+                .build());
+    }
+
+    /**
+     * Gets the server a player held back while joining the proxy waits on.
+     *
+     * @return The first registered server in the proxy's try list that is not a hardcore server,
+     *         or null if there is none
+     */
+    private RegisteredServer fallback() {
+        for (String name : plugin.getServer().getConfiguration().getAttemptConnectionOrder()) {
+            Optional<RegisteredServer> server = plugin.getServer().getServer(name);
+            if (server.isPresent() && plugin.getHardcoreServers().scopeOf(server.get()) == null) {
+                return server.get();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes a player from every queue when they leave the proxy.
+     *
+     * @param event The disconnect event
+     */
+    @Subscribe
+    public void onDisconnect(DisconnectEvent event) {
+        UUID uuid = event.getPlayer().getUniqueId();
+        for (Gate gate : gates.values()) {
+            synchronized (gate) {
+                gate.queue.remove(uuid);
+                gate.passes.remove(uuid);
+            }
+        }
+    }
+
+    /**
+     * Lets in as many queued players as each server's tokens allow and, every few ticks,
+     * tells the rest their position. Players who have left the server they were queued on are
+     * dropped without using a token.
+     */
+    private void tick() {
+        long now = System.currentTimeMillis();
+        boolean updatePositions = ++ticks % TICKS_PER_POSITION_UPDATE == 0;
+
+        for (Gate gate : gates.values()) {
+            List<UUID> admitted = new ArrayList<>();
+            List<UUID> waiting;
+            RegisteredServer target;
+
+            synchronized (gate) {
+                gate.passes.values().removeIf(pass -> now - pass > PASS_MILLIS);
+                if (gate.queue.isEmpty()) {
+                    continue;
+                }
+
+                gate.refill(now);
+                Iterator<Map.Entry<UUID, String>> it = gate.queue.entrySet().iterator();
+                while (gate.tokens >= 1 && it.hasNext()) {
+                    Map.Entry<UUID, String> entry = it.next();
+                    Optional<Player> player = plugin.getServer().getPlayer(entry.getKey());
+                    Optional<ServerConnection> current = player.flatMap(Player::getCurrentServer);
+                    if (player.isPresent() && current.isEmpty()) {
+                        // Still connecting to the server they wait on
+                        continue;
+                    }
+                    it.remove();
+                    if (current.isEmpty() || !current.get().getServerInfo().getName().equals(entry.getValue())) {
+                        continue;
+                    }
+                    gate.tokens--;
+                    gate.passes.put(entry.getKey(), now);
+                    admitted.add(entry.getKey());
+                }
+                target = gate.target;
+                waiting = updatePositions ? new ArrayList<>(gate.queue.keySet()) : List.of();
+            }
+
+            for (UUID uuid : admitted) {
+                plugin.getServer().getPlayer(uuid)
+                        .ifPresent(player -> player.createConnectionRequest(target).fireAndForget());
+            }
+
+            for (int i = 0; i < waiting.size(); i++) {
+                int position = i + 1;
+                plugin.getServer().getPlayer(waiting.get(i))
+                        .ifPresent(player -> player.sendActionBar(queuedMessage(position)));
+            }
+        }
+    }
+
+    /**
+     * The admission state of one hardcore server.
+     */
+    private final class Gate {
+        // Queued players and the name of the server each is waiting on
+        private final LinkedHashMap<UUID, String> queue = new LinkedHashMap<>();
+        private final Map<UUID, Long> passes = new HashMap<>();
+        private RegisteredServer target;
+        private double tokens = configManager.getInt("admission.burst", 5);
+        private long refilledAt = System.currentTimeMillis();
+        private double tps = 20;
+        private double mspt = -1;
+        private long reportedAt;
+
+        private void refill(long now) {
+            int burst = Math.max(1, configManager.getInt("admission.burst", 5));
+            tokens = Math.min(burst, tokens + rate(now) * (now - refilledAt) / 1000.0);
+            refilledAt = now;
+        }
+
+        /**
+         * Gets the admission rate in connects per second, scaled by the server's last health report.
+         */
+        private double rate(long now) {
+            double rate = configManager.getDouble("admission.connects-per-second", 2.0);
+            double minRate = Math.min(rate, configManager.getDouble("admission.min-connects-per-second", 0.2));
+            if (now - reportedAt > HEALTH_TIMEOUT) {
+                return rate;
+            }
+
+            double headroom;
+            if (mspt >= 0) {
+                double target = configManager.getDouble("admission.target-mspt", 40.0);
+                double max = configManager.getDouble("admission.max-mspt", 50.0);
+                headroom = (max - mspt) / Math.max(0.001, max - target);
+            } else {
+                double target = configManager.getDouble("admission.target-tps", 19.5);
+                double min = configManager.getDouble("admission.min-tps", 15.0);
+                headroom = (tps - min) / Math.max(0.001, target - min);
+            }
+            return Math.max(minRate, rate * Math.min(1, Math.max(0, headroom)));
+        }
+
+        private int position(UUID uuid) {
+            int position = 1;
+            for (UUID queued : queue.keySet()) {
+                if (queued.equals(uuid)) {
+                    return position;
+                }
+                position++;
+            }
+            return position;
+        }
+    }
+}
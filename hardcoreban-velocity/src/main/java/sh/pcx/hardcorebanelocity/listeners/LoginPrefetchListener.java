@@ -0,0 +1,117 @@
+package sh.pcx.hardcorebanelocity.listeners;
+
+import com.velocitypowered.api.event.PostOrder;
+import com.velocitypowered.api.event.Subscribe;
+import com.velocitypowered.api.event.connection.DisconnectEvent;
+import com.velocitypowered.api.event.connection.LoginEvent;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import sh.pcx.hardcorebanelocity.HardcoreBanVelocityPlugin;
+
+/**
+ * Starts looking up a player's bans as soon as they log in to the proxy, so the ban check
+ * on their first hardcore server connect is answered from memory.
+ *
+ * <p>Only needed while some scope's ban cache is not filled or has gone stale; otherwise the
+ * cache already answers every check. The lookup is not awaited at login. A pre-connect check that arrives
+ * first, such as a player joining a hardcore server as their initial server, waits on the
+ * same lookup instead of starting another. Each prefetched result is used once, is dropped if
+ * older than {@link #MAX_AGE}, and is discarded when a ban update for the player arrives.</p>
+ */
+public class LoginPrefetchListener {
+
+    private static final long MAX_AGE = 60000;
+
+    private final HardcoreBanVelocityPlugin plugin;
+    private final Map<UUID, Prefetch> prefetched = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new LoginPrefetchListener.
+     *
+     * @param plugin The main plugin instance
+     */
+    public LoginPrefetchListener(HardcoreBanVelocityPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Starts the ban lookup for a player who has logged in to the proxy.
+     *
+     * @param event The login event
+     */
+    @Subscribe(order = PostOrder.LAST)
+    public void onLogin(LoginEvent event) {
+        if (!needsPrefetch()) {
+            return;
+        }
+
+        UUID uuid = event.getPlayer().getUniqueId();
+        prefetched.put(uuid, new Prefetch(plugin.getDatabaseManager().getBansAsync(uuid)));
+    }
+
+    /**
+     * Drops any unused prefetched result when a player leaves.
+     *
+     * @param event The disconnect event
+     */
+    @Subscribe
+    public void onDisconnect(DisconnectEvent event) {
+        prefetched.remove(event.getPlayer().getUniqueId());
+    }
+
+    /**
+     * Takes the prefetched bans of a player, removing them so they are only used once.
+     *
+     * @param uuid The UUID of the player
+     * @return A future of the player's bans by scope, possibly still running, or null if there is
+     *         no usable prefetched result
+     */
+    public CompletableFuture<Map<String, Long>> take(UUID uuid) {
+        Prefetch prefetch = prefetched.remove(uuid);
+        if (prefetch == null || System.currentTimeMillis() - prefetch.startedAt > MAX_AGE) {
+            return null;
+        }
+        return prefetch.bans;
+    }
+
+    /**
+     * Discards a player's prefetched result after their bans have changed.
+     *
+     * @param uuid The UUID of the player
+     */
+    public void invalidate(UUID uuid) {
+        prefetched.remove(uuid);
+    }
+
+    /**
+     * Discards every prefetched result.
+     */
+    public void invalidateAll() {
+        prefetched.clear();
+    }
+
+    private boolean needsPrefetch() {
+        for (String scope : plugin.getHardcoreServers().getScopes()) {
+            if (!plugin.getBanCache(scope).isFresh()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A ban lookup started at login.
+     */
+    private static final class Prefetch {
+        private final CompletableFuture<Map<String, Long>> bans;
+        private final long startedAt = System.currentTimeMillis();
+
+        private Prefetch(CompletableFuture<Map<String, Long>> bans) {
+            this.bans = bans;
+        }
+    }
+}
@@ -8,11 +8,19 @@ import com.velocitypowered.api.proxy.ServerConnection;
 import com.velocitypowered.api.proxy.messages.ChannelIdentifier;
 import com.velocitypowered.api.proxy.messages.MinecraftChannelIdentifier;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 
 import sh.pcx.hardcorebanelocity.HardcoreBanVelocityPlugin;
+import sh.pcx.hardcorebanelocity.cache.BanHashTree;
+import sh.pcx.hardcorebanelocity.messaging.BanSnapshotCodec;
+import sh.pcx.hardcorebanelocity.messaging.SnapshotAssembler;
 
 /**
  * Listens for plugin messages from Paper servers.
@@ -20,9 +28,15 @@ import sh.pcx.hardcorebanelocity.HardcoreBanVelocityPlugin;
  */
 public class PluginMessageListener {
 
+    // Minimum time between snapshot requests, so a burst of out-of-order deltas asks only once
+    private static final long SNAPSHOT_REQUEST_INTERVAL = 10000;
+
     private final HardcoreBanVelocityPlugin plugin;
     private final ChannelIdentifier channelId;
     private final Logger logger;
+    // Keyed by lowercase server name, since backends sharing a scope send snapshots independently
+    private final Map<String, SnapshotAssembler> snapshotAssemblers = new ConcurrentHashMap<>();
+    private final Map<String, Long> lastSnapshotRequests = new ConcurrentHashMap<>();
 
     /**
      * Creates a new PluginMessageListener.
@@ -50,21 +64,59 @@ public class PluginMessageListener {
         // Mark the message as handled
         event.setResult(PluginMessageEvent.ForwardResult.handled());
 
-        // Process the message
-        ByteArrayDataInput in = ByteStreams.newDataInput(event.getData());
+        // Only backends may speak the ban protocol; never trust a client sending on our channel
+        if (!(event.getSource() instanceof ServerConnection connection)) {
+            logger.warn("Ignoring plugin message on {} that did not come from a backend server", channelId.getId());
+            return;
+        }
+
+        handleMessage(connection.getServerInfo().getName(), event.getData());
+    }
+
+    /**
+     * Handles a ban protocol message from a Paper server, received either as a
+     * plugin message or over the direct proxy link.
+     *
+     * @param serverName The name of the backend the message came from
+     * @param data The raw message data
+     */
+    public void handleMessage(String serverName, byte[] data) {
+        ByteArrayDataInput in = ByteStreams.newDataInput(data);
         String messageType = in.readUTF();
 
-        logger.debug("Received plugin message: {}", messageType);
+        logger.debug("Received plugin message from {}: {}", serverName, messageType);
+
+        // Ban state is kept per scope; messages from servers outside every scope have nowhere to go
+        String scope = plugin.getHardcoreServers().getScope(serverName);
+        if (scope == null) {
+            logger.warn("Ignoring {} message from {}: it is not a configured hardcore server", messageType, serverName);
+            return;
+        }
 
         switch (messageType) {
             case "BAN":
-                handleBanMessage(in);
+                handleBanMessage(serverName, scope, in);
                 break;
             case "UNBAN":
-                handleUnbanMessage(in);
+                handleUnbanMessage(serverName, scope, in);
                 break;
             case "CLEAR_ALL":
-                handleClearAllMessage();
+                handleClearAllMessage(serverName, scope, in);
+                break;
+            case BanSnapshotCodec.SNAPSHOT_CHUNK:
+                handleSnapshotChunk(serverName, scope, in);
+                break;
+            case "TREE_NODES":
+                handleTreeNodes(serverName, in);
+                break;
+            case "TREE_BUCKET_DATA":
+                handleTreeBucketData(serverName, in);
+                break;
+            case "SERVER_HEALTH":
+                handleServerHealth(serverName, scope, in);
+                break;
+            case "BAN_VERSION":
+                handleBanVersion(serverName, scope, in);
                 break;
             default:
                 logger.warn("Received unknown plugin message type: {}", messageType);
@@ -73,56 +125,268 @@ public class PluginMessageListener {
     }
 
     /**
-     * Handles a BAN message from a Paper server.
+     * Handles a BAN message from a Paper server, passing it on to the other servers in its scope.
      *
+     * @param serverName The name of the backend the message came from
+     * @param scope The ban scope of that backend
      * @param in The data input stream
      */
-    private void handleBanMessage(ByteArrayDataInput in) {
+    private void handleBanMessage(String serverName, String scope, ByteArrayDataInput in) {
         try {
             String uuidStr = in.readUTF();
             UUID uuid = UUID.fromString(uuidStr);
             long expiry = in.readLong();
+            long epoch = in.readLong();
+            long sequence = in.readLong();
 
-            // Refresh ban data from database to ensure it's up-to-date
-            plugin.refreshBans();
+            // Apply the change to the cache; a gap means we missed something
+            plugin.getLoginPrefetch().invalidate(uuid);
+            plugin.getDenialCache().invalidate(uuid);
+            if (!plugin.getBanCache(scope).applyBan(serverName, epoch, sequence, uuid, expiry)) {
+                requestSnapshot(serverName);
+            }
+            plugin.getMessageSender().relayBan(scope, serverName, uuid, expiry);
 
-            logger.info("Received ban notification for player {}, expiry: {}",
-                    plugin.getPlayerName(uuid), new java.util.Date(expiry));
+            logger.info("Received ban notification for player {} in scope {}, expiry: {}",
+                    plugin.getPlayerName(uuid), scope, new java.util.Date(expiry));
         } catch (Exception e) {
             logger.error("Error processing BAN message: {}", e.getMessage());
         }
     }
 
     /**
-     * Handles an UNBAN message from a Paper server.
+     * Handles an UNBAN message from a Paper server, passing it on to the other servers in its scope.
      *
+     * @param serverName The name of the backend the message came from
+     * @param scope The ban scope of that backend
      * @param in The data input stream
      */
-    private void handleUnbanMessage(ByteArrayDataInput in) {
+    private void handleUnbanMessage(String serverName, String scope, ByteArrayDataInput in) {
         try {
             String uuidStr = in.readUTF();
             UUID uuid = UUID.fromString(uuidStr);
+            long epoch = in.readLong();
+            long sequence = in.readLong();
 
-            // Refresh ban data from database to ensure it's up-to-date
-            plugin.refreshBans();
+            // Apply the change to the cache; a gap means we missed something
+            plugin.getLoginPrefetch().invalidate(uuid);
+            plugin.getDenialCache().invalidate(uuid);
+            if (!plugin.getBanCache(scope).applyUnban(serverName, epoch, sequence, uuid)) {
+                requestSnapshot(serverName);
+            }
+            plugin.getMessageSender().relayUnban(scope, serverName, uuid);
 
-            logger.info("Received unban notification for player {}", plugin.getPlayerName(uuid));
+            logger.info("Received unban notification for player {} in scope {}", plugin.getPlayerName(uuid), scope);
         } catch (Exception e) {
             logger.error("Error processing UNBAN message: {}", e.getMessage());
         }
     }
 
     /**
-     * Handles a CLEAR_ALL message from a Paper server.
+     * Handles a CLEAR_ALL message from a Paper server, passing it on to the other servers in its scope.
+     *
+     * @param serverName The name of the backend the message came from
+     * @param scope The ban scope of that backend
+     * @param in The data input stream
      */
-    private void handleClearAllMessage() {
+    private void handleClearAllMessage(String serverName, String scope, ByteArrayDataInput in) {
         try {
-            // Refresh ban data from database to ensure it's up-to-date
-            plugin.refreshBans();
+            long epoch = in.readLong();
+            long sequence = in.readLong();
 
-            logger.info("Received clear all bans notification");
+            // Apply the change to the cache; a gap means we missed something
+            plugin.getLoginPrefetch().invalidateAll();
+            plugin.getDenialCache().invalidateAll();
+            if (!plugin.getBanCache(scope).applyClear(serverName, epoch, sequence)) {
+                requestSnapshot(serverName);
+            }
+            plugin.getMessageSender().relayClearAllBans(scope, serverName);
+
+            logger.info("Received clear all bans notification for scope {}", scope);
         } catch (Exception e) {
             logger.error("Error processing CLEAR_ALL message: {}", e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Handles one chunk of a ban snapshot from a Paper server.
+     * Once every chunk has arrived the snapshot is decoded and installed in the cache in one step.
+     *
+     * @param serverName The name of the backend the message came from
+     * @param scope The ban scope of that backend
+     * @param in The data input stream
+     */
+    private void handleSnapshotChunk(String serverName, String scope, ByteArrayDataInput in) {
+        try {
+            long epoch = in.readLong();
+            long sequence = in.readLong();
+            int snapshotId = in.readInt();
+            int index = in.readInt();
+            int total = in.readInt();
+            int length = in.readInt();
+            if (length < 0 || length > BanSnapshotCodec.CHUNK_SIZE) {
+                throw new IllegalArgumentException("Invalid snapshot chunk length " + length);
+            }
+            byte[] chunk = new byte[length];
+            in.readFully(chunk);
+
+            byte[] snapshot = snapshotAssemblers
+                    .computeIfAbsent(serverName.toLowerCase(), name -> new SnapshotAssembler())
+                    .accept(snapshotId, index, total, chunk);
+            if (snapshot == null) {
+                return;
+            }
+
+            long start = System.nanoTime();
+            Map<UUID, Long> bans = BanSnapshotCodec.decode(snapshot);
+            if (!plugin.getBanCache(scope).installSnapshot(serverName, epoch, sequence, bans)) {
+                logger.debug("Ignored ban snapshot from {}: the cache is already newer", serverName);
+                return;
+            }
+            if (plugin.getBanCache(scope).getPosition(serverName) == null) {
+                // A delta newer than the snapshot is still missing
+                requestSnapshot(serverName);
+            }
+
+            logger.info("Installed ban snapshot for scope {} from {}: {} bans, {} KB, {} ms", scope, serverName, bans.size(),
+                    snapshot.length / 1024, (System.nanoTime() - start) / 1_000_000);
+        } catch (Exception e) {
+            logger.error("Error processing SNAPSHOT_CHUNK message: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Handles hash tree node hashes sent by a Paper server during a consistency check.
+     *
+     * @param serverName The name of the backend the message came from
+     * @param in The data input stream
+     */
+    private void handleTreeNodes(String serverName, ByteArrayDataInput in) {
+        try {
+            int round = in.readInt();
+            int level = in.readByte();
+            int count = in.readInt();
+            if (level < 0 || level > BanHashTree.LEAF_LEVEL || count < 0 || count > BanHashTree.width(level)) {
+                throw new IllegalArgumentException("invalid reply for " + count + " nodes at level " + level);
+            }
+
+            Map<Integer, Long> hashes = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                hashes.put(in.readInt(), in.readLong());
+            }
+
+            plugin.getAntiEntropy().handleNodes(serverName, round, level, hashes);
+        } catch (Exception e) {
+            logger.error("Error processing TREE_NODES message: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Handles the contents of differing hash tree buckets sent by a Paper server.
+     *
+     * @param serverName The name of the backend the message came from
+     * @param in The data input stream
+     */
+    private void handleTreeBucketData(String serverName, ByteArrayDataInput in) {
+        try {
+            int round = in.readInt();
+            int bucketCount = in.readInt();
+            if (bucketCount < 0 || bucketCount > BanHashTree.BUCKETS) {
+                throw new IllegalArgumentException("invalid bucket count " + bucketCount);
+            }
+
+            Set<Integer> buckets = new HashSet<>();
+            for (int i = 0; i < bucketCount; i++) {
+                buckets.add(in.readInt());
+            }
+
+            int entryCount = in.readInt();
+            if (entryCount < 0) {
+                throw new IllegalArgumentException("invalid entry count " + entryCount);
+            }
+
+            Map<UUID, Long> entries = new HashMap<>();
+            for (int i = 0; i < entryCount; i++) {
+                UUID uuid = new UUID(in.readLong(), in.readLong());
+                long expiry = in.readLong();
+                // Only accept entries that really belong to the buckets being repaired
+                if (buckets.contains(BanHashTree.bucket(uuid))) {
+                    entries.put(uuid, expiry);
+                }
+            }
+
+            plugin.getAntiEntropy().handleBucketData(serverName, round, buckets, entries);
+        } catch (Exception e) {
+            logger.error("Error processing TREE_BUCKET_DATA message: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Handles a TPS and tick time report from a Paper server. The report also carries the version
+     * of the server's ban state, so a cache that has fallen behind catches up with a snapshot.
+     *
+     * @param serverName The name of the backend the message came from
+     * @param scope The ban scope of that backend
+     * @param in The data input stream
+     */
+    private void handleServerHealth(String serverName, String scope, ByteArrayDataInput in) {
+        try {
+            double tps = in.readDouble();
+            double mspt = in.readDouble();
+            long epoch = in.readLong();
+            long version = in.readLong();
+            plugin.getAdmission().reportHealth(serverName, tps, mspt);
+            logger.debug("Health of {}: {} TPS, {} MSPT", serverName, tps, mspt);
+
+            if (!plugin.getBanVersionFence().isCovered(serverName, scope, epoch, version)) {
+                requestSnapshot(serverName);
+            }
+        } catch (Exception e) {
+            logger.error("Error processing SERVER_HEALTH message: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Handles the version of a ban change a Paper server made for a player who has just left it.
+     * If the cache has not applied that change yet, the player's connects skip the cache until it has.
+     *
+     * @param serverName The name of the backend the message came from
+     * @param scope The ban scope of that backend
+     * @param in The data input stream
+     */
+    private void handleBanVersion(String serverName, String scope, ByteArrayDataInput in) {
+        try {
+            UUID uuid = UUID.fromString(in.readUTF());
+            long epoch = in.readLong();
+            long version = in.readLong();
+
+            if (plugin.getBanVersionFence().require(uuid, serverName, scope, epoch, version)) {
+                plugin.getLoginPrefetch().invalidate(uuid);
+                plugin.getDenialCache().invalidate(uuid);
+                logger.info("Ban cache for {} is behind {}'s ban change for {}, checking the database until it "
+                        + "catches up", scope, serverName, plugin.getPlayerName(uuid));
+                requestSnapshot(serverName);
+            }
+        } catch (Exception e) {
+            logger.error("Error processing BAN_VERSION message: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Asks a backend for a full snapshot, at most once per {@link #SNAPSHOT_REQUEST_INTERVAL} per backend.
+     *
+     * @param serverName The name of the backend to ask
+     */
+    private void requestSnapshot(String serverName) {
+        long now = System.currentTimeMillis();
+        String key = serverName.toLowerCase();
+        Long last = lastSnapshotRequests.get(key);
+        if (last != null && now - last < SNAPSHOT_REQUEST_INTERVAL) {
+            return;
+        }
+        lastSnapshotRequests.put(key, now);
+
+        logger.info("Ban updates from {} are out of sequence, requesting a snapshot", serverName);
+        plugin.getMessageSender().sendSnapshotRequest(serverName);
+    }
+}
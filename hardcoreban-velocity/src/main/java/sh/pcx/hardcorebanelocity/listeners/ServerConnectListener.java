@@ -1,21 +1,27 @@
 package sh.pcx.hardcorebanelocity.listeners;
 
+import com.velocitypowered.api.event.EventTask;
 import com.velocitypowered.api.event.PostOrder;
 import com.velocitypowered.api.event.Subscribe;
+import com.velocitypowered.api.event.connection.DisconnectEvent;
 import com.velocitypowered.api.event.player.ServerPreConnectEvent;
 import com.velocitypowered.api.proxy.Player;
 import com.velocitypowered.api.proxy.server.RegisteredServer;
 
 import net.kyori.adventure.text.minimessage.MiniMessage;
-import net.kyori.adventure.title.Title;
-import net.kyori.adventure.text.Component;
 
-import java.time.Duration;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import org.slf4j.Logger;
 
 import sh.pcx.hardcorebanelocity.HardcoreBanVelocityPlugin;
+import sh.pcx.hardcorebanelocity.cache.BanCache;
+import sh.pcx.hardcorebanelocity.cache.DenialCache;
+import sh.pcx.hardcorebanelocity.cache.SharedBanTableReader;
+import sh.pcx.hardcorebanelocity.messaging.BanCheckAssertion;
+import sh.pcx.hardcorebanelocity.util.BanMessages;
 import sh.pcx.hardcorebanelocity.util.ConfigManager;
 import sh.pcx.hardcorebanelocity.util.TimeFormatter;
 
@@ -42,83 +48,257 @@ public class ServerConnectListener {
     }
 
     /**
-     * Handles server pre-connect events. Prevents banned players from connecting to the hardcore server.
-     * Uses FIRST order to run early for ban enforcement.
+     * Handles server pre-connect events. Prevents banned players from connecting to the hardcore
+     * servers of the scope they are banned in. Uses FIRST order to run early for ban enforcement.
+     *
+     * <p>A player who was denied within the last minute is turned away from memory, and the ban
+     * messages are rate limited, so retrying in a loop costs neither lookups nor rendering.
+     * When the answer is in memory, or was prefetched at login, the event is decided on the spot.
+     * Otherwise the event waits on the prefetch still in flight or on a new database lookup, both
+     * off the event thread, so a slow database holds up only this connection, not the proxy's
+     * event pipeline.</p>
      *
      * @param event The server pre-connect event
+     * @return A task that completes once the ban check is done, or null if it is already done
      */
     @Subscribe(order = PostOrder.FIRST)
-    public void onServerPreConnect(ServerPreConnectEvent event) {
+    public EventTask onServerPreConnect(ServerPreConnectEvent event) {
         Player player = event.getPlayer();
         UUID uuid = player.getUniqueId();
         RegisteredServer targetServer = event.getOriginalServer();
 
-        // Check if this is the hardcore server
-        String hardcoreServerName = configManager.getString("hardcore-server", "world");
-        if (targetServer.getServerInfo().getName().equalsIgnoreCase(hardcoreServerName)) {
-            // Force a DB check for the player's ban status
-            if (plugin.isBanned(uuid)) {
-                long timeLeft = plugin.getTimeLeft(uuid);
+        // Check if this is a hardcore server, and which ban scope it enforces
+        String scope = plugin.getHardcoreServers().scopeOf(targetServer);
+        if (scope == null) {
+            return null;
+        }
 
-                // If ban has expired, allow connection
-                if (timeLeft <= 0) {
-                    logger.info("Ban for player {} has expired, allowing connection to hardcore server",
-                            player.getUsername());
-                    return;
-                }
+        // Repeat attempts within the same displayed minute reuse the earlier denial
+        long now = System.currentTimeMillis();
+        DenialCache.Denial denial = plugin.getDenialCache().get(uuid, scope, now);
+        if (denial != null) {
+            deny(event, player, scope, denial, now);
+            return null;
+        }
 
-                // Ban is active, deny the connection and show messages
-                showBanMessages(player, timeLeft);
+        // Taken before the lookup, so the lookup has seen at least every change up to it
+        BanCache.Position checkedAt = isTrustedProxy()
+                ? plugin.getBanCache(scope).getPosition(targetServer.getServerInfo().getName())
+                : null;
+
+        // A ban change the cache has not seen yet was made for this player; only the database has it
+        if (plugin.getBanVersionFence().isFenced(uuid, scope)) {
+            plugin.getLoginPrefetch().invalidate(uuid);
+            return await(event, player, scope, plugin.getDatabaseManager().getTimeLeftAsync(uuid, scope), null);
+        }
 
-                // Cancel the connection attempt
-                event.setResult(ServerPreConnectEvent.ServerResult.denied());
+        long timeLeft = getCachedTimeLeft(uuid, scope);
+        if (timeLeft != SharedBanTableReader.UNKNOWN) {
+            enforce(event, player, scope, timeLeft, checkedAt);
+            return null;
+        }
 
-                logger.debug("Player {} attempted to connect to hardcore server while banned for {}",
-                        player.getUsername(), TimeFormatter.formatTime(timeLeft));
+        // Use the lookup started at login, waiting for it if it is still running
+        CompletableFuture<Map<String, Long>> prefetched = plugin.getLoginPrefetch().take(uuid);
+        if (prefetched != null) {
+            if (prefetched.isDone() && !prefetched.isCompletedExceptionally()) {
+                enforce(event, player, scope, timeLeft(prefetched.join(), scope), checkedAt);
+                return null;
             }
+            return await(event, player, scope, prefetched.thenApply(bans -> timeLeft(bans, scope)), checkedAt);
         }
+
+        // Fall back to the database without blocking the event thread
+        return await(event, player, scope, plugin.getDatabaseManager().getTimeLeftAsync(uuid, scope), checkedAt);
+    }
+
+    /**
+     * Creates a task that resumes the event once a pending ban lookup completes.
+     *
+     * @param event The server pre-connect event
+     * @param player The connecting player
+     * @param scope The ban scope of the target server
+     * @param timeLeft The pending time left on the player's ban in milliseconds
+     * @param checkedAt The target server's stream position before the lookup, or null
+     * @return The task
+     */
+    private EventTask await(ServerPreConnectEvent event, Player player, String scope, CompletableFuture<Long> timeLeft,
+                            BanCache.Position checkedAt) {
+        return EventTask.resumeWhenComplete(timeLeft
+                .thenAccept(millis -> enforce(event, player, scope, millis, checkedAt))
+                .exceptionally(e -> {
+                    logger.error("Failed to check ban for {}: {}", player.getUsername(), e.getMessage());
+                    failClosed(event, player);
+                    return null;
+                }));
+    }
+
+    /**
+     * Handles a connection whose ban status could not be determined: with ban-cache.fail-closed
+     * set the player is kept out, since an outage must not let banned players in.
+     *
+     * @param event The server pre-connect event
+     * @param player The connecting player
+     */
+    private void failClosed(ServerPreConnectEvent event, Player player) {
+        if (!configManager.getBoolean("ban-cache.fail-closed", true)) {
+            return;
+        }
+
+        event.setResult(ServerPreConnectEvent.ServerResult.denied());
+        player.sendMessage(miniMessage.deserialize(configManager.getString("messages.ban-check-unavailable",
+                "<red>Bans cannot be checked right now. Please try the hardcore server again shortly.")));
+    }
+
+    /**
+     * Forgets a player's remembered denial when they leave the proxy.
+     *
+     * @param event The disconnect event
+     */
+    @Subscribe
+    public void onDisconnect(DisconnectEvent event) {
+        plugin.getDenialCache().invalidate(event.getPlayer().getUniqueId());
+    }
+
+    /**
+     * Denies the connection and shows the ban messages if the player's ban is still active,
+     * remembering the denial for repeat attempts. Otherwise, in trusted-proxy mode, tells the
+     * target server the player has been checked.
+     *
+     * @param event The server pre-connect event
+     * @param player The connecting player
+     * @param scope The ban scope of the target server
+     * @param timeLeft The time left on the player's ban in milliseconds
+     * @param checkedAt The target server's stream position before the lookup, or null
+     */
+    private void enforce(ServerPreConnectEvent event, Player player, String scope, long timeLeft,
+                         BanCache.Position checkedAt) {
+        if (timeLeft <= 0) {
+            if (checkedAt != null) {
+                vouch(event.getOriginalServer(), player, scope, checkedAt);
+            }
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        deny(event, player, scope, createDenial(player.getUniqueId(), scope, timeLeft, now), now);
+
+        logger.debug("Player {} attempted to connect to hardcore server while banned for {}",
+                player.getUsername(), TimeFormatter.formatTime(timeLeft));
+    }
+
+    /**
+     * Cancels the connection attempt and shows the ban messages, unless the player has been
+     * sent them too recently. With the waiting room enabled the player is sent to the lobby
+     * instead and queued for the hardcore server.
+     *
+     * @param event The server pre-connect event
+     * @param player The connecting player
+     * @param scope The ban scope of the target server
+     * @param denial The player's denial
+     * @param now The current time
+     */
+    private void deny(ServerPreConnectEvent event, Player player, String scope, DenialCache.Denial denial, long now) {
+        RegisteredServer lobby = plugin.getWaitingRoom().park(player, event.getOriginalServer(), scope,
+                denial.getExpiry());
+        event.setResult(lobby != null
+                ? ServerPreConnectEvent.ServerResult.allowed(lobby)
+                : ServerPreConnectEvent.ServerResult.denied());
+
+        if (denial.tryNotify(now)) {
+            player.showTitle(denial.getTitle());
+            player.sendMessage(denial.getChat());
+        }
+    }
+
+    /**
+     * Sends the target server a signed statement that the player's ban has been checked,
+     * so it can skip its own lookup when the player joins. Without the proxy link or another
+     * player on the server to carry it, nothing is sent and the server checks as usual.
+     *
+     * @param target The hardcore server the player is joining
+     * @param player The connecting player
+     * @param scope The ban scope of the target server
+     * @param checkedAt The target server's stream position before the lookup
+     */
+    private void vouch(RegisteredServer target, Player player, String scope, BanCache.Position checkedAt) {
+        String serverName = target.getServerInfo().getName();
+        byte[] assertion = BanCheckAssertion.encode(configManager.getString("proxy-link.secret", ""),
+                player.getUniqueId(), scope, checkedAt);
+        if (plugin.getMessageSender().sendToServer(serverName, assertion)) {
+            logger.debug("Told {} that {} has been ban checked", serverName, player.getUsername());
+        }
+    }
+
+    /**
+     * Checks if hardcore servers are told which players the proxy has already ban checked.
+     * Needs the proxy-link secret to sign the statements.
+     *
+     * @return true if trusted-proxy mode is enabled and a secret is set
+     */
+    private boolean isTrustedProxy() {
+        if (!configManager.getBoolean("trusted-proxy.enabled", false)) {
+            return false;
+        }
+        String secret = configManager.getString("proxy-link.secret", "");
+        return !secret.isEmpty() && !secret.equals("change-me");
+    }
+
+    /**
+     * Gets the time left on a ban in a scope from a player's bans by scope.
+     *
+     * @param bans The player's ban expiry times by scope
+     * @param scope The ban scope of the target server
+     * @return The time left in milliseconds, or 0 if the player is not banned in the scope
+     */
+    private long timeLeft(Map<String, Long> bans, String scope) {
+        return Math.max(0, bans.getOrDefault(scope, 0L) - System.currentTimeMillis());
+    }
+
+    /**
+     * Gets the time left on a player's ban in a scope from memory, from the shared-memory table
+     * and the proxy's ban cache.
+     *
+     * <p>The table only has what its backend last published, so it lags behind bans written by
+     * the proxy or by other backends in the scope. A player missing from the table is therefore
+     * only taken as unbanned if the cache has no ban for them either; the later of the two
+     * expiries wins. Without a table, the cache answers if it is filled and not too stale.</p>
+     *
+     * @param uuid The UUID of the player
+     * @param scope The ban scope of the target server
+     * @return The time left in milliseconds, 0 if the player is not banned, or
+     *         {@link SharedBanTableReader#UNKNOWN} if only the database can answer
+     */
+    private long getCachedTimeLeft(UUID uuid, String scope) {
+        BanCache banCache = plugin.getBanCache(scope);
+        long now = System.currentTimeMillis();
+
+        SharedBanTableReader sharedBanTable = plugin.getSharedBanTable(scope);
+        if (sharedBanTable != null) {
+            long expiry = sharedBanTable.lookup(uuid);
+            if (expiry != SharedBanTableReader.UNKNOWN) {
+                return Math.max(0, Math.max(expiry, banCache.getExpiry(uuid)) - now);
+            }
+        }
+
+        if (banCache.isFresh()) {
+            return Math.max(0, banCache.getExpiry(uuid) - now);
+        }
+
+        return SharedBanTableReader.UNKNOWN;
     }
 
     /**
-     * Shows ban notification messages to a player.
-     * Displays both a title and a chat message.
+     * Looks up the ban title and chat message for a player and remembers the denial.
      *
-     * @param player The player to show messages to
+     * @param uuid The UUID of the player
+     * @param scope The ban scope of the target server
      * @param timeLeft The time left on the ban in milliseconds
+     * @param now The current time
+     * @return The remembered denial
      */
-    private void showBanMessages(Player player, long timeLeft) {
-        String formattedTime = TimeFormatter.formatDisplayTime(timeLeft);
-
-        // Get the configured messages
-        String titleMessageStr = configManager.getString("messages.title-banned",
-                "<red>Hardcore Mode Banned");
-        String subtitleMessageStr = configManager.getString("messages.subtitle-banned",
-                "<yellow>Ban expires in {time}");
-        String chatMessageStr = configManager.getString("messages.chat-banned",
-                "<red>You cannot connect to the hardcore server for {time}.");
-
-        // Replace placeholders
-        subtitleMessageStr = subtitleMessageStr.replace("{time}", formattedTime);
-        chatMessageStr = chatMessageStr.replace("{time}", formattedTime);
-
-        // Create title components
-        Component titleComponent = miniMessage.deserialize(titleMessageStr);
-        Component subtitleComponent = miniMessage.deserialize(subtitleMessageStr);
-        Component chatComponent = miniMessage.deserialize(chatMessageStr);
-
-        // Create and show title
-        Title title = Title.title(
-                titleComponent,
-                subtitleComponent,
-                Title.Times.of(
-                        Duration.ofMillis(500),   // Fade in
-                        Duration.ofMillis(3000),  // Stay
-                        Duration.ofMillis(500)    // Fade out
-                )
-        );
-
-        // Show messages to the player
-        player.showTitle(title);
-        player.sendMessage(chatComponent);
+    private DenialCache.Denial createDenial(UUID uuid, String scope, long timeLeft, long now) {
+        BanMessages.Rendered messages = plugin.getBanMessages().render(timeLeft);
+        return plugin.getDenialCache().put(uuid, scope, timeLeft, now, messages.getTitle(), messages.getChat());
     }
 }
\ No newline at end of file
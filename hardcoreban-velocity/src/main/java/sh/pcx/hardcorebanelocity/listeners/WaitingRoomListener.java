@@ -0,0 +1,262 @@
+package sh.pcx.hardcorebanelocity.listeners;
+
+import com.velocitypowered.api.event.Subscribe;
+import com.velocitypowered.api.event.connection.DisconnectEvent;
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.ServerConnection;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import com.velocitypowered.api.scheduler.ScheduledTask;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.TextReplacementConfig;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+
+import sh.pcx.hardcorebanelocity.HardcoreBanVelocityPlugin;
+import sh.pcx.hardcorebanelocity.events.BanExpiredEvent;
+import sh.pcx.hardcorebanelocity.util.ConfigManager;
+import sh.pcx.hardcorebanelocity.util.TimeFormatter;
+
+/**
+ * Parks banned players on a lobby server and sends them on to the hardcore server they tried
+ * to join as soon as their ban ends.
+ *
+ * <p>Waiting players are kept in a queue ordered by ban expiry. One repeating task walks the
+ * queue: it moves on everyone whose ban has run out and shows the others their countdown in
+ * the action bar, rendering each distinct countdown once. A {@link BanExpiredEvent} moves the
+ * player on at once rather than at the next tick. A player whose ban was extended meanwhile is
+ * turned away by the ban check again and re-queued with the new expiry.</p>
+ */
+public class WaitingRoomListener {
+
+    private static final Comparator<Waiter> BY_EXPIRY = Comparator
+            .comparingLong((Waiter waiter) -> waiter.expiry)
+            .thenComparing(waiter -> waiter.uuid);
+
+    private final HardcoreBanVelocityPlugin plugin;
+    private final ConfigManager configManager;
+    // The countdown message, parsed once with {time} left in as text
+    private final Component countdownTemplate;
+    private final NavigableSet<Waiter> queue = new ConcurrentSkipListSet<>(BY_EXPIRY);
+    private final Map<UUID, Waiter> waiters = new HashMap<>(); // guarded by this
+    private ScheduledTask task;
+
+    /**
+     * Creates a new WaitingRoomListener.
+     *
+     * @param plugin The main plugin instance
+     */
+    public WaitingRoomListener(HardcoreBanVelocityPlugin plugin) {
+        this.plugin = plugin;
+        this.configManager = plugin.getConfigManager();
+        this.countdownTemplate = plugin.getMiniMessage().deserialize(configManager.getString(
+                "messages.waiting-room-countdown", "<yellow>Hardcore server in <white>{time}"));
+    }
+
+    /**
+     * Starts the countdown task, if the waiting room is enabled in the config.
+     */
+    public void start() {
+        if (!isEnabled()) {
+            return;
+        }
+
+        long interval = Math.max(1, configManager.getInt("waiting-room.update-seconds", 1));
+        task = plugin.getServer().getScheduler().buildTask(plugin, this::tick)
+                .repeat(interval, TimeUnit.SECONDS)
+                .schedule();
+    }
+
+    /**
+     * Stops the countdown task.
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+        }
+    }
+
+    /**
+     * Checks if banned players are parked on the lobby.
+     *
+     * @return true if the waiting room is enabled
+     */
+    public boolean isEnabled() {
+        return configManager.getBoolean("waiting-room.enabled", false);
+    }
+
+    /**
+     * Queues a banned player for the hardcore server they tried to join.
+     *
+     * @param player The banned player
+     * @param target The hardcore server they tried to join
+     * @param scope The ban scope of that server
+     * @param expiry The time their ban expires
+     * @return The lobby to send the player to, or null if they are already there or there is no lobby
+     */
+    public RegisteredServer park(Player player, RegisteredServer target, String scope, long expiry) {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        Optional<RegisteredServer> lobby = plugin.getServer().getServer(
+                configManager.getString("waiting-room.lobby-server", "lobby"));
+        if (lobby.isEmpty()) {
+            plugin.getLogger().warn("Waiting room lobby server '{}' is not registered with the proxy",
+                    configManager.getString("waiting-room.lobby-server", "lobby"));
+            return null;
+        }
+
+        Waiter waiter = new Waiter(player.getUniqueId(), target, scope, expiry);
+        Waiter previous;
+        synchronized (this) {
+            previous = waiters.put(waiter.uuid, waiter);
+            if (previous != null) {
+                queue.remove(previous);
+            }
+            queue.add(waiter);
+        }
+
+        if (previous == null || previous.target != target) {
+            player.sendMessage(plugin.getMiniMessage().deserialize(configManager.getString(
+                    "messages.waiting-room-parked",
+                    "<yellow>You will be sent to the hardcore server automatically when your ban ends.")));
+        }
+
+        return isOn(player, lobby.get()) ? null : lobby.get();
+    }
+
+    /**
+     * Sends a waiting player on as soon as their ban expires.
+     *
+     * @param event The ban expired event
+     */
+    @Subscribe
+    public void onBanExpired(BanExpiredEvent event) {
+        release(event.getUuid(), event.getScope());
+    }
+
+    /**
+     * Sends a waiting player on at once because their ban in a scope has ended early.
+     *
+     * @param uuid The UUID of the player
+     * @param scope The ban scope the ban was lifted in
+     */
+    public void release(UUID uuid, String scope) {
+        Waiter waiter;
+        synchronized (this) {
+            waiter = waiters.get(uuid);
+            if (waiter == null || !waiter.scope.equals(scope)) {
+                return;
+            }
+            remove(waiter);
+        }
+        transfer(waiter);
+    }
+
+    /**
+     * Removes a player from the queue when they leave the proxy.
+     *
+     * @param event The disconnect event
+     */
+    @Subscribe
+    public void onDisconnect(DisconnectEvent event) {
+        synchronized (this) {
+            Waiter waiter = waiters.get(event.getPlayer().getUniqueId());
+            if (waiter != null) {
+                remove(waiter);
+            }
+        }
+    }
+
+    /**
+     * Moves on every player whose ban has run out and shows the rest their countdown.
+     */
+    private void tick() {
+        long now = System.currentTimeMillis();
+
+        while (true) {
+            Waiter due;
+            synchronized (this) {
+                due = queue.isEmpty() ? null : queue.first();
+                if (due == null || due.expiry > now) {
+                    break;
+                }
+                remove(due);
+            }
+            transfer(due);
+        }
+
+        // Waiters are in expiry order, so players sharing a countdown are next to each other
+        String lastTime = null;
+        Component countdown = null;
+        for (Waiter waiter : queue) {
+            String time = TimeFormatter.formatCountdown(waiter.expiry - now);
+            if (!time.equals(lastTime)) {
+                countdown = countdownTemplate.replaceText(TextReplacementConfig.builder()
+                        .matchLiteral("{time}")
+                        .replacement(time)
+                        .build());
+                lastTime = time;
+            }
+
+            Optional<Player> player = plugin.getServer().getPlayer(waiter.uuid);
+            if (player.isPresent()) {
+                player.get().sendActionBar(countdown);
+            }
+        }
+    }
+
+    /**
+     * Sends a player whose ban has ended to the hardcore server they were waiting for,
+     * if they are still online and still on the lobby.
+     */
+    private void transfer(Waiter waiter) {
+        Optional<Player> player = plugin.getServer().getPlayer(waiter.uuid);
+        Optional<RegisteredServer> lobby = plugin.getServer().getServer(
+                configManager.getString("waiting-room.lobby-server", "lobby"));
+        if (player.isEmpty() || lobby.isEmpty() || !isOn(player.get(), lobby.get())) {
+            return;
+        }
+
+        plugin.getLogger().debug("Sending {} from the waiting room to {}", player.get().getUsername(),
+                waiter.target.getServerInfo().getName());
+        player.get().createConnectionRequest(waiter.target).fireAndForget();
+    }
+
+    private boolean isOn(Player player, RegisteredServer server) {
+        return player.getCurrentServer()
+                .map(ServerConnection::getServer)
+                .map(current -> current.equals(server))
+                .orElse(false);
+    }
+
+    private void remove(Waiter waiter) {
+        waiters.remove(waiter.uuid, waiter);
+        queue.remove(waiter);
+    }
+
+    /**
+     * A player waiting for their ban to end.
+     */
+    private static final class Waiter {
+        private final UUID uuid;
+        private final RegisteredServer target;
+        private final String scope;
+        private final long expiry;
+
+        private Waiter(UUID uuid, RegisteredServer target, String scope, long expiry) {
+            this.uuid = uuid;
+            this.target = target;
+            this.scope = scope;
+            this.expiry = expiry;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package sh.pcx.hardcorebanelocity.messaging;
+
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import sh.pcx.hardcorebanelocity.HardcoreBanVelocityPlugin;
+import sh.pcx.hardcorebanelocity.cache.BanCache;
+import sh.pcx.hardcorebanelocity.cache.BanHashTree;
+
+/**
+ * Periodically checks that the proxy's ban cache for each scope matches the hardcore backends in it.
+ *
+ * <p>A round starts by comparing root hashes, then asks the backend only for the children
+ * of nodes that differ, level by level, until it reaches the leaf buckets. The backend then
+ * sends the contents of just those buckets and the cache is repaired in place. A round that
+ * finds too many differing buckets asks for a full snapshot instead. Each backend has its
+ * own round, so checks against several backends can run at the same time.</p>
+ */
+public class AntiEntropy {
+
+    // Beyond this many differing buckets a snapshot is cheaper than a repair
+    private static final int MAX_REPAIR_BUCKETS = 32;
+    private static final long ROUND_TIMEOUT = 30000;
+
+    private final HardcoreBanVelocityPlugin plugin;
+    private final Logger logger;
+
+    // Rounds by lowercase server name; guarded by this
+    private final Map<String, Round> rounds = new HashMap<>();
+    private int nextRound;
+
+    /**
+     * Creates a new AntiEntropy instance.
+     *
+     * @param plugin The main plugin instance
+     */
+    public AntiEntropy(HardcoreBanVelocityPlugin plugin) {
+        this.plugin = plugin;
+        this.logger = plugin.getLogger();
+    }
+
+    /**
+     * Starts a consistency check against a backend, unless one is already in progress with it.
+     *
+     * @param targetServer The name of the backend to compare with
+     */
+    public synchronized void start(String targetServer) {
+        String scope = plugin.getHardcoreServers().getScope(targetServer);
+        if (scope == null) {
+            return;
+        }
+
+        BanCache banCache = plugin.getBanCache(scope);
+        if (!banCache.isSynced()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        String key = targetServer.toLowerCase();
+        Round current = rounds.get(key);
+        if (current != null && now - current.startedAt < ROUND_TIMEOUT) {
+            return;
+        }
+
+        Round round = new Round(++nextRound, now, targetServer, banCache, banCache.buildHashTree());
+        rounds.put(key, round);
+
+        if (!sendQuery(round, 0, List.of(0))) {
+            rounds.remove(key);
+        }
+    }
+
+    /**
+     * Handles node hashes sent by the backend and descends into the ones that differ.
+     *
+     * @param sourceServer The backend the hashes came from
+     * @param replyRound The round the hashes belong to
+     * @param level The tree level of the nodes
+     * @param hashes The backend's node hashes by node index
+     */
+    public synchronized void handleNodes(String sourceServer, int replyRound, int level, Map<Integer, Long> hashes) {
+        Round round = current(sourceServer, replyRound);
+        if (round == null || level < 0 || level > BanHashTree.LEAF_LEVEL) {
+            return;
+        }
+        String serverName = round.serverName;
+
+        List<Integer> mismatched = new ArrayList<>();
+        for (Map.Entry<Integer, Long> entry : hashes.entrySet()) {
+            int index = entry.getKey();
+            if (index >= 0 && index < BanHashTree.width(level)
+                    && round.localTree.getHash(level, index) != entry.getValue()) {
+                mismatched.add(index);
+            }
+        }
+
+        if (mismatched.isEmpty()) {
+            logger.debug("Ban cache is consistent with {}", serverName);
+            round.banCache.markValidated();
+            finish(round);
+            return;
+        }
+
+        if (mismatched.size() > MAX_REPAIR_BUCKETS) {
+            logger.info("Ban cache differs from {} in {} tree nodes at level {}, requesting a snapshot",
+                    serverName, mismatched.size(), level);
+            plugin.getMessageSender().sendSnapshotRequest(serverName);
+            finish(round);
+            return;
+        }
+
+        if (level == BanHashTree.LEAF_LEVEL) {
+            sendBucketRequest(round, mismatched);
+            return;
+        }
+
+        List<Integer> children = new ArrayList<>(mismatched.size() * BanHashTree.FANOUT);
+        for (int index : mismatched) {
+            for (int child = 0; child < BanHashTree.FANOUT; child++) {
+                children.add(index * BanHashTree.FANOUT + child);
+            }
+        }
+        if (!sendQuery(round, level + 1, children)) {
+            finish(round);
+        }
+    }
+
+    /**
+     * Repairs the cache from the backend's copy of the differing buckets, ending the round.
+     *
+     * @param sourceServer The backend the data came from
+     * @param replyRound The round the data belongs to
+     * @param buckets The buckets the data covers
+     * @param entries The backend's active bans in those buckets
+     */
+    public synchronized void handleBucketData(String sourceServer, int replyRound, Set<Integer> buckets,
+                                              Map<UUID, Long> entries) {
+        Round round = current(sourceServer, replyRound);
+        if (round == null) {
+            return;
+        }
+        finish(round);
+
+        int changed = round.banCache.repairBuckets(round.serverName, buckets, entries);
+        logger.info("Repaired {} bans in {} buckets that differed from {}", changed, buckets.size(), round.serverName);
+    }
+
+    private Round current(String sourceServer, int replyRound) {
+        Round round = rounds.get(sourceServer.toLowerCase());
+        return round != null && round.id == replyRound ? round : null;
+    }
+
+    private void finish(Round round) {
+        rounds.remove(round.serverName.toLowerCase(), round);
+    }
+
+    private boolean sendQuery(Round round, int level, List<Integer> indices) {
+        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.writeUTF("TREE_QUERY");
+        out.writeInt(round.id);
+        out.writeByte(level);
+        out.writeInt(indices.size());
+        for (int index : indices) {
+            out.writeInt(index);
+        }
+        return plugin.getMessageSender().sendToServer(round.serverName, out.toByteArray());
+    }
+
+    private void sendBucketRequest(Round round, List<Integer> buckets) {
+        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.writeUTF("TREE_BUCKETS");
+        out.writeInt(round.id);
+        out.writeInt(buckets.size());
+        for (int bucket : buckets) {
+            out.writeInt(bucket);
+        }
+        if (!plugin.getMessageSender().sendToServer(round.serverName, out.toByteArray())) {
+            finish(round);
+        }
+    }
+
+    /**
+     * A consistency check in progress with one backend.
+     */
+    private static final class Round {
+        private final int id;
+        private final long startedAt;
+        private final String serverName;
+        private final BanCache banCache;
+        private final BanHashTree localTree;
+
+        private Round(int id, long startedAt, String serverName, BanCache banCache, BanHashTree localTree) {
+            this.id = id;
+            this.startedAt = startedAt;
+            this.serverName = serverName;
+            this.banCache = banCache;
+            this.localTree = localTree;
+        }
+    }
+}
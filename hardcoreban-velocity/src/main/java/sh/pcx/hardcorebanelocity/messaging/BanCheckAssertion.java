@@ -0,0 +1,73 @@
+package sh.pcx.hardcorebanelocity.messaging;
+
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.UUID;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import sh.pcx.hardcorebanelocity.cache.BanCache;
+
+/**
+ * Builds the signed statement the proxy sends a hardcore server when it lets a player through,
+ * saying it has already checked the player's ban, so the server can skip its own lookup.
+ *
+ * <p>The statement names the player, the ban scope, when it was issued, and the position in the
+ * server's own change stream the proxy had applied when it checked. The server only trusts it
+ * if that position covers every ban change it has made itself. It is signed with an
+ * HMAC-SHA256 of the shared proxy-link secret, because a player's client can also send messages
+ * on the plugin channel. The layout must match {@code BanCheckAssertions} in the Paper plugin.</p>
+ */
+public final class BanCheckAssertion {
+
+    /** The message type of a ban check assertion. */
+    public static final String BAN_CHECKED = "BAN_CHECKED";
+
+    private BanCheckAssertion() {
+    }
+
+    /**
+     * Builds a signed ban check assertion for a player who is not banned.
+     *
+     * @param secret The shared secret
+     * @param uuid The UUID of the player
+     * @param scope The ban scope that was checked
+     * @param position The position in the target server's change stream the check saw
+     * @return The message data
+     */
+    public static byte[] encode(String secret, UUID uuid, String scope, BanCache.Position position) {
+        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.writeUTF(BAN_CHECKED);
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+        out.writeUTF(scope);
+        out.writeLong(System.currentTimeMillis());
+        out.writeLong(position.getEpoch());
+        out.writeLong(position.getSequence());
+
+        byte[] unsigned = out.toByteArray();
+        out.write(sign(secret, unsigned));
+        return out.toByteArray();
+    }
+
+    /**
+     * Computes the signature of an assertion.
+     *
+     * @param secret The shared secret
+     * @param data Everything in the message before the signature
+     * @return The HMAC-SHA256 of the data
+     */
+    private static byte[] sign(String secret, byte[] data) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            return mac.doFinal(data);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package sh.pcx.hardcorebanelocity.messaging;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Encodes the complete set of active bans into a compact, compressed snapshot.
+ * Entries are sorted by UUID so the most significant halves can be delta-encoded,
+ * and expiries are stored as zigzag varint deltas from the previous entry.
+ * The format must match {@code BanSnapshotCodec} in the Paper plugin.
+ */
+public final class BanSnapshotCodec {
+
+    /** Message type of a snapshot chunk. */
+    public static final String SNAPSHOT_CHUNK = "SNAPSHOT_CHUNK";
+
+    /** Message type of a request for a fresh snapshot. */
+    public static final String SNAPSHOT_REQUEST = "SNAPSHOT_REQUEST";
+
+    /** Maximum chunk size; keeps each chunk well inside the plugin message limit. */
+    public static final int CHUNK_SIZE = 30000;
+
+    private static final int FORMAT = 1;
+    private static final int MAX_ENTRIES = 2_000_000;
+
+    private static final Comparator<UUID> UNSIGNED_ORDER = (a, b) -> {
+        int result = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+        return result != 0 ? result
+                : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+    };
+
+    private BanSnapshotCodec() {
+    }
+
+    /**
+     * Encodes a set of bans.
+     *
+     * @param bans The bans mapped to their expiry times
+     * @return The compressed snapshot
+     */
+    public static byte[] encode(Map<UUID, Long> bans) {
+        List<UUID> uuids = new ArrayList<>(bans.keySet());
+        uuids.sort(UNSIGNED_ORDER);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(uuids.size() * 16 + 16);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            out.writeByte(FORMAT);
+            writeVarLong(out, uuids.size());
+
+            long previousMsb = 0;
+            long previousExpiry = 0;
+            for (UUID uuid : uuids) {
+                long expiry = bans.get(uuid);
+                writeVarLong(out, uuid.getMostSignificantBits() - previousMsb);
+                out.writeLong(uuid.getLeastSignificantBits());
+                writeVarLong(out, zigzag(expiry - previousExpiry));
+                previousMsb = uuid.getMostSignificantBits();
+                previousExpiry = expiry;
+            }
+        } catch (IOException e) {
+            // Cannot happen when writing to memory
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a snapshot produced by {@link #encode(Map)}.
+     *
+     * @param data The compressed snapshot
+     * @return The bans mapped to their expiry times
+     * @throws IOException If the snapshot is malformed
+     */
+    public static Map<UUID, Long> decode(byte[] data) throws IOException {
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(data)))) {
+            int format = in.readUnsignedByte();
+            if (format != FORMAT) {
+                throw new IOException("Unsupported snapshot format " + format);
+            }
+
+            long count = readVarLong(in);
+            if (count < 0 || count > MAX_ENTRIES) {
+                throw new IOException("Snapshot claims " + count + " entries");
+            }
+
+            Map<UUID, Long> bans = new HashMap<>((int) (count * 4 / 3) + 1);
+            long msb = 0;
+            long expiry = 0;
+            for (long i = 0; i < count; i++) {
+                msb += readVarLong(in);
+                long lsb = in.readLong();
+                expiry += unzigzag(readVarLong(in));
+                bans.put(new UUID(msb, lsb), expiry);
+            }
+            return bans;
+        }
+    }
+
+    /**
+     * Splits a snapshot into chunks of at most {@link #CHUNK_SIZE} bytes.
+     *
+     * @param data The compressed snapshot
+     * @return The chunks, in order; never empty
+     */
+    public static List<byte[]> split(byte[] data) {
+        List<byte[]> chunks = new ArrayList<>();
+        for (int offset = 0; offset < data.length; offset += CHUNK_SIZE) {
+            chunks.add(Arrays.copyOfRange(data, offset, Math.min(data.length, offset + CHUNK_SIZE)));
+        }
+        if (chunks.isEmpty()) {
+            chunks.add(new byte[0]);
+        }
+        return chunks;
+    }
+
+    private static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Truncated snapshot");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in snapshot");
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
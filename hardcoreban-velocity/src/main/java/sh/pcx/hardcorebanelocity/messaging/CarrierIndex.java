@@ -0,0 +1,115 @@
+package sh.pcx.hardcorebanelocity.messaging;
+
+import com.velocitypowered.api.event.Subscribe;
+import com.velocitypowered.api.event.connection.DisconnectEvent;
+import com.velocitypowered.api.event.player.ServerConnectedEvent;
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.ServerConnection;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks which players are connected to each backend, so a plugin message to a backend can be
+ * handed to one of its connections without scanning every player on the proxy.
+ *
+ * <p>Kept current from connection events. Carriers are taken in turn, so no single player's
+ * connection carries every message. A player's entry is updated when their server switch
+ * begins, so the chosen player's current connection is checked before it is used and a player
+ * still mid-switch is skipped.</p>
+ */
+public class CarrierIndex {
+
+    private final Map<String, Carriers> byServer = new ConcurrentHashMap<>();
+    private final Map<UUID, String> serverOf = new ConcurrentHashMap<>();
+
+    /**
+     * Moves a player to the index of the backend they connected to.
+     *
+     * @param event The server connected event
+     */
+    @Subscribe
+    public void onServerConnected(ServerConnectedEvent event) {
+        Player player = event.getPlayer();
+        String serverName = event.getServer().getServerInfo().getName().toLowerCase();
+        String previous = serverOf.put(player.getUniqueId(), serverName);
+        if (previous != null) {
+            carriers(previous).remove(player);
+        }
+        carriers(serverName).add(player);
+    }
+
+    /**
+     * Removes a player from the index when they leave the proxy.
+     *
+     * @param event The disconnect event
+     */
+    @Subscribe
+    public void onDisconnect(DisconnectEvent event) {
+        Player player = event.getPlayer();
+        String previous = serverOf.remove(player.getUniqueId());
+        if (previous != null) {
+            carriers(previous).remove(player);
+        }
+    }
+
+    /**
+     * Picks the next connection to a backend that can carry a plugin message.
+     *
+     * @param serverName The name of the backend
+     * @return A live connection to the backend, or empty if no player is on it
+     */
+    public Optional<ServerConnection> next(String serverName) {
+        Carriers carriers = byServer.get(serverName.toLowerCase());
+        return carriers == null ? Optional.empty() : carriers.next(serverName);
+    }
+
+    private Carriers carriers(String serverName) {
+        return byServer.computeIfAbsent(serverName, name -> new Carriers());
+    }
+
+    /**
+     * The players on one backend, in an array for round-robin selection with swap removal.
+     */
+    private static final class Carriers {
+        private final List<Player> players = new ArrayList<>();
+        private final Map<UUID, Integer> positions = new HashMap<>();
+        private int cursor;
+
+        private synchronized void add(Player player) {
+            if (positions.putIfAbsent(player.getUniqueId(), players.size()) == null) {
+                players.add(player);
+            }
+        }
+
+        private synchronized void remove(Player player) {
+            Integer position = positions.remove(player.getUniqueId());
+            if (position == null) {
+                return;
+            }
+
+            // Move the last player into the gap so removal stays O(1)
+            Player last = players.remove(players.size() - 1);
+            if (position < players.size()) {
+                players.set(position, last);
+                positions.put(last.getUniqueId(), position);
+            }
+        }
+
+        private synchronized Optional<ServerConnection> next(String serverName) {
+            for (int tries = players.size(); tries > 0; tries--) {
+                cursor = (cursor + 1) % players.size();
+                Optional<ServerConnection> connection = players.get(cursor).getCurrentServer();
+                if (connection.isPresent() && connection.get().getServerInfo().getName().equalsIgnoreCase(serverName)) {
+                    return connection;
+                }
+            }
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package sh.pcx.hardcorebanelocity.messaging;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * A non-blocking, length-prefixed framed connection used by the direct proxy link.
+ * Each frame is a 4-byte big-endian length followed by a payload in the same
+ * format as a plugin message (a UTF message type followed by its fields).
+ */
+public class LinkConnection {
+
+    /** Largest frame either side will accept, including frames sent before authentication. */
+    public static final int MAX_FRAME_SIZE = 1 << 20;
+
+    // Control message types, never passed on to the ban protocol handlers
+    public static final String CHALLENGE = "LINK_CHALLENGE";
+    public static final String AUTH = "LINK_AUTH";
+    public static final String AUTH_OK = "LINK_AUTH_OK";
+    public static final String PING = "LINK_PING";
+    public static final String PONG = "LINK_PONG";
+
+    /** Length of the handshake nonces; fixed so a signed nonce and name cannot be re-split. */
+    public static final int NONCE_LENGTH = 32;
+
+    // Signed with the backend's name in the proxy's answer, so a backend's own signature never passes for it
+    private static final String PROXY_PROOF = "LINK_PROXY:";
+
+    private final SocketChannel channel;
+    private final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<>();
+    private ByteBuffer readBuffer = ByteBuffer.allocate(8192);
+    private volatile long lastRead;
+    private volatile long lastWrite;
+
+    /**
+     * Creates a new LinkConnection around a channel that is already in non-blocking mode.
+     *
+     * @param channel The socket channel
+     */
+    public LinkConnection(SocketChannel channel) {
+        this.channel = channel;
+        this.lastRead = System.currentTimeMillis();
+        this.lastWrite = lastRead;
+    }
+
+    /**
+     * Queues a payload to be written as a single frame.
+     * Safe to call from any thread; the selector thread performs the actual write.
+     *
+     * @param payload The frame payload
+     */
+    public void queue(byte[] payload) {
+        ByteBuffer frame = ByteBuffer.allocate(4 + payload.length);
+        frame.putInt(payload.length);
+        frame.put(payload);
+        frame.flip();
+        writeQueue.add(frame);
+    }
+
+    /**
+     * Checks if there are frames waiting to be written.
+     *
+     * @return true if the write queue is not empty
+     */
+    public boolean hasPendingWrites() {
+        return !writeQueue.isEmpty();
+    }
+
+    /**
+     * Writes as many queued frames as the socket accepts without blocking.
+     *
+     * @return true if the queue was fully drained
+     * @throws IOException If the write fails
+     */
+    public boolean flush() throws IOException {
+        ByteBuffer buffer;
+        while ((buffer = writeQueue.peek()) != null) {
+            channel.write(buffer);
+            if (buffer.hasRemaining()) {
+                return false;
+            }
+            writeQueue.poll();
+            lastWrite = System.currentTimeMillis();
+        }
+        return true;
+    }
+
+    /**
+     * Reads available bytes and extracts every complete frame.
+     *
+     * @return The complete frame payloads, or null if the peer closed the connection
+     * @throws IOException If the read fails or a frame exceeds {@link #MAX_FRAME_SIZE}
+     */
+    public List<byte[]> read() throws IOException {
+        int bytesRead = channel.read(readBuffer);
+        if (bytesRead < 0) {
+            return null;
+        }
+
+        List<byte[]> frames = new ArrayList<>();
+        if (bytesRead == 0) {
+            return frames;
+        }
+        lastRead = System.currentTimeMillis();
+
+        readBuffer.flip();
+        while (readBuffer.remaining() >= 4) {
+            int length = readBuffer.getInt(readBuffer.position());
+            if (length < 0 || length > MAX_FRAME_SIZE) {
+                throw new IOException("Invalid frame length " + length);
+            }
+            if (readBuffer.remaining() < 4 + length) {
+                break;
+            }
+
+            readBuffer.getInt();
+            byte[] payload = new byte[length];
+            readBuffer.get(payload);
+            frames.add(payload);
+        }
+        readBuffer.compact();
+
+        // Grow the buffer when a single frame does not fit
+        if (readBuffer.position() >= 4) {
+            int needed = 4 + readBuffer.getInt(0);
+            if (needed > readBuffer.capacity()) {
+                ByteBuffer larger = ByteBuffer.allocate(needed);
+                readBuffer.flip();
+                larger.put(readBuffer);
+                readBuffer = larger;
+            }
+        }
+
+        return frames;
+    }
+
+    /**
+     * Closes the underlying channel, ignoring errors.
+     */
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Nothing useful to do here
+        }
+    }
+
+    /**
+     * Gets the underlying socket channel.
+     *
+     * @return The socket channel
+     */
+    public SocketChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Gets the time of the last successful read.
+     *
+     * @return The time in milliseconds
+     */
+    public long getLastRead() {
+        return lastRead;
+    }
+
+    /**
+     * Gets the time of the last completed frame write.
+     *
+     * @return The time in milliseconds
+     */
+    public long getLastWrite() {
+        return lastWrite;
+    }
+
+    /**
+     * Computes the handshake response for a challenge.
+     *
+     * @param secret The shared secret
+     * @param nonce The challenge nonce sent to the backend
+     * @param serverName The name the backend identifies itself with
+     * @return The HMAC-SHA256 of the nonce and server name
+     */
+    public static byte[] sign(String secret, byte[] nonce, String serverName) {
+        return mac(secret, nonce, serverName);
+    }
+
+    /**
+     * Computes the proxy's answer to a backend's challenge, proving the proxy knows the secret.
+     *
+     * @param secret The shared secret
+     * @param nonce The challenge nonce sent by the backend
+     * @param serverName The name the backend identified itself with
+     * @return The HMAC-SHA256 of the nonce and the server name, marked as coming from the proxy
+     */
+    public static byte[] signProxy(String secret, byte[] nonce, String serverName) {
+        return mac(secret, nonce, PROXY_PROOF + serverName);
+    }
+
+    private static byte[] mac(String secret, byte[] nonce, String serverName) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            mac.update(nonce);
+            mac.update(serverName.getBytes(StandardCharsets.UTF_8));
+            return mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    /**
+     * Parses a link address. Accepts "host:port" for TCP or "unix:/path/to/socket"
+     * for a Unix-domain socket.
+     *
+     * @param address The configured address
+     * @return The socket address
+     */
+    public static SocketAddress parseAddress(String address) {
+        if (address.startsWith("unix:")) {
+            return UnixDomainSocketAddress.of(address.substring("unix:".length()));
+        }
+
+        int separator = address.lastIndexOf(':');
+        if (separator <= 0) {
+            throw new IllegalArgumentException("Expected host:port or unix:/path, got " + address);
+        }
+        return new InetSocketAddress(address.substring(0, separator),
+                Integer.parseInt(address.substring(separator + 1)));
+    }
+
+    /**
+     * Opens an unbound server socket channel suitable for an address.
+     *
+     * @param address The socket address
+     * @return A new server socket channel
+     * @throws IOException If the channel cannot be opened
+     */
+    public static ServerSocketChannel openServer(SocketAddress address) throws IOException {
+        return address instanceof UnixDomainSocketAddress
+                ? ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+                : ServerSocketChannel.open();
+    }
+}
@@ -2,9 +2,7 @@ package sh.pcx.hardcorebanelocity.messaging;
 
 import com.google.common.io.ByteArrayDataOutput;
 import com.google.common.io.ByteStreams;
-import com.velocitypowered.api.proxy.Player;
 import com.velocitypowered.api.proxy.ServerConnection;
-import com.velocitypowered.api.proxy.server.RegisteredServer;
 import com.velocitypowered.api.proxy.messages.ChannelIdentifier;
 
 import org.slf4j.Logger;
@@ -37,166 +35,222 @@ public class MessageSender {
     }
 
     /**
-     * Sends an unban message to the hardcore server.
+     * Sends a ban written by the proxy to every hardcore server in a scope.
      *
-     * @param uuid The UUID of the player to unban
-     * @return true if the message was sent, false otherwise
+     * @param scope The ban scope the player is banned in
+     * @param uuid The UUID of the player to ban
+     * @param expiry The time the ban expires
+     * @return true if the message reached at least one server, false otherwise
      */
-    public boolean sendUnban(UUID uuid) {
-        // Try to find the hardcore server first
-        String hardcoreServerName = plugin.getConfigManager().getString("hardcore-server", "world");
-        Optional<RegisteredServer> optionalServer = plugin.getServer().getServer(hardcoreServerName);
+    public boolean sendBan(String scope, UUID uuid, long expiry) {
+        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.writeUTF("VELOCITY_BAN");
+        out.writeUTF(uuid.toString());
+        out.writeLong(expiry);
 
-        if (optionalServer.isEmpty()) {
-            logger.warn("Could not find hardcore server '{}' to send unban message", hardcoreServerName);
+        int sent = sendToScope(scope, out.toByteArray());
+        if (sent == 0) {
+            logger.warn("Could not send ban message for {}: no server in scope {} is reachable", uuid, scope);
             return false;
         }
 
-        // Create the message
+        logger.info("Sent ban message for player {} to {} servers in scope {}", uuid, sent, scope);
+        return true;
+    }
+
+    /**
+     * Sends an unban message to every hardcore server in a scope.
+     *
+     * @param scope The ban scope the player is unbanned in
+     * @param uuid The UUID of the player to unban
+     * @return true if the message reached at least one server, false otherwise
+     */
+    public boolean sendUnban(String scope, UUID uuid) {
         ByteArrayDataOutput out = ByteStreams.newDataOutput();
         out.writeUTF("VELOCITY_UNBAN");
         out.writeUTF(uuid.toString());
-        byte[] messageData = out.toByteArray();
-
-        // First try: Send through an online player on the hardcore server
-        for (Player player : plugin.getServer().getAllPlayers()) {
-            Optional<ServerConnection> currentServer = player.getCurrentServer();
-            if (currentServer.isPresent() &&
-                    currentServer.get().getServerInfo().getName().equals(hardcoreServerName)) {
-
-                try {
-                    currentServer.get().sendPluginMessage(channelId, messageData);
-                    logger.info("Sent unban message to hardcore server for player {} via {}",
-                            uuid, player.getUsername());
-                    return true;
-                } catch (Exception e) {
-                    logger.warn("Failed to send plugin message through player {}: {}",
-                            player.getUsername(), e.getMessage());
-                }
-            }
-        }
 
-        // Second try: Try to send through any player's current server
-        if (!plugin.getServer().getAllPlayers().isEmpty()) {
-            Player anyPlayer = plugin.getServer().getAllPlayers().iterator().next();
-
-            // Try sending through current server
-            if (anyPlayer.getCurrentServer().isPresent()) {
-                try {
-                    anyPlayer.getCurrentServer().get().sendPluginMessage(channelId, messageData);
-                    logger.info("Sent unban message for {} via player {} on their current server",
-                            uuid, anyPlayer.getUsername());
-                    return true;
-                } catch (Exception e) {
-                    logger.warn("Failed to send plugin message: {}", e.getMessage());
-                }
-            }
+        int sent = sendToScope(scope, out.toByteArray());
+        if (sent == 0) {
+            logger.warn("Could not send unban message for {}: no server in scope {} is reachable", uuid, scope);
+            return false;
         }
 
-        logger.warn("Could not send unban message: no suitable players online");
-        return false;
+        logger.info("Sent unban message for player {} to {} servers in scope {}", uuid, sent, scope);
+        return true;
     }
 
     /**
-     * Sends a clear all bans message to the hardcore server.
+     * Sends a clear all bans message to every hardcore server in a scope.
      *
-     * @return true if the message was sent, false otherwise
+     * @param scope The ban scope to clear
+     * @return true if the message reached at least one server, false otherwise
      */
-    public boolean sendClearAllBans() {
-        // Try to find the hardcore server first
-        String hardcoreServerName = plugin.getConfigManager().getString("hardcore-server", "world");
-        Optional<RegisteredServer> optionalServer = plugin.getServer().getServer(hardcoreServerName);
-
-        if (optionalServer.isEmpty()) {
-            logger.warn("Could not find hardcore server '{}' to send clear all bans message",
-                    hardcoreServerName);
+    public boolean sendClearAllBans(String scope) {
+        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.writeUTF("VELOCITY_CLEAR_ALL");
+
+        int sent = sendToScope(scope, out.toByteArray());
+        if (sent == 0) {
+            logger.warn("Could not send clear all bans message: no server in scope {} is reachable", scope);
             return false;
         }
 
-        // Create message
+        logger.info("Sent clear all bans message to {} servers in scope {}", sent, scope);
+        return true;
+    }
+
+    /**
+     * Passes a ban one hardcore server made on to the other servers in its scope, so their ban
+     * caches do not wait for their next database check. The ban is already in the database.
+     *
+     * @param scope The ban scope the player is banned in
+     * @param source The name of the server the ban came from, which is skipped
+     * @param uuid The UUID of the banned player
+     * @param expiry The time the ban expires
+     */
+    public void relayBan(String scope, String source, UUID uuid, long expiry) {
+        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.writeUTF("VELOCITY_BAN");
+        out.writeUTF(uuid.toString());
+        out.writeLong(expiry);
+
+        int sent = sendToScope(scope, out.toByteArray(), source);
+        logger.debug("Relayed ban of {} from {} to {} servers in scope {}", uuid, source, sent, scope);
+    }
+
+    /**
+     * Passes an unban one hardcore server made on to the other servers in its scope.
+     *
+     * @param scope The ban scope the player is unbanned in
+     * @param source The name of the server the unban came from, which is skipped
+     * @param uuid The UUID of the unbanned player
+     */
+    public void relayUnban(String scope, String source, UUID uuid) {
+        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.writeUTF("VELOCITY_UNBAN");
+        out.writeUTF(uuid.toString());
+
+        int sent = sendToScope(scope, out.toByteArray(), source);
+        logger.debug("Relayed unban of {} from {} to {} servers in scope {}", uuid, source, sent, scope);
+    }
+
+    /**
+     * Passes a clear of all bans one hardcore server made on to the other servers in its scope.
+     *
+     * @param scope The ban scope that was cleared
+     * @param source The name of the server the clear came from, which is skipped
+     */
+    public void relayClearAllBans(String scope, String source) {
         ByteArrayDataOutput out = ByteStreams.newDataOutput();
         out.writeUTF("VELOCITY_CLEAR_ALL");
-        byte[] messageData = out.toByteArray();
-
-        // First try: Send through an online player on the hardcore server
-        for (Player player : plugin.getServer().getAllPlayers()) {
-            Optional<ServerConnection> currentServer = player.getCurrentServer();
-            if (currentServer.isPresent() &&
-                    currentServer.get().getServerInfo().getName().equals(hardcoreServerName)) {
-
-                try {
-                    currentServer.get().sendPluginMessage(channelId, messageData);
-                    logger.info("Sent clear all bans message to hardcore server via {}",
-                            player.getUsername());
-                    return true;
-                } catch (Exception e) {
-                    logger.warn("Failed to send plugin message through player {}: {}",
-                            player.getUsername(), e.getMessage());
-                }
-            }
+
+        int sent = sendToScope(scope, out.toByteArray(), source);
+        logger.debug("Relayed clear all bans from {} to {} servers in scope {}", source, sent, scope);
+    }
+
+    /**
+     * Sends a ban check request to every hardcore server in a scope.
+     *
+     * @param scope The ban scope to check
+     * @param uuid The UUID of the player to check
+     * @return true if the message reached at least one server, false otherwise
+     */
+    public boolean sendBanCheck(String scope, UUID uuid) {
+        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.writeUTF("CHECK_BAN");
+        out.writeUTF(uuid.toString());
+
+        int sent = sendToScope(scope, out.toByteArray());
+        if (sent == 0) {
+            logger.warn("Could not send ban check message for {}: no server in scope {} is reachable", uuid, scope);
+            return false;
         }
 
-        // Second try: Try to send through any player's current server
-        if (!plugin.getServer().getAllPlayers().isEmpty()) {
-            Player anyPlayer = plugin.getServer().getAllPlayers().iterator().next();
-
-            // Try sending through current server
-            if (anyPlayer.getCurrentServer().isPresent()) {
-                try {
-                    anyPlayer.getCurrentServer().get().sendPluginMessage(channelId, messageData);
-                    logger.info("Sent clear all bans message via player {} on their current server",
-                            anyPlayer.getUsername());
-                    return true;
-                } catch (Exception e) {
-                    logger.warn("Failed to send plugin message: {}", e.getMessage());
-                }
+        logger.debug("Sent ban check message for {} to {} servers in scope {}", uuid, sent, scope);
+        return true;
+    }
+
+    /**
+     * Sends a message to every hardcore server in a scope. Sends only queue the message on
+     * the link or the carrier's connection, so no server waits on another's delivery.
+     *
+     * @param scope The ban scope
+     * @param messageData The message data
+     * @return The number of servers the message was sent to
+     */
+    public int sendToScope(String scope, byte[] messageData) {
+        return sendToScope(scope, messageData, null);
+    }
+
+    /**
+     * Sends a message to every hardcore server in a scope except one.
+     *
+     * @param scope The ban scope
+     * @param messageData The message data
+     * @param except The name of the server to skip, or null to send to all of them
+     * @return The number of servers the message was sent to
+     */
+    public int sendToScope(String scope, byte[] messageData, String except) {
+        int sent = 0;
+        for (String serverName : plugin.getHardcoreServers().getServers(scope)) {
+            if (!serverName.equalsIgnoreCase(except) && sendToServer(serverName, messageData)) {
+                sent++;
             }
         }
+        return sent;
+    }
 
-        logger.warn("Could not send clear all bans message: no suitable players online");
-        return false;
+    /**
+     * Asks a backend to send a full snapshot of its active bans.
+     * Only the link or a player connected to that backend can carry the request.
+     *
+     * @param serverName The name of the backend
+     * @return true if the message was sent, false otherwise
+     */
+    public boolean sendSnapshotRequest(String serverName) {
+        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.writeUTF(BanSnapshotCodec.SNAPSHOT_REQUEST);
+        return sendToServer(serverName, out.toByteArray());
     }
 
     /**
-     * Sends a ban check request to the hardcore server.
+     * Sends a message to one backend, over the direct proxy link if it is connected or
+     * otherwise through a player connected to that backend, taking the players in turn.
      *
-     * @param uuid The UUID of the player to check
+     * @param serverName The name of the backend
+     * @param messageData The message data
      * @return true if the message was sent, false otherwise
      */
-    public boolean sendBanCheck(UUID uuid) {
-        // Try to find the hardcore server first
-        String hardcoreServerName = plugin.getConfigManager().getString("hardcore-server", "world");
-        Optional<RegisteredServer> optionalServer = plugin.getServer().getServer(hardcoreServerName);
-
-        if (optionalServer.isEmpty()) {
-            logger.warn("Could not find hardcore server '{}' to send ban check message",
-                    hardcoreServerName);
-            return false;
+    public boolean sendToServer(String serverName, byte[] messageData) {
+        if (sendViaLink(serverName, messageData)) {
+            return true;
         }
 
-        // Create message
-        ByteArrayDataOutput out = ByteStreams.newDataOutput();
-        out.writeUTF("CHECK_BAN");
-        out.writeUTF(uuid.toString());
-        byte[] messageData = out.toByteArray();
-
-        // Try to find a player to send the message through
-        if (!plugin.getServer().getAllPlayers().isEmpty()) {
-            Player anyPlayer = plugin.getServer().getAllPlayers().iterator().next();
-
-            // Try sending through current server
-            if (anyPlayer.getCurrentServer().isPresent()) {
-                try {
-                    anyPlayer.getCurrentServer().get().sendPluginMessage(channelId, messageData);
-                    logger.debug("Sent ban check message for {}", uuid);
-                    return true;
-                } catch (Exception e) {
-                    logger.warn("Failed to send ban check message: {}", e.getMessage());
-                }
+        Optional<ServerConnection> carrier = plugin.getCarrierIndex().next(serverName);
+        if (carrier.isPresent()) {
+            try {
+                carrier.get().sendPluginMessage(channelId, messageData);
+                return true;
+            } catch (Exception e) {
+                logger.warn("Failed to send plugin message through player {}: {}",
+                        carrier.get().getPlayer().getUsername(), e.getMessage());
             }
         }
 
-        logger.warn("Could not send ban check message: no players online");
+        logger.debug("Could not send message to {}: no link and no players on it", serverName);
         return false;
     }
-}
\ No newline at end of file
+
+    /**
+     * Sends a message to a backend over the direct proxy link, if it is connected.
+     *
+     * @param serverName The name of the backend server
+     * @param messageData The message data
+     * @return true if the message was queued on the link, false otherwise
+     */
+    private boolean sendViaLink(String serverName, byte[] messageData) {
+        ProxyLinkServer proxyLink = plugin.getProxyLink();
+        return proxyLink != null && proxyLink.send(serverName, messageData);
+    }
+}
@@ -0,0 +1,398 @@
+package sh.pcx.hardcorebanelocity.messaging;
+
+import com.google.common.io.ByteArrayDataInput;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Server side of the optional direct link between Velocity and the Paper backends.
+ * Accepts non-blocking socket connections on a loopback TCP port or a Unix-domain socket,
+ * authenticates each backend with a shared-secret challenge, and exchanges length-prefixed
+ * ban protocol frames without needing a player connection to carry them.
+ *
+ * <p>The handshake runs both ways: a backend must sign the proxy's challenge and name a server
+ * the proxy accepts, and the proxy answers the backend's own challenge in {@code LINK_AUTH_OK}
+ * so the backend knows it is talking to the proxy.</p>
+ */
+public class ProxyLinkServer implements Runnable {
+
+    private final Logger logger;
+    private final SocketAddress address;
+    private final String secret;
+    private final long heartbeatMillis;
+    private final BiConsumer<String, byte[]> handler;
+    private final Predicate<String> serverFilter;
+    private final SecureRandom random = new SecureRandom();
+
+    // Authenticated sessions keyed by lower-case server name
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread thread;
+    private volatile boolean running;
+
+    /**
+     * Creates a new ProxyLinkServer.
+     *
+     * @param logger The plugin logger
+     * @param address The address to listen on
+     * @param secret The shared secret backends must prove knowledge of
+     * @param heartbeatSeconds How often to send heartbeats, in seconds
+     * @param handler Receives the server name and payload of every ban protocol frame, on the link
+     *                thread and in the order the frames arrived, so it must not block
+     * @param serverFilter Accepts the server names backends may authenticate as
+     */
+    public ProxyLinkServer(Logger logger, SocketAddress address, String secret, int heartbeatSeconds,
+                           BiConsumer<String, byte[]> handler, Predicate<String> serverFilter) {
+        this.logger = logger;
+        this.address = address;
+        this.secret = secret;
+        this.heartbeatMillis = Math.max(1, heartbeatSeconds) * 1000L;
+        this.handler = handler;
+        this.serverFilter = serverFilter;
+    }
+
+    /**
+     * Binds the listening socket and starts the link thread.
+     *
+     * @throws IOException If the socket cannot be bound
+     */
+    public void start() throws IOException {
+        if (address instanceof UnixDomainSocketAddress unixAddress) {
+            // A socket file left behind by an unclean shutdown would make bind fail
+            Files.deleteIfExists(unixAddress.getPath());
+        }
+
+        selector = Selector.open();
+        serverChannel = LinkConnection.openServer(address);
+        serverChannel.configureBlocking(false);
+        serverChannel.bind(address);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        running = true;
+        thread = new Thread(this, "HardcoreBan-ProxyLink");
+        thread.setDaemon(true);
+        thread.start();
+
+        logger.info("Proxy link listening on {}", address);
+    }
+
+    /**
+     * Stops the link thread and closes every connection.
+     */
+    public void stop() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        if (thread != null) {
+            try {
+                thread.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Checks if a backend is connected and authenticated.
+     *
+     * @param serverName The Velocity name of the backend
+     * @return true if frames can currently be sent to it
+     */
+    public boolean isConnected(String serverName) {
+        return sessions.containsKey(serverName.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Gets the names of all connected backends.
+     *
+     * @return The lower-case names of connected backends
+     */
+    public Set<String> getConnectedServers() {
+        return sessions.keySet();
+    }
+
+    /**
+     * Sends a ban protocol payload to a backend.
+     *
+     * @param serverName The Velocity name of the backend
+     * @param payload The payload in plugin message format
+     * @return true if the payload was queued, false if the backend is not connected
+     */
+    public boolean send(String serverName, byte[] payload) {
+        Session session = sessions.get(serverName.toLowerCase(Locale.ROOT));
+        if (session == null) {
+            return false;
+        }
+
+        session.connection.queue(payload);
+        selector.wakeup();
+        return true;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.isValid() && key.attachment() instanceof Session session) {
+                        key.interestOps(SelectionKey.OP_READ |
+                                (session.connection.hasPendingWrites() ? SelectionKey.OP_WRITE : 0));
+                    }
+                }
+
+                selector.select(1000);
+
+                for (SelectionKey key : selector.selectedKeys()) {
+                    handleKey(key);
+                }
+                selector.selectedKeys().clear();
+
+                checkHeartbeats();
+            } catch (Exception e) {
+                logger.error("Unexpected proxy link error: {}", e.getMessage());
+            }
+        }
+
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Session session) {
+                session.connection.close();
+            }
+        }
+        sessions.clear();
+
+        try {
+            serverChannel.close();
+            selector.close();
+            if (address instanceof UnixDomainSocketAddress unixAddress) {
+                Files.deleteIfExists(unixAddress.getPath());
+            }
+        } catch (IOException ignored) {
+            // Shutting down anyway
+        }
+    }
+
+    /**
+     * Handles a ready selection key, closing its connection on failure.
+     *
+     * @param key The selection key
+     */
+    private void handleKey(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+
+        if (key.isAcceptable()) {
+            accept();
+            return;
+        }
+
+        Session session = (Session) key.attachment();
+        try {
+            if (key.isReadable()) {
+                List<byte[]> frames = session.connection.read();
+                if (frames == null) {
+                    close(session, "closed by backend");
+                    return;
+                }
+                for (byte[] frame : frames) {
+                    if (!handleFrame(session, frame)) {
+                        return;
+                    }
+                }
+            }
+
+            if (key.isValid() && key.isWritable()) {
+                session.connection.flush();
+            }
+        } catch (Exception e) {
+            close(session, e.getMessage());
+        }
+    }
+
+    /**
+     * Accepts a pending connection and sends it a handshake challenge.
+     */
+    private void accept() {
+        try {
+            SocketChannel channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+
+            Session session = new Session(new LinkConnection(channel));
+            random.nextBytes(session.nonce);
+            channel.register(selector, SelectionKey.OP_READ, session);
+
+            ByteArrayDataOutput out = ByteStreams.newDataOutput();
+            out.writeUTF(LinkConnection.CHALLENGE);
+            out.writeInt(session.nonce.length);
+            out.write(session.nonce);
+            session.connection.queue(out.toByteArray());
+        } catch (IOException e) {
+            logger.warn("Failed to accept proxy link connection: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Handles a single frame read from a backend.
+     *
+     * @param session The session the frame was read from
+     * @param frame The frame payload
+     * @return false if the session was closed while handling the frame
+     */
+    private boolean handleFrame(Session session, byte[] frame) {
+        ByteArrayDataInput in = ByteStreams.newDataInput(frame);
+        String messageType = in.readUTF();
+
+        if (session.serverName == null) {
+            if (!messageType.equals(LinkConnection.AUTH)) {
+                close(session, "expected handshake, got " + messageType);
+                return false;
+            }
+            return authenticate(session, in);
+        }
+
+        switch (messageType) {
+            case LinkConnection.PING: {
+                ByteArrayDataOutput out = ByteStreams.newDataOutput();
+                out.writeUTF(LinkConnection.PONG);
+                session.connection.queue(out.toByteArray());
+                break;
+            }
+            case LinkConnection.PONG:
+                break;
+            default:
+                handler.accept(session.serverName, frame);
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * Verifies a backend's handshake response.
+     *
+     * @param session The session being authenticated
+     * @param in The remaining AUTH frame data
+     * @return true if the backend was authenticated
+     */
+    private boolean authenticate(Session session, ByteArrayDataInput in) {
+        String serverName = in.readUTF();
+        int length = in.readInt();
+        if (length < 0 || length > 64) {
+            close(session, "malformed handshake");
+            return false;
+        }
+        byte[] signature = new byte[length];
+        in.readFully(signature);
+        if (in.readInt() != LinkConnection.NONCE_LENGTH) {
+            close(session, "malformed handshake");
+            return false;
+        }
+        byte[] challenge = new byte[LinkConnection.NONCE_LENGTH];
+        in.readFully(challenge);
+
+        byte[] expected = LinkConnection.sign(secret, session.nonce, serverName);
+        if (!MessageDigest.isEqual(expected, signature)) {
+            logger.warn("Rejected proxy link connection claiming to be '{}': bad secret", serverName);
+            close(session, null);
+            return false;
+        }
+        if (!serverFilter.test(serverName)) {
+            logger.warn("Rejected proxy link connection from '{}': not a configured hardcore server", serverName);
+            close(session, null);
+            return false;
+        }
+
+        session.serverName = serverName;
+        Session previous = sessions.put(serverName.toLowerCase(Locale.ROOT), session);
+        if (previous != null) {
+            close(previous, "replaced by a new connection");
+        }
+
+        byte[] answer = LinkConnection.signProxy(secret, challenge, serverName);
+        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.writeUTF(LinkConnection.AUTH_OK);
+        out.writeInt(answer.length);
+        out.write(answer);
+        session.connection.queue(out.toByteArray());
+
+        logger.info("Proxy link established with backend '{}'", serverName);
+        return true;
+    }
+
+    /**
+     * Sends heartbeats and drops connections that have gone quiet or never authenticated.
+     */
+    private void checkHeartbeats() {
+        long now = System.currentTimeMillis();
+
+        for (SelectionKey key : selector.keys()) {
+            if (!(key.attachment() instanceof Session session)) {
+                continue;
+            }
+
+            if (now - session.connection.getLastRead() > heartbeatMillis * 3) {
+                close(session, "timed out");
+            } else if (session.serverName != null && now - session.connection.getLastWrite() >= heartbeatMillis
+                    && !session.connection.hasPendingWrites()) {
+                ByteArrayDataOutput out = ByteStreams.newDataOutput();
+                out.writeUTF(LinkConnection.PING);
+                session.connection.queue(out.toByteArray());
+            }
+        }
+    }
+
+    /**
+     * Closes a session and forgets it if it was authenticated.
+     *
+     * @param session The session to close
+     * @param reason The reason to log, or null to close silently
+     */
+    private void close(Session session, String reason) {
+        session.connection.close();
+
+        if (session.serverName != null) {
+            sessions.remove(session.serverName.toLowerCase(Locale.ROOT), session);
+            if (reason != null) {
+                logger.info("Proxy link with backend '{}' closed: {}", session.serverName, reason);
+            }
+        }
+    }
+
+    /**
+     * State for one backend connection.
+     */
+    private static final class Session {
+        private final LinkConnection connection;
+        private final byte[] nonce = new byte[LinkConnection.NONCE_LENGTH];
+        private volatile String serverName;
+
+        private Session(LinkConnection connection) {
+            this.connection = connection;
+        }
+    }
+}
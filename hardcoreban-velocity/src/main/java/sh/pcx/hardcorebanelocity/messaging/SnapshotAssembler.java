@@ -0,0 +1,60 @@
+package sh.pcx.hardcorebanelocity.messaging;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Reassembles a chunked ban snapshot from a backend.
+ * Only one snapshot is assembled at a time; chunks of a newer snapshot replace an
+ * unfinished older one, and an assembly that stalls is dropped after a timeout.
+ */
+public class SnapshotAssembler {
+
+    private static final int MAX_CHUNKS = 4096;
+    private static final long TIMEOUT = 30000;
+
+    private int snapshotId;
+    private byte[][] chunks;
+    private int received;
+    private long startedAt;
+
+    /**
+     * Adds a chunk to the snapshot being assembled.
+     *
+     * @param id The snapshot id chosen by the backend
+     * @param index The index of this chunk
+     * @param total The total number of chunks in the snapshot
+     * @param chunk The chunk data
+     * @return The complete snapshot once the last chunk arrives, otherwise null
+     * @throws IllegalArgumentException If the chunk header is invalid
+     */
+    public synchronized byte[] accept(int id, int index, int total, byte[] chunk) {
+        if (total <= 0 || total > MAX_CHUNKS || index < 0 || index >= total
+                || chunk.length > BanSnapshotCodec.CHUNK_SIZE) {
+            throw new IllegalArgumentException("Invalid snapshot chunk " + index + "/" + total);
+        }
+
+        long now = System.currentTimeMillis();
+        if (chunks == null || id != snapshotId || chunks.length != total || now - startedAt > TIMEOUT) {
+            snapshotId = id;
+            chunks = new byte[total][];
+            received = 0;
+            startedAt = now;
+        }
+
+        if (chunks[index] == null) {
+            chunks[index] = chunk;
+            received++;
+        }
+
+        if (received < total) {
+            return null;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(total * BanSnapshotCodec.CHUNK_SIZE);
+        for (byte[] part : chunks) {
+            out.writeBytes(part);
+        }
+        chunks = null;
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,110 @@
+package sh.pcx.hardcorebanelocity.util;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.TextReplacementConfig;
+import net.kyori.adventure.text.minimessage.MiniMessage;
+import net.kyori.adventure.title.Title;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The ban title and chat message shown to a player turned away from a hardcore server.
+ *
+ * <p>The configured MiniMessage templates are parsed once, with the {@code {time}} placeholder
+ * left in as text and filled in by a text replacement. The ban time is shown in whole minutes,
+ * so every player with the same number of minutes left sees the same messages; they are rendered
+ * once per minute count and shared, including the {@link Title} instance.</p>
+ */
+public class BanMessages {
+
+    private static final String TIME_PLACEHOLDER = "{time}";
+    // A week of distinct minute counts; beyond that the cache starts over
+    private static final int MAX_CACHED = 10080;
+
+    private static final Title.Times TIMES = Title.Times.times(
+            Duration.ofMillis(500),   // Fade in
+            Duration.ofMillis(3000),  // Stay
+            Duration.ofMillis(500)    // Fade out
+    );
+
+    private final Component title;
+    private final Component subtitle;
+    private final Component chat;
+    private final Map<Long, Rendered> rendered = new ConcurrentHashMap<>();
+
+    /**
+     * Parses the ban message templates from the config.
+     *
+     * @param configManager The configuration manager
+     * @param miniMessage The MiniMessage instance
+     */
+    public BanMessages(ConfigManager configManager, MiniMessage miniMessage) {
+        this.title = miniMessage.deserialize(configManager.getString("messages.title-banned",
+                "<red>Hardcore Mode Banned"));
+        this.subtitle = miniMessage.deserialize(configManager.getString("messages.subtitle-banned",
+                "<yellow>Ban expires in {time}"));
+        this.chat = miniMessage.deserialize(configManager.getString("messages.chat-banned",
+                "<red>You cannot connect to the hardcore server for {time}."));
+    }
+
+    /**
+     * Gets the messages for a ban with the given time left.
+     *
+     * @param timeLeft The time left on the ban in milliseconds
+     * @return The rendered messages, shared with every ban showing the same time
+     */
+    public Rendered render(long timeLeft) {
+        long minutes = TimeFormatter.displayMinutes(timeLeft);
+        Rendered cached = rendered.get(minutes);
+        if (cached != null) {
+            return cached;
+        }
+
+        if (rendered.size() >= MAX_CACHED) {
+            rendered.clear();
+        }
+
+        TextReplacementConfig time = TextReplacementConfig.builder()
+                .matchLiteral(TIME_PLACEHOLDER)
+                .replacement(TimeFormatter.formatDisplayTime(timeLeft))
+                .build();
+        Rendered fresh = new Rendered(
+                Title.title(title.replaceText(time), subtitle.replaceText(time), TIMES),
+                chat.replaceText(time));
+        rendered.putIfAbsent(minutes, fresh);
+        return fresh;
+    }
+
+    /**
+     * The ban messages for one displayed ban time.
+     */
+    public static final class Rendered {
+        private final Title title;
+        private final Component chat;
+
+        private Rendered(Title title, Component chat) {
+            this.title = title;
+            this.chat = chat;
+        }
+
+        /**
+         * Gets the ban title.
+         *
+         * @return The title
+         */
+        public Title getTitle() {
+            return title;
+        }
+
+        /**
+         * Gets the ban chat message.
+         *
+         * @return The chat message
+         */
+        public Component getChat() {
+            return chat;
+        }
+    }
+}
@@ -87,9 +87,13 @@ public class ConfigManager {
      */
     private Map<String, Object> createDefaultConfig() {
         Map<String, Object> defaultConfig = new HashMap<>();
-        defaultConfig.put("hardcore-server", "world");
         defaultConfig.put("check-interval", 10);
 
+        // Hardcore servers mapped to their ban scopes
+        Map<String, Object> hardcoreServers = new HashMap<>();
+        hardcoreServers.put("world", "default");
+        defaultConfig.put("hardcore-servers", hardcoreServers);
+
         // Database defaults
         Map<String, Object> database = new HashMap<>();
         database.put("host", "localhost");
@@ -97,13 +101,83 @@ public class ConfigManager {
         database.put("database", "minecraft");
         database.put("username", "root");
         database.put("password", "password");
+        Map<String, Object> pools = new HashMap<>();
+        pools.put("enforcement", 4);
+        pools.put("writes", 2);
+        pools.put("maintenance", 2);
+        pools.put("admin", 2);
+        database.put("pools", pools);
         defaultConfig.put("database", database);
 
+        // Direct link defaults
+        Map<String, Object> proxyLink = new HashMap<>();
+        proxyLink.put("enabled", false);
+        proxyLink.put("address", "127.0.0.1:25590");
+        proxyLink.put("secret", "change-me");
+        proxyLink.put("heartbeat-seconds", 5);
+        defaultConfig.put("proxy-link", proxyLink);
+
+        // Trusted proxy defaults
+        Map<String, Object> trustedProxy = new HashMap<>();
+        trustedProxy.put("enabled", false);
+        defaultConfig.put("trusted-proxy", trustedProxy);
+
+        // Shared-memory ban table defaults
+        Map<String, Object> sharedMemory = new HashMap<>();
+        sharedMemory.put("enabled", false);
+        sharedMemory.put("directory", "/dev/shm/hardcoreban");
+        sharedMemory.put("max-age-seconds", 180);
+        defaultConfig.put("shared-memory", sharedMemory);
+
+        // Ban cache consistency check defaults
+        Map<String, Object> antiEntropy = new HashMap<>();
+        antiEntropy.put("interval-seconds", 300);
+        defaultConfig.put("anti-entropy", antiEntropy);
+
+        // Ban cache defaults
+        Map<String, Object> banCache = new HashMap<>();
+        banCache.put("max-staleness-seconds", 3600);
+        banCache.put("max-backoff-seconds", 300);
+        banCache.put("fail-closed", true);
+        banCache.put("persist", true);
+        defaultConfig.put("ban-cache", banCache);
+
+        // Connection throttle defaults
+        Map<String, Object> connectionThrottle = new HashMap<>();
+        connectionThrottle.put("message-burst", 2);
+        connectionThrottle.put("message-cooldown-seconds", 5);
+        defaultConfig.put("connection-throttle", connectionThrottle);
+
+        // Waiting room defaults
+        Map<String, Object> waitingRoom = new HashMap<>();
+        waitingRoom.put("enabled", false);
+        waitingRoom.put("lobby-server", "lobby");
+        waitingRoom.put("update-seconds", 1);
+        defaultConfig.put("waiting-room", waitingRoom);
+
+        // Admission control defaults
+        Map<String, Object> admission = new HashMap<>();
+        admission.put("enabled", false);
+        admission.put("connects-per-second", 2.0);
+        admission.put("burst", 5);
+        admission.put("min-connects-per-second", 0.2);
+        admission.put("target-mspt", 40.0);
+        admission.put("max-mspt", 50.0);
+        admission.put("target-tps", 19.5);
+        admission.put("min-tps", 15.0);
+        defaultConfig.put("admission", admission);
+
         // Message defaults
         Map<String, String> messages = new HashMap<>();
         messages.put("title-banned", "<red>Hardcore Mode Banned");
         messages.put("subtitle-banned", "<yellow>Ban expires in {time}");
         messages.put("chat-banned", "<red>You cannot connect to the hardcore server for {time}.");
+        messages.put("waiting-room-parked",
+                "<yellow>You will be sent to the hardcore server automatically when your ban ends.");
+        messages.put("waiting-room-countdown", "<yellow>Hardcore server in <white>{time}");
+        messages.put("admission-queued", "<yellow>The hardcore server is busy. You are <white>#{position}</white> in line.");
+        messages.put("ban-check-unavailable",
+                "<red>Bans cannot be checked right now. Please try the hardcore server again shortly.");
         defaultConfig.put("messages", messages);
 
         return defaultConfig;
@@ -156,6 +230,34 @@ public class ConfigManager {
         }
     }
 
+    /**
+     * Gets a section of the configuration as a map of its keys to their values.
+     *
+     * @param path The path to the section
+     * @return The section, or an empty map if the path doesn't exist or is not a section
+     */
+    public Map<String, Object> getSection(String path) {
+        if (config == null) {
+            return Map.of();
+        }
+
+        Object current = config;
+        for (String part : path.split("\\.")) {
+            if (!(current instanceof Map)) {
+                return Map.of();
+            }
+            current = ((Map<String, Object>) current).get(part);
+        }
+
+        if (!(current instanceof Map)) {
+            return Map.of();
+        }
+
+        Map<String, Object> section = new HashMap<>();
+        ((Map<?, ?>) current).forEach((key, value) -> section.put(String.valueOf(key), value));
+        return section;
+    }
+
     /**
      * Gets an integer from the configuration.
      *
@@ -172,6 +274,22 @@ public class ConfigManager {
         }
     }
 
+    /**
+     * Gets a decimal number from the configuration.
+     *
+     * @param path The path to the value
+     * @param defaultValue The default value to return if the path doesn't exist
+     * @return The decimal value
+     */
+    public double getDouble(String path, double defaultValue) {
+        String strValue = getString(path, String.valueOf(defaultValue));
+        try {
+            return Double.parseDouble(strValue);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
     /**
      * Gets a boolean from the configuration.
      *
@@ -0,0 +1,154 @@
+package sh.pcx.hardcorebanelocity.util;
+
+import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * The set of hardcore servers and the ban scope each of them belongs to.
+ *
+ * <p>Servers in the same scope share bans; a player banned in one scope can still join the
+ * servers of another. Membership is resolved once from the config into a map keyed by the
+ * {@link RegisteredServer} instance, so a pre-connect check is a single identity lookup instead
+ * of a name comparison. The maps are rebuilt as a whole and swapped in on {@link #reload()}.</p>
+ *
+ * <p>Configured with a {@code hardcore-servers} section mapping server names to scopes. Older
+ * configs with a single {@code hardcore-server} name put that server in the "default" scope.</p>
+ */
+public class HardcoreServerRegistry {
+
+    public static final String DEFAULT_SCOPE = "default";
+
+    // Scopes name files and database rows, so keep them to a safe character set
+    private static final Pattern SCOPE_PATTERN = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    private final ProxyServer server;
+    private final ConfigManager configManager;
+    private final Logger logger;
+
+    private volatile Snapshot current = new Snapshot(Map.of(), Map.of(), Map.of());
+
+    /**
+     * Creates a new HardcoreServerRegistry and loads it from the config.
+     *
+     * @param server The Velocity proxy server
+     * @param configManager The configuration manager
+     * @param logger The plugin logger
+     */
+    public HardcoreServerRegistry(ProxyServer server, ConfigManager configManager, Logger logger) {
+        this.server = server;
+        this.configManager = configManager;
+        this.logger = logger;
+        reload();
+    }
+
+    /**
+     * Re-reads the hardcore servers from the config and resolves them against the servers
+     * currently registered with the proxy.
+     */
+    public void reload() {
+        Map<String, String> configured = new LinkedHashMap<>();
+        Map<String, Object> section = configManager.getSection("hardcore-servers");
+        if (section.isEmpty()) {
+            configured.put(configManager.getString("hardcore-server", "world"), DEFAULT_SCOPE);
+        } else {
+            section.forEach((name, scope) -> configured.put(name, String.valueOf(scope)));
+        }
+
+        Map<RegisteredServer, String> byServer = new IdentityHashMap<>();
+        Map<String, String> byName = new HashMap<>();
+        Map<String, List<String>> byScope = new LinkedHashMap<>();
+
+        for (Map.Entry<String, String> entry : configured.entrySet()) {
+            String scope = entry.getValue();
+            if (!SCOPE_PATTERN.matcher(scope).matches()) {
+                logger.warn("Ignoring hardcore server '{}': invalid ban scope '{}'", entry.getKey(), scope);
+                continue;
+            }
+
+            // Use the name the proxy knows the server by, so lookups by name agree with it
+            String name = entry.getKey();
+            Optional<RegisteredServer> registered = server.getServer(name);
+            if (registered.isPresent()) {
+                name = registered.get().getServerInfo().getName();
+                byServer.put(registered.get(), scope);
+            } else {
+                logger.warn("Hardcore server '{}' is not registered with the proxy", name);
+            }
+
+            byName.put(name.toLowerCase(), scope);
+            byScope.computeIfAbsent(scope, s -> new ArrayList<>()).add(name);
+        }
+
+        byScope.replaceAll((scope, names) -> List.copyOf(names));
+        current = new Snapshot(byServer, byName, byScope);
+        logger.info("Hardcore servers: {}", byScope);
+    }
+
+    /**
+     * Gets the ban scope of a server a player is connecting to.
+     *
+     * @param registeredServer The server
+     * @return The scope, or null if the server is not a hardcore server
+     */
+    public String scopeOf(RegisteredServer registeredServer) {
+        return current.byServer.get(registeredServer);
+    }
+
+    /**
+     * Gets the ban scope of a server by name, for messages received from backends.
+     *
+     * @param serverName The name of the server
+     * @return The scope, or null if the server is not a hardcore server
+     */
+    public String getScope(String serverName) {
+        return current.byName.get(serverName.toLowerCase());
+    }
+
+    /**
+     * Gets the names of the hardcore servers in a scope.
+     *
+     * @param scope The ban scope
+     * @return The server names, empty if the scope has no servers
+     */
+    public List<String> getServers(String scope) {
+        return current.byScope.getOrDefault(scope, List.of());
+    }
+
+    /**
+     * Gets every configured ban scope.
+     *
+     * @return The scopes
+     */
+    public Set<String> getScopes() {
+        return current.byScope.keySet();
+    }
+
+    /**
+     * An immutable view of the registry, replaced as a whole on reload.
+     */
+    private static final class Snapshot {
+        private final Map<RegisteredServer, String> byServer;
+        private final Map<String, String> byName;
+        private final Map<String, List<String>> byScope;
+
+        private Snapshot(Map<RegisteredServer, String> byServer, Map<String, String> byName,
+                         Map<String, List<String>> byScope) {
+            this.byServer = byServer;
+            this.byName = byName;
+            this.byScope = Collections.unmodifiableMap(byScope);
+        }
+    }
+}
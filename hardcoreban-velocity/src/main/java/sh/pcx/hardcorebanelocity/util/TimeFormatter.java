@@ -7,6 +7,9 @@ import java.util.concurrent.TimeUnit;
  */
 public class TimeFormatter {
 
+    // Longest duration a command accepts, far enough out to never overflow an expiry time
+    private static final long MAX_DURATION = TimeUnit.DAYS.toMillis(36500);
+
     /**
      * Formats a time duration in milliseconds into a human-readable string.
      * Format: "X hours, Y minutes" or "Y minutes" if hours is 0.
@@ -35,6 +38,58 @@ public class TimeFormatter {
         return time.toString();
     }
 
+    /**
+     * Parses a duration typed in a command, such as "90", "30m", "12h", "2d" or "1d12h".
+     * A number without a unit is in minutes.
+     *
+     * @param input The duration to parse
+     * @return The duration in milliseconds, or -1 if the input is not a positive duration of at most 100 years
+     */
+    public static long parseDuration(String input) {
+        String text = input.toLowerCase();
+        if (text.isEmpty()) {
+            return -1;
+        }
+
+        long millis = 0;
+        int start = 0;
+        try {
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (Character.isDigit(c)) {
+                    continue;
+                }
+                if (i == start) {
+                    return -1;
+                }
+
+                TimeUnit unit;
+                switch (c) {
+                    case 'm':
+                        unit = TimeUnit.MINUTES;
+                        break;
+                    case 'h':
+                        unit = TimeUnit.HOURS;
+                        break;
+                    case 'd':
+                        unit = TimeUnit.DAYS;
+                        break;
+                    default:
+                        return -1;
+                }
+                millis = Math.addExact(millis, unit.toMillis(Long.parseLong(text.substring(start, i))));
+                start = i + 1;
+            }
+            if (start < text.length()) {
+                millis = Math.addExact(millis, TimeUnit.MINUTES.toMillis(Long.parseLong(text.substring(start))));
+            }
+        } catch (NumberFormatException | ArithmeticException e) {
+            return -1;
+        }
+
+        return millis > 0 && millis <= MAX_DURATION ? millis : -1;
+    }
+
     /**
      * Formats a time duration in milliseconds into a compact format.
      * Format: "5h 30m" or "30m" if hours is 0.
@@ -54,6 +109,37 @@ public class TimeFormatter {
         }
     }
 
+    /**
+     * Formats a duration as a ticking countdown.
+     * Format: "1:05:09" or "5:09" if hours is 0, rounded up to the next second.
+     *
+     * @param millis The time in milliseconds
+     * @return A formatted countdown
+     */
+    public static String formatCountdown(long millis) {
+        long seconds = Math.max(0, (millis + 999) / 1000);
+        long hours = seconds / 3600;
+        long minutes = (seconds / 60) % 60;
+        seconds %= 60;
+
+        if (hours > 0) {
+            return String.format("%d:%02d:%02d", hours, minutes, seconds);
+        }
+        return String.format("%d:%02d", minutes, seconds);
+    }
+
+    /**
+     * Gets the number of minutes {@link #formatDisplayTime(long)} shows for a duration.
+     * Rounds up, and is always at least 1.
+     *
+     * @param millis The time in milliseconds
+     * @return The displayed number of minutes
+     */
+    public static long displayMinutes(long millis) {
+        // Round up to the nearest minute to avoid showing "0 minutes" when there are a few seconds left
+        return Math.max(1, (millis + 59999) / 60000);
+    }
+
     /**
      * Formats a duration for display in a title or message.
      * Rounds up to the nearest minute to avoid showing "0 minutes remaining"
@@ -63,13 +149,7 @@ public class TimeFormatter {
      * @return A formatted string suitable for display to players
      */
     public static String formatDisplayTime(long millis) {
-        // Round up to the nearest minute to avoid showing "0 minutes" when there are a few seconds left
-        long minutes = (long) Math.ceil(millis / 60000.0);
-
-        if (minutes <= 0) {
-            minutes = 1; // Always show at least 1 minute
-        }
-
+        long minutes = displayMinutes(millis);
         long hours = minutes / 60;
         minutes = minutes % 60;
 